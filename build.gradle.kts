@@ -1,6 +1,7 @@
 plugins {
     application
     java
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 repositories {
@@ -10,12 +11,38 @@ repositories {
 dependencies {
     implementation("com.fasterxml.jackson.core:jackson-databind:2.17.0")
     implementation("com.fasterxml.jackson.core:jackson-core:2.17.0")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+    // Validatoren aus HttpFetchTest nicht in data/ schreiben
+    systemProperty("pm25.http.cache", layout.buildDirectory.file("tmp/test/http_cache.tsv").get().asFile.path)
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
 }
 
 application {
     mainClass.set("net.envinet.pm25.Main")
 }
 
+// pm25.*-Properties (z.B. -Dpm25.fetch.parallel=16) an die Anwendung durchreichen
+tasks.named<JavaExec>("run") {
+    systemProperties(System.getProperties().filterKeys { it.toString().startsWith("pm25.") }
+        .mapKeys { it.key.toString() })
+}
+
+// Benchmarks unter src/jmh/java: gradle jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+}
+
 java {
     toolchain {
         languageVersion.set(JavaLanguageVersion.of(17))
@@ -33,3 +60,21 @@ tasks.register<JavaExec>("sensorFinder") {
     val id = project.findProperty("sensorId")?.toString() ?: "81607"
     args(id)
 }
+
+tasks.register<JavaExec>("migrateStorage") {
+    group = "application"
+    description = "Übernimmt data/sensor_<id>.csv in die binäre Ablage data/bin"
+
+    mainClass.set("net.envinet.pm25.StorageMigration")
+    classpath = sourceSets["main"].runtimeClasspath
+}
+
+tasks.register<JavaExec>("archive") {
+    group = "application"
+    description = "Archiv nachladen (backfill <verzeichnis>) oder Zeitraum exportieren (export <von> <bis> <datei>)"
+
+    mainClass.set("net.envinet.pm25.Archive")
+    classpath = sourceSets["main"].runtimeClasspath
+    systemProperties(System.getProperties().filterKeys { it.toString().startsWith("pm25.") }
+        .mapKeys { it.key.toString() })
+}
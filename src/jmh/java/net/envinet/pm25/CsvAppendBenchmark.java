@@ -0,0 +1,109 @@
+package net.envinet.pm25;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Anhängen an eine Sensor-CSV mit 1k, 100k und 1M vorhandenen Zeilen über
+ * {@link CsvSeriesStore} (früher {@code appendToCsv}):
+ * <ul>
+ *   <li>{@code newOnly} – 10 Zeilen hinter dem letzten Zeitstempel,</li>
+ *   <li>{@code overlapping} – eine API-Antwort mit 100 Zeilen, davon 90 schon gespeichert.</li>
+ * </ul>
+ * Die Datei wird vor jeder Iteration aus einer Vorlage wiederhergestellt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvAppendBenchmark {
+
+    private static final String ID = "bench";
+    private static final int BATCH = 100;
+    private static final int NEW = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Path dir;
+    private Path template;
+    private CsvSeriesStore store;
+
+    /** Die letzten BATCH gespeicherten Werte, als Ring. */
+    private final long[] tailTimes = new long[BATCH];
+    private final double[] tailValues = new double[BATCH];
+    private int tailStart;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("csv-append-");
+        template = dir.resolve("template.csv");
+        SyntheticData.writeSensorCsv(template, rows);
+        store = new CsvSeriesStore(dir);
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() throws IOException {
+        Path csv = dir.resolve("sensor_" + ID + ".csv");
+        Files.copy(template, csv, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(dir.resolve("sensor_" + ID + ".csv.hwm"));
+
+        Series all = store.readAll(ID);
+        for (int i = 0; i < BATCH; i++) {
+            int j = all.size() - BATCH + i;
+            tailTimes[i] = all.time(j);
+            tailValues[i] = all.value(j);
+        }
+        tailStart = 0;
+        next = all.lastTime();
+        // einmal anhängen, damit die .hwm-Datei für alle Messungen vorliegt
+        store.append(ID, fresh(NEW));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Series newOnly() throws IOException {
+        return store.append(ID, fresh(NEW));
+    }
+
+    @Benchmark
+    public Series overlapping() throws IOException {
+        // API-Antwort: die NEW neuen und die 90 davor, neueste zuerst
+        fresh(NEW);
+        Series batch = new Series(BATCH);
+        for (int i = BATCH - 1; i >= 0; i--) {
+            int j = (tailStart + i) % BATCH;
+            batch.add(tailTimes[j], tailValues[j]);
+        }
+        return store.append(ID, batch);
+    }
+
+    /** {@code n} neue Werte hinter dem letzten; werden als bekannt vorgemerkt. */
+    private Series fresh(int n) {
+        Series s = new Series(n);
+        for (int i = 0; i < n; i++) {
+            next += 150;
+            double v = (next % 300) / 10.0;
+            s.add(next, v);
+            tailTimes[tailStart] = next;
+            tailValues[tailStart] = v;
+            tailStart = (tailStart + 1) % BATCH;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,62 @@
+package net.envinet.pm25;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Laden einer Sensor-CSV: früherer Lader aus {@link KartenGenerator}
+ * ({@code readAllLines}, {@code split}, Sortieren der {@code String[]},
+ * zwei Streams für Labels und Werte) gegen {@link CsvSeriesReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvLoadBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    private Path csv;
+
+    @Setup
+    public void setup() throws IOException {
+        csv = Files.createTempFile("sensor_", ".csv");
+        SyntheticData.writeSensorCsv(csv, rows);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public int legacyLoader() throws IOException {
+        List<String[]> data = Files.readAllLines(csv, StandardCharsets.UTF_8).stream()
+                .filter(l -> !l.isBlank())
+                .map(l -> l.split(",", -1))
+                .filter(a -> a.length >= 2)
+                .sorted(Comparator.comparing(a -> a[0]))
+                .collect(Collectors.toList());
+
+        String labels = data.stream().map(r -> "'" + r[0].substring(11, 16) + "'").collect(Collectors.joining(","));
+        String values = data.stream().map(r -> r[1]).collect(Collectors.joining(","));
+        return labels.length() + values.length();
+    }
+
+    @Benchmark
+    public int seriesReader() throws IOException {
+        Series s = new CsvSeriesReader().read(csv);
+        return s.size();
+    }
+}
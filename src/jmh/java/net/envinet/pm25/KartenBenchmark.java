@@ -0,0 +1,79 @@
+package net.envinet.pm25;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Karte für 10, 1k und 10k Sensoren mit je 6 Stunden Messwerten
+ * ({@code pm25.map.hours=6}):
+ * <ul>
+ *   <li>{@code fromDisk} – Reihen bei jedem Aufruf aus den CSV-Dateien,</li>
+ *   <li>{@code fromHotWindow} – Reihen aus dem vorbelegten {@link HotWindow}.</li>
+ * </ul>
+ * Das HTML geht in einen {@link Writer#nullWriter()}, gemessen wird Laden,
+ * Ausdünnen und Erzeugen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dpm25.map.hours=6")
+public class KartenBenchmark {
+
+    private static final int HOURS = 6;
+    private static final int ROWS = HOURS * 3600 / 150;
+
+    @Param({"10", "1000", "10000"})
+    public int sensors;
+
+    private Path dir;
+    private List<SensorConfig> config;
+    private SeriesStore store;
+    private Validation flags;
+    private HotWindow cold;
+    private HotWindow warm;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("karte-");
+        config = SyntheticData.sensors(sensors);
+        store = new CsvSeriesStore(dir);
+        flags = new Validation(dir.resolve("flags"), store);
+
+        // letzte Werte etwas in der Zukunft, damit das Fenster sicher im HotWindow liegt
+        long start = Instant.now().getEpochSecond() + 3600 - ROWS * 150L;
+        for (SensorConfig c : config) {
+            SyntheticData.writeSensorCsv(dir.resolve("sensor_" + c.id + ".csv"), ROWS, start);
+        }
+
+        // 0 Stunden: deckt nie etwas ab, jede Karte liest von der Platte
+        cold = new HotWindow(store, 0);
+        warm = new HotWindow(store, HOURS);
+        for (SensorConfig c : config) warm.newest(c.id);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void fromDisk() throws IOException {
+        KartenGenerator.writeHtml(Writer.nullWriter(), config, store, cold, flags);
+    }
+
+    @Benchmark
+    public void fromHotWindow() throws IOException {
+        KartenGenerator.writeHtml(Writer.nullWriter(), config, store, warm, flags);
+    }
+}
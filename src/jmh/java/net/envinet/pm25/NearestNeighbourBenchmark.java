@@ -0,0 +1,82 @@
+package net.envinet.pm25;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Die 5 nächsten Sensoren im Umkreis von 25 km: Haversine über alle
+ * Sensoren gegen {@link SpatialIndex}; dazu der Aufbau des Index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NearestNeighbourBenchmark {
+
+    private static final int K = 5;
+    private static final double RADIUS_KM = 25.0;
+    private static final int QUERIES = 1024;
+
+    /** 15k etwa der weltweite Snapshot von sensor.community. */
+    @Param({"1000", "15000", "100000"})
+    public int sensors;
+
+    private double[] lats, lons;
+    private double[] qLat, qLon;
+    private SpatialIndex index;
+    private int q;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(5);
+        lats = new double[sensors];
+        lons = new double[sensors];
+        for (int i = 0; i < sensors; i++) {
+            lats[i] = 45.0 + rnd.nextDouble() * 10.0;
+            lons[i] = 5.0 + rnd.nextDouble() * 12.0;
+        }
+        // Abfragen an Sensorstandorten, wie bei SensorFinder und der Nachbarprüfung
+        qLat = new double[QUERIES];
+        qLon = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            int s = rnd.nextInt(sensors);
+            qLat[i] = lats[s];
+            qLon[i] = lons[s];
+        }
+        index = new SpatialIndex(lats, lons, sensors, 0.1);
+    }
+
+    @Benchmark
+    public int[] linearScan() {
+        int i = q++ & (QUERIES - 1);
+        double lat0 = qLat[i], lon0 = qLon[i];
+
+        // alle Abstände, dann die K kleinsten im Umkreis (Abstand in den oberen 32 Bit, reicht zum Sortieren)
+        long[] packed = new long[sensors];
+        int n = 0;
+        for (int s = 0; s < sensors; s++) {
+            double d = Geo.distanceKm(lat0, lon0, lats[s], lons[s]);
+            if (d <= RADIUS_KM) packed[n++] = (Double.doubleToLongBits(d) & ~0xFFFFFFFFL) | s;
+        }
+        Arrays.sort(packed, 0, n);
+        int[] out = new int[Math.min(K, n)];
+        for (int j = 0; j < out.length; j++) out[j] = (int) packed[j];
+        return out;
+    }
+
+    @Benchmark
+    public int[] spatialIndex() {
+        int i = q++ & (QUERIES - 1);
+        return index.nearest(qLat[i], qLon[i], K, RADIUS_KM);
+    }
+
+    @Benchmark
+    public SpatialIndex buildIndex() {
+        return new SpatialIndex(lats, lons, sensors, 0.1);
+    }
+}
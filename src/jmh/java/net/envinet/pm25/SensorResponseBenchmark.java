@@ -0,0 +1,84 @@
+package net.envinet.pm25;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Einlesen einer Antwort von {@code airrohr/v1/sensor/<id>/}: früher über
+ * POJO-Listen und {@code String[]}-Zeilen, jetzt direkt aus den Tokens in
+ * {@link Measurements}-Spalten ({@link SnapshotParser#parseColumns}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SensorResponseBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** max_results: 100 wie im festen Takt, 5…10 im adaptiven. */
+    @Param({"10", "100"})
+    public int records;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = SyntheticData.airrohrResponse(81607, records);
+    }
+
+    /** Früheres Modell der API-Antwort. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        public String timestamp;
+        public List<Value> sensordatavalues;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Value {
+        public String value_type;
+        public String value;
+    }
+
+    /** Bisheriger Weg: Entry[] → {timestamp, P2}-Strings → Series. */
+    @Benchmark
+    public Series pojo() throws IOException {
+        Entry[] arr = MAPPER.readValue(response, Entry[].class);
+        List<String[]> rows = new ArrayList<>();
+        for (Entry e : arr) {
+            if (e.timestamp == null || e.sensordatavalues == null) continue;
+            String p2 = e.sensordatavalues.stream()
+                    .filter(v -> "P2".equals(v.value_type))
+                    .map(v -> v.value)
+                    .findFirst()
+                    .orElse(null);
+            if (p2 != null) rows.add(new String[]{e.timestamp, p2});
+        }
+        return Series.fromRows(rows);
+    }
+
+    /** Spaltenweise, nur P2. */
+    @Benchmark
+    public Series columns() throws IOException {
+        Measurements m = new Measurements(List.of("P2"));
+        SnapshotParser.parseColumns(new ByteArrayInputStream(response), m, id -> m);
+        return m.series(0);
+    }
+
+    /** Spaltenweise, P1 und P2 – kostet kaum mehr als nur P2. */
+    @Benchmark
+    public Measurements columnsP1P2() throws IOException {
+        Measurements m = new Measurements(List.of("P2", "P1"));
+        SnapshotParser.parseColumns(new ByteArrayInputStream(response), m, id -> m);
+        return m;
+    }
+}
@@ -0,0 +1,87 @@
+package net.envinet.pm25;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vergleicht das frühere Vorgehen von {@link SensorFinder} (Snapshot zweimal
+ * als String laden und per {@code readTree} parsen) mit dem streamenden
+ * Einlesen über {@link SnapshotParser}.
+ *
+ * Mit {@code -prof gc} (in build.gradle.kts voreingestellt) zeigt
+ * {@code gc.alloc.rate.norm} die Allokation je Durchlauf.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotParseBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"15000"})
+    public int sensors;
+
+    private Path snapshot;
+    private String baseId;
+
+    @Setup
+    public void setup() throws IOException {
+        snapshot = Files.createTempFile("data-v2-", ".json");
+        SyntheticData.writeSnapshotV2(snapshot, sensors, 2);
+        baseId = Long.toString(1000 + sensors / 2);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+
+    /** Bisheriger Weg: Basis suchen und Umkreis filtern, je ein kompletter Baum. */
+    @Benchmark
+    public int treeTwice() throws IOException {
+        JsonNode root = MAPPER.readTree(Files.readString(snapshot, StandardCharsets.UTF_8));
+
+        double lat0 = Double.NaN, lon0 = Double.NaN;
+        for (JsonNode node : root) {
+            if (node.path("sensor").path("id").asText().equals(baseId)) {
+                lat0 = node.path("location").path("latitude").asDouble();
+                lon0 = node.path("location").path("longitude").asDouble();
+                break;
+            }
+        }
+
+        root = MAPPER.readTree(Files.readString(snapshot, StandardCharsets.UTF_8));
+
+        int found = 0;
+        for (JsonNode node : root) {
+            double lat = node.path("location").path("latitude").asDouble();
+            double lon = node.path("location").path("longitude").asDouble();
+            if (Geo.distanceKm(lat0, lon0, lat, lon) < 25.0) found++;
+        }
+        return found;
+    }
+
+    /** Neuer Weg: ein Download, ein streamender Durchlauf, Suche über den Index. */
+    @Benchmark
+    public int streaming() throws IOException {
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            SensorCatalogue catalogue = SensorFinder.parseCatalogue(in);
+            int base = catalogue.indexOf(Long.parseLong(baseId));
+            List<SensorFinder.SensorEntry> near = SensorFinder.nearest(catalogue, SpatialIndex.of(catalogue),
+                    catalogue.lat(base), catalogue.lon(base), 5, 25.0);
+            return near.size();
+        }
+    }
+}
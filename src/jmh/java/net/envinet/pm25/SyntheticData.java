@@ -0,0 +1,120 @@
+package net.envinet.pm25;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Erzeugt reproduzierbare Testdaten für die Benchmarks, angelehnt an die
+ * echten Formate von sensor.community.
+ */
+final class SyntheticData {
+
+    private SyntheticData() {}
+
+    /**
+     * Schreibt einen Snapshot im Format von {@code static/v2/data.json}:
+     * {@code sensors} Sensoren mit je {@code recordsPerSensor} Einträgen,
+     * verteilt über Mitteleuropa.
+     */
+    static void writeSnapshotV2(Path file, int sensors, int recordsPerSensor) throws IOException {
+        Random rnd = new Random(42);
+
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write('[');
+            boolean first = true;
+
+            for (int s = 0; s < sensors; s++) {
+                double lat = 45.0 + rnd.nextDouble() * 10.0;
+                double lon = 5.0 + rnd.nextDouble() * 12.0;
+
+                for (int r = 0; r < recordsPerSensor; r++) {
+                    if (!first) w.write(',');
+                    first = false;
+
+                    w.write(String.format(Locale.US,
+                            "{\"id\":%d,\"sampling_rate\":null,\"timestamp\":\"2025-11-26 10:%02d:%02d\","
+                                    + "\"location\":{\"id\":%d,\"latitude\":\"%.3f\",\"longitude\":\"%.3f\","
+                                    + "\"altitude\":\"520.0\",\"country\":\"DE\",\"exact_location\":0,\"indoor\":0},"
+                                    + "\"sensor\":{\"id\":%d,\"pin\":\"1\",\"sensor_type\":{\"id\":14,\"name\":\"SDS011\",\"manufacturer\":\"Nova Fitness\"}},"
+                                    + "\"sensordatavalues\":[{\"id\":%d,\"value\":\"%.2f\",\"value_type\":\"P1\"},"
+                                    + "{\"id\":%d,\"value\":\"%.2f\",\"value_type\":\"P2\"}]}",
+                            s * 10L + r, r % 60, s % 60, s, lat, lon, 1000 + s,
+                            s * 20L + r, rnd.nextDouble() * 40, s * 20L + r + 1, rnd.nextDouble() * 25));
+                }
+            }
+            w.write(']');
+        }
+    }
+
+    /**
+     * Schreibt eine Sensor-CSV mit {@code rows} Zeilen im Abstand von rund
+     * 150 s, etwa jede zehntausendste Zeile kaputt wie in {@code sensor_81607.csv}.
+     */
+    static void writeSensorCsv(Path file, int rows) throws IOException {
+        writeSensorCsv(file, rows, Timestamps.parse("2020-01-01 00:00:00"));
+    }
+
+    /** Wie {@link #writeSensorCsv(Path, int)}, erste Zeile kurz nach {@code start} (Epoch-Sekunden). */
+    static void writeSensorCsv(Path file, int rows, long start) throws IOException {
+        Random rnd = new Random(7);
+        long t = start;
+
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                t += 145 + rnd.nextInt(10);
+                String ts = Timestamps.format(t);
+                if (i % 10_000 == 9_999) ts = ts.substring(0, 14) + "5" + ts.substring(14);
+                w.write(ts);
+                w.write(',');
+                w.write(Series.formatValue(rnd.nextDouble() * 30));
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * Antwort von {@code airrohr/v1/sensor/<id>/} mit {@code records}
+     * Messungen (P1, P2), neueste zuerst wie bei der API.
+     */
+    static byte[] airrohrResponse(long sensorId, int records) {
+        Random rnd = new Random(11);
+        long t = Timestamps.parse("2025-11-26 10:00:00");
+        StringBuilder sb = new StringBuilder(records * 400).append('[');
+
+        for (int r = 0; r < records; r++) {
+            if (r > 0) sb.append(',');
+            t -= 145 + rnd.nextInt(10);
+            sb.append(String.format(Locale.US,
+                    "{\"id\":%d,\"sampling_rate\":null,\"timestamp\":\"%s\","
+                            + "\"location\":{\"id\":%d,\"latitude\":\"48.522\",\"longitude\":\"9.058\","
+                            + "\"altitude\":\"520.0\",\"country\":\"DE\",\"exact_location\":0,\"indoor\":0},"
+                            + "\"sensor\":{\"id\":%d,\"pin\":\"1\",\"sensor_type\":{\"id\":14,\"name\":\"SDS011\",\"manufacturer\":\"Nova Fitness\"}},"
+                            + "\"sensordatavalues\":[{\"id\":%d,\"value\":\"%.2f\",\"value_type\":\"P1\"},"
+                            + "{\"id\":%d,\"value\":\"%.2f\",\"value_type\":\"P2\"}]}",
+                    30_000_000L + r, Timestamps.format(t), sensorId, sensorId,
+                    60_000_000L + 2L * r, rnd.nextDouble() * 40, 60_000_001L + 2L * r, rnd.nextDouble() * 25));
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** {@code n} Sensoren mit IDs ab 1000, zufällig im Rechteck um Baden-Württemberg. */
+    static List<SensorConfig> sensors(int n) {
+        Random rnd = new Random(3);
+        List<SensorConfig> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            SensorConfig c = new SensorConfig();
+            c.id = Long.toString(1000 + i);
+            c.lat = 47.6 + rnd.nextDouble() * 2.2;
+            c.lon = 7.6 + rnd.nextDouble() * 2.6;
+            out.add(c);
+        }
+        return out;
+    }
+}
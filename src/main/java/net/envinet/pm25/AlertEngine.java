@@ -0,0 +1,346 @@
+package net.envinet.pm25;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wertet die Regeln aus {@code config/alerts.json} auf jedem neuen Messwert aus.
+ *
+ * Je Sensor und Regel gibt es ein Schiebefenster mit laufender Summe bzw.
+ * monotoner Minimum-Schlange, d.h. jeder neue Wert kostet amortisiert O(1);
+ * die Historie wird nie erneut gelesen. Nachbarvergleiche nutzen die
+ * letzten Werte der Nachbarn im festen Umkreis.
+ *
+ * Gemeldet werden nur Zustandswechsel ({@code ausgelöst} / {@code beendet}),
+ * als JSON-Zeilen nach {@code data/alerts.jsonl} (oder an eine eigene {@link Sink}).
+ */
+public class AlertEngine implements AppendListener {
+
+    /** Empfängt Ereignisse; Aufrufe sind serialisiert. */
+    public interface Sink {
+        void emit(Event e) throws IOException;
+    }
+
+    /** Ein Zustandswechsel einer Regel für einen Sensor. */
+    public static final class Event {
+        public final long time;
+        public final String sensorId;
+        public final String rule;
+        public final boolean active;
+        public final double value;
+        public final String message;
+
+        Event(long time, String sensorId, String rule, boolean active, double value, String message) {
+            this.time = time;
+            this.sensorId = sensorId;
+            this.rule = rule;
+            this.active = active;
+            this.value = value;
+            this.message = message;
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final List<AlertRule> rules;
+    private final Sink sink;
+
+    /** Zustand je Sensor; Zugriffe unter der Sperre des jeweiligen Zustands. */
+    private final Map<String, SensorState> states = new ConcurrentHashMap<>();
+    /** Letzter Wert und Zeit je Sensor für Nachbarvergleiche. */
+    private final Map<String, double[]> latest = new ConcurrentHashMap<>();
+    /** Nachbarn je Sensor und Umkreis, einmal berechnet. */
+    private final Map<String, List<String>> neighbours = new ConcurrentHashMap<>();
+
+    public AlertEngine(List<AlertRule> rules, Sink sink) {
+        this.rules = rules;
+        this.sink = sink;
+    }
+
+    /** Regeln aus {@code config/alerts.json}, Ereignisse nach {@code data/alerts.jsonl}. */
+    public static AlertEngine configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final AlertEngine INSTANCE = new AlertEngine(
+                loadRules(Path.of("config", "alerts.json")), fileSink(Path.of("data", "alerts.jsonl")));
+    }
+
+    static List<AlertRule> loadRules(Path file) {
+        if (!Files.exists(file)) return List.of();
+        try {
+            return new ObjectMapper().readValue(file.toFile(), new TypeReference<List<AlertRule>>() {});
+        } catch (IOException e) {
+            System.err.println("AlertEngine: " + file + " konnte nicht gelesen werden: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /** Hängt Ereignisse als JSON-Zeilen an {@code file} an und gibt sie auf der Konsole aus. */
+    public static Sink fileSink(Path file) {
+        return e -> {
+            StringWriter sw = new StringWriter();
+            try (JsonGenerator g = JSON.createGenerator(sw)) {
+                g.writeStartObject();
+                g.writeStringField("time", Timestamps.format(e.time));
+                g.writeStringField("sensor", e.sensorId);
+                g.writeStringField("rule", e.rule);
+                g.writeStringField("state", e.active ? "ausgelöst" : "beendet");
+                g.writeFieldName("value");
+                if (Double.isNaN(e.value)) g.writeNull();
+                else g.writeNumber(Series.formatValue(e.value));
+                g.writeStringField("message", e.message);
+                g.writeEndObject();
+            }
+            sw.write('\n');
+
+            Files.createDirectories(file.getParent());
+            Durable.append(file, sw.toString());
+            System.out.println((e.active ? "🔔 " : "✔ ") + "Alarm " + e.rule + " / Sensor " + e.sensorId
+                    + (e.active ? ": " + e.message : ": beendet"));
+        };
+    }
+
+    // --------------------------------------------------------------------
+    // Auswertung
+    // --------------------------------------------------------------------
+
+    @Override
+    public void onAppend(String sensorId, Series added) throws IOException {
+        if (rules.isEmpty() || added.isEmpty()) return;
+        SensorState st = states.computeIfAbsent(sensorId, id -> new SensorState(id, rules));
+        synchronized (st) {
+            evaluate(st, added);
+        }
+    }
+
+    private void evaluate(SensorState st, Series added) throws IOException {
+        String sensorId = st.id;
+        for (int i = 0; i < added.size(); i++) {
+            long t = added.time(i);
+            double v = added.value(i);
+            if (t <= st.lastTime) continue; // Fenster erwarten aufsteigende Zeiten
+            st.lastTime = t;
+            latest.put(sensorId, new double[]{t, v});
+
+            for (int r = 0; r < rules.size(); r++) {
+                AlertRule rule = rules.get(r);
+                if (!st.applies[r]) continue;
+
+                switch (rule.type) {
+                    case "moving_average" -> {
+                        Window w = st.windows[r];
+                        w.add(t, v, rule.windowMinutes * 60L);
+                        double mean = w.mean();
+                        boolean high = w.count() >= 3 && mean > rule.threshold;
+                        if (high != st.active[r]) {
+                            transition(st, r, t, high, mean, String.format(Locale.US,
+                                    "Mittel %d min = %.1f > %.1f", rule.windowMinutes, mean, rule.threshold));
+                        }
+                    }
+                    case "rate_of_rise" -> {
+                        Window w = st.windows[r];
+                        w.add(t, v, rule.windowMinutes * 60L);
+                        double rise = v - w.min();
+                        boolean rising = rise >= rule.threshold;
+                        if (rising != st.active[r]) {
+                            transition(st, r, t, rising, v, String.format(Locale.US,
+                                    "Anstieg um %.1f in %d min", rise, rule.windowMinutes));
+                        }
+                    }
+                    case "stale" -> transition(st, r, t, false, v, "");
+                    case "neighbour_spike" -> {
+                        double median = neighbourMedian(sensorId, rule.radiusKm, t);
+                        boolean spike = !Double.isNaN(median)
+                                && v > rule.factor * median && v - median >= rule.threshold;
+                        if (spike != st.active[r]) {
+                            transition(st, r, t, spike, v, String.format(Locale.US,
+                                    "%.1f gegenüber Median der Nachbarn %.1f", v, median));
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prüft {@code stale}-Regeln zum Zeitpunkt {@code now} (Epoch-s) für alle
+     * konfigurierten Sensoren; einmal je Zyklus aufrufen.
+     */
+    public void checkStale(List<String> sensorIds, long now) throws IOException {
+        for (int r = 0; r < rules.size(); r++) {
+            AlertRule rule = rules.get(r);
+            if (!"stale".equals(rule.type)) continue;
+
+            for (String id : sensorIds) {
+                SensorState st = states.computeIfAbsent(id, k -> new SensorState(k, rules));
+                if (!st.applies[r]) continue;
+                long newest = st.lastTime == Long.MIN_VALUE ? HotWindow.configured().newest(id) : Long.MIN_VALUE;
+
+                synchronized (st) {
+                    if (st.lastTime == Long.MIN_VALUE && newest != Timestamps.INVALID) st.lastTime = newest;
+                    long ageMin = st.lastTime == Long.MIN_VALUE ? -1 : (now - st.lastTime) / 60;
+                    boolean stale = ageMin < 0 || ageMin >= rule.minutes;
+                    transition(st, r, now, stale, Double.NaN,
+                            ageMin < 0 ? "keine Messwerte" : "seit " + ageMin + " min kein neuer Wert");
+                }
+            }
+        }
+    }
+
+    private void transition(SensorState st, int r, long t, boolean active, double value, String msg)
+            throws IOException {
+        if (st.active[r] == active) return;
+        st.active[r] = active;
+        synchronized (sink) {
+            sink.emit(new Event(t, st.id, rules.get(r).name, active, value, msg));
+        }
+    }
+
+    private double neighbourMedian(String sensorId, double radiusKm, long t) {
+        List<String> near = neighbours.computeIfAbsent(sensorId + "@" + radiusKm,
+                k -> findNeighbours(sensorId, radiusKm));
+
+        double[] vals = new double[near.size()];
+        int n = 0;
+        for (String id : near) {
+            double[] lv = latest.get(id);
+            // nur halbwegs gleichzeitige Werte vergleichen
+            if (lv != null && Math.abs(lv[0] - t) <= 1800) vals[n++] = lv[1];
+        }
+        if (n < 2) return Double.NaN;
+        Arrays.sort(vals, 0, n);
+        return n % 2 == 1 ? vals[n / 2] : (vals[n / 2 - 1] + vals[n / 2]) / 2;
+    }
+
+    private static List<String> findNeighbours(String sensorId, double radiusKm) {
+        SensorConfig self = ConfigLoader.findById(sensorId);
+        List<String> out = new ArrayList<>();
+        if (self == null) return out;
+        for (SensorConfig c : ConfigLoader.getSensors()) {
+            if (c.id.equals(sensorId)) continue;
+            if (c.lat == self.lat && c.lon == self.lon) continue; // gleicher Standort, z.B. Zwillingssensor
+            if (Geo.distanceKm(self.lat, self.lon, c.lat, c.lon) <= radiusKm) out.add(c.id);
+        }
+        return out;
+    }
+
+    private static boolean applies(AlertRule rule, String sensorId) {
+        if (rule.sensors != null && !rule.sensors.contains(sensorId)) return false;
+        if (rule.region != null) {
+            SensorConfig c = ConfigLoader.findById(sensorId);
+            if (c == null) return false;
+            return Geo.distanceKm(rule.region.lat, rule.region.lon, c.lat, c.lon) <= rule.region.radiusKm;
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------
+    // Zustand je Sensor
+    // --------------------------------------------------------------------
+
+    private static final class SensorState {
+        final String id;
+        final boolean[] applies;
+        final boolean[] active;
+        final Window[] windows;
+        long lastTime = Long.MIN_VALUE;
+
+        SensorState(String id, List<AlertRule> rules) {
+            this.id = id;
+            this.applies = new boolean[rules.size()];
+            this.active = new boolean[rules.size()];
+            this.windows = new Window[rules.size()];
+            for (int r = 0; r < rules.size(); r++) {
+                applies[r] = AlertEngine.applies(rules.get(r), id);
+                windows[r] = new Window();
+            }
+        }
+    }
+
+    /**
+     * Zeitfenster mit laufender Summe (Mittel) und monotoner Schlange (Minimum);
+     * jeder Wert wird genau einmal hinzugefügt und einmal entfernt.
+     */
+    static final class Window {
+        // alle Werte im Fenster (Ringpuffer)
+        private long[] times = new long[16];
+        private double[] values = new double[16];
+        private int head, size;
+        private double sum;
+
+        // Kandidaten für das Minimum, Werte aufsteigend (Ringpuffer)
+        private long[] minTimes = new long[16];
+        private double[] minValues = new double[16];
+        private int minHead, minSize;
+
+        void add(long t, double v, long windowSec) {
+            long cutoff = t - windowSec;
+            while (size > 0 && times[head] <= cutoff) {
+                sum -= values[head];
+                head = (head + 1) % times.length;
+                size--;
+            }
+            if (size == 0) sum = 0; // Rundungsfehler der laufenden Summe nicht mitschleppen
+            while (minSize > 0 && minTimes[minHead] <= cutoff) {
+                minHead = (minHead + 1) % minTimes.length;
+                minSize--;
+            }
+
+            if (size == times.length) grow();
+            int tail = (head + size) % times.length;
+            times[tail] = t;
+            values[tail] = v;
+            size++;
+            sum += v;
+
+            // größere Werte am Ende können nie mehr Minimum werden
+            while (minSize > 0 && minValues[(minHead + minSize - 1) % minValues.length] >= v) minSize--;
+            if (minSize == minTimes.length) growMin();
+            int mt = (minHead + minSize) % minTimes.length;
+            minTimes[mt] = t;
+            minValues[mt] = v;
+            minSize++;
+        }
+
+        int count() { return size; }
+
+        double mean() { return size == 0 ? Double.NaN : sum / size; }
+
+        double min() { return minSize == 0 ? Double.NaN : minValues[minHead]; }
+
+        private void grow() {
+            long[] t = new long[times.length * 2];
+            double[] v = new double[t.length];
+            for (int i = 0; i < size; i++) {
+                t[i] = times[(head + i) % times.length];
+                v[i] = values[(head + i) % times.length];
+            }
+            times = t;
+            values = v;
+            head = 0;
+        }
+
+        private void growMin() {
+            long[] t = new long[minTimes.length * 2];
+            double[] v = new double[t.length];
+            for (int i = 0; i < minSize; i++) {
+                t[i] = minTimes[(minHead + i) % minTimes.length];
+                v[i] = minValues[(minHead + i) % minTimes.length];
+            }
+            minTimes = t;
+            minValues = v;
+            minHead = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.envinet.pm25;
+
+import java.util.List;
+
+/**
+ * Eine Regel aus {@code config/alerts.json}.
+ *
+ * <pre>
+ *   type = moving_average   Mittel über windowMinutes &gt; threshold
+ *          rate_of_rise     Anstieg gegenüber dem Minimum in windowMinutes &gt;= threshold
+ *          stale            seit minutes kein neuer Wert
+ *          neighbour_spike  Wert &gt; factor · Median der Nachbarn in radiusKm und mind. threshold darüber
+ * </pre>
+ * Ohne {@code sensors} und {@code region} gilt die Regel für alle Sensoren.
+ */
+public class AlertRule {
+    public String name;
+    public String type;
+    public double threshold;
+    public int windowMinutes = 60;
+    public int minutes = 60;
+    public double radiusKm = 5;
+    public double factor = 2;
+
+    /** Nur diese Sensor-IDs (optional). */
+    public List<String> sensors;
+    /** Nur Sensoren im Umkreis (optional). */
+    public Region region;
+
+    public static class Region { public double lat; public double lon; public double radiusKm; }
+}
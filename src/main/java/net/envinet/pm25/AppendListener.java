@@ -0,0 +1,11 @@
+package net.envinet.pm25;
+
+/**
+ * Wird nach jedem erfolgreichen Speichern neuer Messwerte eines Sensors
+ * aufgerufen – mit genau den Werten, die neu hinzugekommen sind.
+ */
+@FunctionalInterface
+public interface AppendListener {
+
+    void onAppend(String sensorId, Series added) throws Exception;
+}
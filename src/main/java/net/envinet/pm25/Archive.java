@@ -0,0 +1,408 @@
+package net.envinet.pm25;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Historische Daten: Nachladen aus dem Archiv von sensor.community und
+ * Export beliebiger Zeiträume.
+ *
+ * <pre>
+ *   gradle archive --args="backfill &lt;verzeichnis&gt; [id …]"
+ *   gradle archive --args="export &lt;von&gt; &lt;bis&gt; &lt;datei.csv|datei.pmc&gt; [id …]"
+ * </pre>
+ *
+ * <b>backfill</b> liest Tagesdateien im Format von
+ * {@code archive.sensor.community} ({@code 2025-11-25_sds011_sensor_81607.csv},
+ * auch {@code .csv.gz}, beliebig in Unterverzeichnissen) aus einem lokalen
+ * Verzeichnis. Je Sensor werden die Tage in zeitlicher Reihenfolge mit der
+ * gespeicherten Reihe zusammengeführt (gleicher Zeitstempel: der gespeicherte
+ * Wert bleibt) und die Reihe neu geschrieben ({@link SeriesStore#rewrite});
+ * danach werden die Verdichtungen neu aufgebaut. Die Sensoren laufen parallel,
+ * die nächsten Tagesdateien werden vorab auf allen Kernen eingelesen.
+ *
+ * <b>export</b> führt die Reihen der Sensoren per k-Wege-Mischen zu einer
+ * nach Zeit sortierten Datei zusammen: {@code .csv} als
+ * {@code timestamp,sensor,value}, sonst spaltenweise ({@link ColumnarFile}).
+ *
+ * Im Speicher liegen nie ganze Reihen, nur Blöcke je Sensor und die gerade
+ * eingelesenen Tage ({@link SeriesCursor}).
+ */
+public class Archive {
+
+    /** Parallel bearbeitete Sensoren und einlesende Threads. */
+    static final int THREADS = Math.max(1,
+            Integer.getInteger("pm25.archive.threads", Runtime.getRuntime().availableProcessors()));
+
+    /** Messgröße für den Export (Standard P2). */
+    static final String EXPORT_MEASURAND = System.getProperty("pm25.export.measurand", Measurements.PRIMARY);
+
+    /** Je Sensor so viele Tagesdateien im Voraus einlesen. */
+    private static final int READ_AHEAD = THREADS;
+
+    /** Zeilen je geschriebenem Block. */
+    private static final int BLOCK = 8192;
+
+    private static final Pattern DAY_FILE = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2})_.+?_sensor_(\\d+)(?:_indoor)?\\.csv(?:\\.gz)?");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("backfill")) {
+            backfill(Path.of(args[1]), ids(args, 2));
+        } else if (args.length >= 4 && args[0].equals("export")) {
+            export(day(args[1], false), day(args[2], true), Path.of(args[3]), ids(args, 4), EXPORT_MEASURAND);
+        } else {
+            System.err.println("Aufruf: backfill <verzeichnis> [id …] | export <von> <bis> <datei.csv|datei.pmc> [id …]");
+            System.exit(2);
+        }
+    }
+
+    /** Sensor-IDs ab {@code args[from]}, sonst alle aus {@code config/sensors.json}. */
+    private static List<String> ids(String[] args, int from) {
+        if (args.length > from) return List.of(Arrays.copyOfRange(args, from, args.length));
+        return SensorUpdater.getSensorIds();
+    }
+
+    /** {@code 2024-01-31} (ganzer Tag) oder {@code 2024-01-31 12:00:00}. */
+    static long day(String s, boolean end) {
+        long t = Timestamps.parse(s.length() == 10 ? s + (end ? " 23:59:59" : " 00:00:00") : s);
+        if (t == Timestamps.INVALID) throw new IllegalArgumentException("Kein Zeitpunkt: " + s);
+        return t;
+    }
+
+    // --------------------------------------------------------------------
+    // Nachladen aus dem Archiv
+    // --------------------------------------------------------------------
+
+    /** Ergebnis je Sensor. */
+    record Result(String sensorId, int days, int added) {}
+
+    public static List<Result> backfill(Path dir, Collection<String> sensorIds) throws IOException, InterruptedException {
+        Map<String, List<Path>> files = scan(dir, new HashSet<>(sensorIds));
+        System.out.println("⇒ Archiv: " + files.values().stream().mapToInt(List::size).sum()
+                + " Tagesdateien für " + files.size() + " Sensoren, " + THREADS + " Threads");
+
+        ExecutorService sensors = Executors.newFixedThreadPool(THREADS);
+        ExecutorService readers = Executors.newFixedThreadPool(THREADS);
+        try {
+            Map<String, Future<Result>> jobs = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Path>> e : files.entrySet()) {
+                jobs.put(e.getKey(), sensors.submit(() -> backfill(e.getKey(), e.getValue(), readers)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (Map.Entry<String, Future<Result>> e : jobs.entrySet()) {
+                try {
+                    Result r = e.getValue().get();
+                    results.add(r);
+                    System.out.println("⇒ Sensor " + r.sensorId + ": +" + r.added + " Werte aus " + r.days + " Tagen");
+                } catch (ExecutionException ex) {
+                    System.out.println("⇒ Sensor " + e.getKey() + ": Fehler: " + ex.getCause().getMessage());
+                }
+            }
+            System.out.println("✔ Archiv übernommen: +" + results.stream().mapToLong(Result::added).sum() + " Werte");
+            return results;
+        } finally {
+            sensors.shutdownNow();
+            readers.shutdownNow();
+        }
+    }
+
+    /** Tagesdateien je gewünschtem Sensor, nach Tag sortiert. */
+    static Map<String, List<Path>> scan(Path dir, Set<String> wanted) throws IOException {
+        Map<String, List<Path>> bySensor = new TreeMap<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.filter(Files::isRegularFile).forEach(p -> {
+                Matcher m = DAY_FILE.matcher(p.getFileName().toString());
+                if (m.matches() && wanted.contains(m.group(2))) {
+                    bySensor.computeIfAbsent(m.group(2), k -> new ArrayList<>()).add(p);
+                }
+            });
+        }
+        // Dateinamen beginnen mit dem Tag: nach Namen sortiert = nach Zeit
+        for (List<Path> days : bySensor.values()) days.sort(Comparator.comparing(p -> p.getFileName().toString()));
+        return bySensor;
+    }
+
+    private static Result backfill(String id, List<Path> days, ExecutorService readers) throws Exception {
+        SeriesStore store = SeriesStore.configured();
+        List<String> names = Measurements.SELECTED;
+        // erst beim ersten Wert einer Messgröße anlegen: ohne Archivwerte bleibt die Reihe unberührt
+        Merge[] merges = new Merge[names.size()];
+        Deque<Future<Measurements>> ahead = new ArrayDeque<>();
+        int next = 0;
+
+        try {
+            while (next < days.size() || !ahead.isEmpty()) {
+                while (next < days.size() && ahead.size() < READ_AHEAD) {
+                    Path day = days.get(next++);
+                    ahead.add(readers.submit(() -> readDay(day, names)));
+                }
+                Measurements m = ahead.removeFirst().get();
+                Validation.rejected(m.rejected());
+                for (int c = 0; c < m.columns(); c++) {
+                    Series s = m.series(c);
+                    s.sortByTime();
+                    s = Validation.configured().accept(s);
+                    if (s.isEmpty()) continue;
+                    if (merges[c] == null) merges[c] = new Merge(store, Measurements.seriesId(id, names.get(c)));
+                    merges[c].add(s);
+                }
+            }
+
+            int added = 0;
+            for (Merge mg : merges) {
+                if (mg == null) continue;
+                mg.finish();
+                added += mg.added;
+            }
+            // Verdichtungen aus der neuen Fassung, nur wo sich etwas geändert hat
+            for (Merge mg : merges) {
+                if (mg != null && mg.added > 0) Rollups.configured().rebuild(mg.seriesId);
+            }
+            return new Result(id, days.size(), added);
+        } finally {
+            for (Future<Measurements> f : ahead) f.cancel(true);
+            for (Merge mg : merges) {
+                if (mg != null) mg.close();
+            }
+        }
+    }
+
+    /**
+     * Eine Tagesdatei des Archivs: Kopfzeile, dann {@code ;}-getrennte Zeilen
+     * mit {@code timestamp} (UTC, {@code 2025-11-25T00:01:23}) und den Messgrößen.
+     */
+    static Measurements readDay(Path file, List<String> names) throws IOException {
+        Measurements m = new Measurements(names);
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = file.toString().endsWith(".gz") ? new GZIPInputStream(raw, 64 * 1024) : raw;
+             BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+
+            String header = r.readLine();
+            if (header == null) return m;
+            String[] cols = header.split(";", -1);
+            int tsCol = -1;
+            int[] column = new int[cols.length];
+            for (int i = 0; i < cols.length; i++) {
+                String c = cols[i].trim();
+                if (c.equals("timestamp")) tsCol = i;
+                column[i] = m.column(c);
+            }
+            if (tsCol < 0) throw new IOException(file + ": keine Spalte timestamp");
+
+            double[] row = new double[m.columns()];
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String[] f = line.split(";", -1);
+                long t = f.length > tsCol ? Timestamps.parse(f[tsCol]) : Timestamps.INVALID;
+                if (t == Timestamps.INVALID) {
+                    m.reject();
+                    continue;
+                }
+                Arrays.fill(row, Double.NaN);
+                for (int i = 0; i < f.length && i < column.length; i++) {
+                    if (column[i] >= 0 && !f[i].isEmpty()) row[column[i]] = Series.parseValue(f[i]);
+                }
+                m.add(t, row);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Mischt aufsteigende Archivwerte in die gespeicherte Reihe eines Sensors
+     * und schreibt das Ergebnis blockweise in die neue Fassung.
+     */
+    static final class Merge {
+        final String seriesId;
+        private final SeriesStore.Rewrite out;
+        private final SeriesCursor old;
+        private Series oldBlock;
+        private int oldPos;
+        private Series block = new Series(BLOCK);
+        private long last = Long.MIN_VALUE;
+        int added;
+
+        Merge(SeriesStore store, String seriesId) throws IOException {
+            this.seriesId = seriesId;
+            // erst sperren, dann lesen: bis zum Ende kommt nichts Neues dazwischen
+            this.out = store.rewrite(seriesId);
+            SeriesCursor c;
+            try {
+                c = store.cursor(seriesId, Long.MIN_VALUE, Long.MAX_VALUE);
+                oldBlock = c.next();
+            } catch (IOException | RuntimeException e) {
+                out.close();
+                throw e;
+            }
+            this.old = c;
+        }
+
+        void add(Series fresh) throws IOException {
+            for (int i = 0; i < fresh.size(); i++) {
+                long t = fresh.time(i);
+                drainOld(t);
+                // gleicher Zeitstempel: der gespeicherte Wert bleibt
+                if (t > last) {
+                    emit(t, fresh.value(i));
+                    added++;
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            drainOld(Long.MAX_VALUE);
+            if (!block.isEmpty()) out.write(block);
+            // nichts Neues: alte Fassung unangetastet lassen
+            if (added > 0) out.commit();
+        }
+
+        void close() throws IOException {
+            try { old.close(); }
+            finally { out.close(); }
+        }
+
+        private void drainOld(long until) throws IOException {
+            while (oldBlock != null && oldBlock.time(oldPos) <= until) {
+                long t = oldBlock.time(oldPos);
+                if (t > last) emit(t, oldBlock.value(oldPos));
+                if (++oldPos == oldBlock.size()) {
+                    oldBlock = old.next();
+                    oldPos = 0;
+                }
+            }
+        }
+
+        private void emit(long t, double v) throws IOException {
+            block.add(t, v);
+            last = t;
+            if (block.size() == BLOCK) {
+                out.write(block);
+                block = new Series(BLOCK);
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Export
+    // --------------------------------------------------------------------
+
+    /** Schreibt alle Werte mit {@code from <= t <= to}, nach Zeit und Sensor sortiert. */
+    public static long export(long from, long to, Path file, List<String> sensorIds, String measurand)
+            throws IOException {
+        SeriesStore store = SeriesStore.configured();
+        List<Head> heads = new ArrayList<>();
+        PriorityQueue<Head> queue = new PriorityQueue<>(
+                Comparator.comparingLong(Head::time).thenComparingInt(h -> h.index));
+        long rows = 0;
+
+        try {
+            for (int i = 0; i < sensorIds.size(); i++) {
+                Head h = new Head(i, store.cursor(Measurements.seriesId(sensorIds.get(i), measurand), from, to));
+                heads.add(h);
+                if (h.advance()) queue.add(h);
+            }
+
+            boolean csv = file.getFileName().toString().endsWith(".csv");
+            try (Sink out = csv ? new CsvSink(file, sensorIds) : new ColumnarFile.Writer(file, sensorIds, measurand)) {
+                while (!queue.isEmpty()) {
+                    Head h = queue.poll();
+                    out.add(h.time(), h.index, h.value());
+                    rows++;
+                    if (h.advance()) queue.add(h);
+                }
+                out.commit();
+            }
+        } finally {
+            for (Head h : heads) h.cursor.close();
+        }
+
+        System.out.println("✔ Export: " + rows + " Werte (" + measurand + ") von " + sensorIds.size()
+                + " Sensoren → " + file);
+        return rows;
+    }
+
+    /** Aktuelle Position in der Reihe eines Sensors. */
+    private static final class Head {
+        final int index;
+        final SeriesCursor cursor;
+        private Series block;
+        private int pos;
+
+        Head(int index, SeriesCursor cursor) {
+            this.index = index;
+            this.cursor = cursor;
+        }
+
+        long time() { return block.time(pos); }
+
+        double value() { return block.value(pos); }
+
+        /** Nächster Wert; false am Ende. */
+        boolean advance() throws IOException {
+            if (block != null && ++pos < block.size()) return true;
+            block = cursor.next();
+            pos = 0;
+            return block != null;
+        }
+    }
+
+    /** Ziel eines Exports; ohne {@link #commit} bleibt keine Datei zurück. */
+    interface Sink extends AutoCloseable {
+        void add(long time, int sensor, double value) throws IOException;
+
+        void commit() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /** {@code timestamp,sensor,value}, über eine temporäre Datei. */
+    private static final class CsvSink implements Sink {
+        private final Path file, tmp;
+        private final List<String> sensors;
+        private final BufferedWriter w;
+        private final StringBuilder sb = new StringBuilder(48);
+
+        CsvSink(Path file, List<String> sensors) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.sensors = sensors;
+            this.w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+            w.write("timestamp,sensor,value\n");
+        }
+
+        @Override
+        public void add(long time, int sensor, double value) throws IOException {
+            sb.setLength(0);
+            Timestamps.appendTo(sb, time);
+            sb.append(',').append(sensors.get(sensor)).append(',').append(Series.formatValue(value)).append('\n');
+            w.append(sb);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            w.close();
+            Durable.moveAtomically(tmp, file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Binäre Ablage: je Sensor ein Verzeichnis {@code sensor_<id>/} mit
+ * Segmentdateien fester Größe, die per Memory-Map beschrieben und gelesen
+ * werden.
+ *
+ * Kodierung nach dem Gorilla-Verfahren (Facebook, 2015):
+ * <ul>
+ *   <li>Zeitstempel (Epoch-Sekunden) als Delta-of-Delta in 1–36 Bit,</li>
+ *   <li>Werte als {@code float}, XOR zum Vorgänger, nur die signifikanten Bits.</li>
+ * </ul>
+ * Bei gleichmäßigem Messtakt braucht ein Messpunkt so meist 10–25 Bit statt
+ * rund 25 Byte CSV-Text.
+ *
+ * Die Ablage ist rein anhängend: Werte, die nicht neuer als der letzte
+ * gespeicherte Zeitstempel sind, werden verworfen.
+ *
+ * Zugriffe auf einen Sensor laufen unter der Dateisperre
+ * {@code sensor_<id>.lock} ({@link Durable#lockBeside}) – auch zwischen dem
+ * laufenden Programm und {@code gradle archive}.
+ */
+public class BinarySeriesStore implements SeriesStore {
+
+    static final int SEGMENT_SIZE = 128 * 1024;
+
+    /** Punkte je Block beim blockweisen Lesen ({@link #cursor}). */
+    static final int CURSOR_BLOCK = 8192;
+
+    private static final int MAGIC = 0x504D5453; // "PMTS"
+    private static final int VERSION = 1;
+
+    // Kopf eines Segments
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_BITS = 16;
+    private static final int H_FIRST_TS = 24;
+    private static final int H_LAST_TS = 32;
+    private static final int H_LAST_DELTA = 40;
+    private static final int H_LAST_VALUE = 48;
+    private static final int H_LEADING = 52;
+    private static final int H_TRAILING = 56;
+    private static final int HEADER = 64;
+
+    /** Platz für den ungünstigsten Messpunkt: 4+32 Bit Zeit, 2+5+5+32 Bit Wert. */
+    private static final int MAX_POINT_BITS = 80;
+    private static final long PAYLOAD_BITS = (SEGMENT_SIZE - HEADER) * 8L;
+
+    private final Path dir;
+
+    public BinarySeriesStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path sensorDir(String sensorId) {
+        return dir.resolve("sensor_" + sensorId);
+    }
+
+    // --------------------------------------------------------------------
+    // Schreiben
+    // --------------------------------------------------------------------
+
+    @Override
+    public Series append(String sensorId, Series rows) throws IOException {
+        Series added = new Series(rows.size());
+        if (rows.isEmpty()) return added;
+
+        Series sorted = copySorted(rows);
+
+        Files.createDirectories(dir);
+        try (Durable.Lock ignored = lock(sensorId)) {
+            Path sd = sensorDir(sensorId);
+            Files.createDirectories(sd);
+
+            // Nummer aus dem Namen: beiseitegelegte Segmente (.bad) hinterlassen Lücken
+            // und werden nicht wiederverwendet, sonst scheitert ihr nächstes Beiseitelegen
+            List<Path> segments = segments(sd);
+            Path segPath = segments.isEmpty() ? segmentPath(sd, 0) : segments.get(segments.size() - 1);
+            Segment seg = segments.isEmpty() ? Segment.create(segPath) : Segment.open(segPath);
+            int next = Math.max(segmentNumber(segPath), highestBad(sd)) + 1;
+
+            for (int i = 0; i < sorted.size(); i++) {
+                long t = sorted.time(i);
+                if (seg.count() > 0 && t <= seg.lastTs()) continue;
+
+                if (!seg.hasRoom()) {
+                    Durable.pending(segPath.toString(), seg::force);
+                    segPath = segmentPath(sd, next++);
+                    seg = Segment.create(segPath);
+                }
+
+                seg.append(t, (float) sorted.value(i));
+                added.add(t, sorted.value(i));
+            }
+            // force() erst beim Gruppen-Commit, zusammen mit allen anderen Sensoren
+            Durable.pending(segPath.toString(), seg::force);
+        }
+
+        return added;
+    }
+
+    // --------------------------------------------------------------------
+    // Lesen
+    // --------------------------------------------------------------------
+
+    @Override
+    public Series read(String sensorId, long from, long to) throws IOException {
+        if (!Files.isDirectory(sensorDir(sensorId))) return new Series();
+        try (Durable.Lock ignored = lock(sensorId)) {
+            return readLocked(sensorId, from, to);
+        }
+    }
+
+    /** {@link #read} für den, der die Sperre schon hält. */
+    private Series readLocked(String sensorId, long from, long to) throws IOException {
+        Series out = new Series();
+        Path sd = sensorDir(sensorId);
+        if (!Files.isDirectory(sd)) return out;
+
+        for (Path p : segments(sd)) {
+            ByteBuffer buf = mapReadOnly(p);
+            if (buf.getInt(H_MAGIC) != MAGIC) throw new IOException("Kein Segment: " + p);
+
+            int count = buf.getInt(H_COUNT);
+            if (count == 0 || buf.getLong(H_LAST_TS) < from) continue;
+            if (buf.getLong(H_FIRST_TS) > to) break;
+
+            new Decoder(buf).decode(from, to, out, Integer.MAX_VALUE);
+        }
+        return out;
+    }
+
+    /** Aus dem Kopf des letzten nicht leeren Segments. */
+    @Override
+    public long lastTime(String sensorId) throws IOException {
+        Path sd = sensorDir(sensorId);
+        if (!Files.isDirectory(sd)) return Timestamps.INVALID;
+        try (Durable.Lock ignored = lock(sensorId)) {
+            List<Path> segs = segments(sd);
+            for (int i = segs.size() - 1; i >= 0; i--) {
+                ByteBuffer buf = mapReadOnly(segs.get(i));
+                if (buf.getInt(H_COUNT) > 0) return buf.getLong(H_LAST_TS);
+            }
+        }
+        return Timestamps.INVALID;
+    }
+
+    /** Blockweise, höchstens {@link #CURSOR_BLOCK} Punkte je Block; Segmente werden erst beim Lesen geöffnet. */
+    @Override
+    public SeriesCursor cursor(String sensorId, long from, long to) throws IOException {
+        Path sd = sensorDir(sensorId);
+        if (!Files.isDirectory(sd)) return SeriesCursor.of(new Series());
+        List<Path> segs;
+        try (Durable.Lock ignored = lock(sensorId)) {
+            segs = segments(sd);
+        }
+
+        return new SeriesCursor() {
+            private int next;
+            private Decoder dec;
+
+            @Override
+            public Series next() throws IOException {
+                Series out = new Series(CURSOR_BLOCK);
+                while (out.isEmpty()) {
+                    if (dec == null || dec.done()) {
+                        if (dec != null && dec.past) return null;
+                        if (next == segs.size()) return null;
+
+                        ByteBuffer buf;
+                        try (Durable.Lock ignored = lock(sensorId)) {
+                            buf = mapReadOnly(segs.get(next++));
+                        }
+                        if (buf.getInt(H_MAGIC) != MAGIC) throw new IOException("Kein Segment: " + segs.get(next - 1));
+                        if (buf.getInt(H_COUNT) == 0 || buf.getLong(H_LAST_TS) < from) { dec = null; continue; }
+                        if (buf.getLong(H_FIRST_TS) > to) return null;
+                        dec = new Decoder(buf);
+                    }
+                    dec.decode(from, to, out, CURSOR_BLOCK);
+                }
+                return out;
+            }
+        };
+    }
+
+    // --------------------------------------------------------------------
+    // Neue Fassung
+    // --------------------------------------------------------------------
+
+    /**
+     * Schreibt die neue Fassung als eigene Ablage unter {@code .rewrite/}
+     * und tauscht beim {@link Rewrite#commit} das Sensor-Verzeichnis aus.
+     * Was inzwischen angehängt wurde (immer neuer als alles Gespeicherte),
+     * wird vor dem Tausch übernommen.
+     */
+    @Override
+    public Rewrite rewrite(String sensorId) throws IOException {
+        BinarySeriesStore fresh = new BinarySeriesStore(dir.resolve(".rewrite"));
+        Path tmp = fresh.sensorDir(sensorId);
+        deleteTree(tmp);
+
+        return new Rewrite() {
+            private long last = Long.MIN_VALUE;
+
+            @Override
+            public void write(Series rows) throws IOException {
+                if (rows.isEmpty()) return;
+                fresh.append(sensorId, rows);
+                last = Math.max(last, rows.lastTime());
+            }
+
+            @Override
+            public void commit() throws IOException {
+                Durable.commit();
+                Path sd = sensorDir(sensorId);
+                Path old = sd.resolveSibling(sd.getFileName() + ".old");
+                Files.createDirectories(dir);
+                try (Durable.Lock ignored = lock(sensorId)) {
+                    if (last != Long.MIN_VALUE) fresh.append(sensorId, readLocked(sensorId, last + 1, Long.MAX_VALUE));
+                    Durable.commit();
+                    Files.createDirectories(tmp);
+                    restoreSwap(sd);
+
+                    // sd → .old, neue Fassung → sd; .old erst weg, wenn sd wieder steht
+                    if (Files.isDirectory(sd)) Files.move(sd, old, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(tmp, sd, StandardCopyOption.ATOMIC_MOVE);
+                    Durable.syncDirectory(dir);
+                    deleteTree(old);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                deleteTree(tmp);
+            }
+        };
+    }
+
+    /**
+     * Räumt einen abgebrochenen Tausch auf ({@link #rewrite}): fehlt
+     * {@code sd}, aber {@code sd.old} steht noch, gilt wieder die alte
+     * Fassung; steht {@code sd}, ist {@code sd.old} ein Rest und wird gelöscht.
+     * @return true, wenn die alte Fassung zurückgeholt wurde
+     */
+    private static boolean restoreSwap(Path sd) throws IOException {
+        Path old = sd.resolveSibling(sd.getFileName() + ".old");
+        if (!Files.isDirectory(old)) return false;
+        if (Files.isDirectory(sd)) {
+            deleteTree(old);
+            return false;
+        }
+        Files.move(old, sd, StandardCopyOption.ATOMIC_MOVE);
+        Durable.syncDirectory(sd.getParent());
+        return true;
+    }
+
+    /**
+     * Beim Start ({@link Durable#recover}): abgebrochene Tausche unter
+     * {@code dir} rückgängig machen und Segmente mit falscher Länge oder
+     * unplausiblem Kopf beiseitelegen.
+     * @return Anzahl reparierter Sensoren und Segmente
+     */
+    static int recover(Path dir) throws IOException {
+        List<Path> old = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.filter(Files::isDirectory).forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.startsWith("sensor_") && name.endsWith(".old")) old.add(p);
+            });
+        }
+
+        int repaired = 0;
+        for (Path p : old) {
+            String name = p.getFileName().toString();
+            Path sd = p.resolveSibling(name.substring(0, name.length() - ".old".length()));
+            try (Durable.Lock ignored = lock(sd)) {
+                if (restoreSwap(sd)) {
+                    repaired++;
+                    System.out.println("✔ " + sd + ": Tausch abgebrochen, alte Fassung zurückgeholt");
+                }
+            }
+        }
+
+        List<Path> segs = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.filter(p -> p.getFileName().toString().endsWith(".seg")).forEach(segs::add);
+        }
+        for (Path p : segs) {
+            String problem;
+            try (Durable.Lock ignored = lock(p.getParent())) {
+                problem = checkSegment(p);
+                if (problem != null) Files.move(p, p.resolveSibling(p.getFileName() + ".bad"));
+            }
+            if (problem != null) {
+                repaired++;
+                System.out.println("⚠️  " + p + ": " + problem + " – als .bad beiseitegelegt");
+            }
+        }
+        return repaired;
+    }
+
+    /** Prüft Länge und Kopf eines Segments; {@code null}, wenn es in Ordnung ist. */
+    private static String checkSegment(Path p) throws IOException {
+        long size = Files.size(p);
+        if (size != SEGMENT_SIZE) return "Länge " + size + " statt " + SEGMENT_SIZE;
+
+        ByteBuffer buf = mapReadOnly(p);
+        if (buf.getInt(H_MAGIC) != MAGIC || buf.getInt(H_VERSION) != VERSION) return "Kopf unlesbar";
+        int count = buf.getInt(H_COUNT);
+        long bits = buf.getLong(H_BITS);
+        if (count < 0 || bits < 0 || bits > PAYLOAD_BITS) return "Kopf unplausibel";
+        if (count == 0 ? bits != 0 : bits < 32 || buf.getLong(H_LAST_TS) < buf.getLong(H_FIRST_TS)) {
+            return "Kopf unplausibel";
+        }
+        return null;
+    }
+
+    private static void deleteTree(Path p) throws IOException {
+        if (!Files.exists(p)) return;
+        try (Stream<Path> s = Files.walk(p)) {
+            for (Path f : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    /** Belegter Plattenplatz aller Segmente eines Sensors in Byte (tatsächlich kodierte Bits). */
+    public long encodedBytes(String sensorId) throws IOException {
+        long total = 0;
+        Path sd = sensorDir(sensorId);
+        if (!Files.isDirectory(sd)) return 0;
+        for (Path p : segments(sd)) {
+            total += HEADER + (mapReadOnly(p).getLong(H_BITS) + 7) / 8;
+        }
+        return total;
+    }
+
+    /** Dekodiert ein Segment der Reihe nach, auf Wunsch in Teilen. */
+    private static final class Decoder {
+        private final BitReader in;
+        private final int count;
+        private int n;
+        private long t, delta;
+        private int bits;
+        private int leading = -1, trailing;
+        private boolean past;
+
+        Decoder(ByteBuffer buf) {
+            this.in = new BitReader(buf, HEADER);
+            this.count = buf.getInt(H_COUNT);
+            this.t = buf.getLong(H_FIRST_TS);
+        }
+
+        /** true, wenn das Segment zu Ende oder {@code to} überschritten ist. */
+        boolean done() { return past || n == count; }
+
+        /** Hängt höchstens {@code max} Punkte mit {@code from <= t <= to} an {@code out} an. */
+        void decode(long from, long to, Series out, int max) {
+            int added = 0;
+            while (n < count && added < max) {
+                if (n++ == 0) {
+                    bits = (int) in.read(32);
+                } else {
+                    delta += readDod(in);
+                    t += delta;
+
+                    if (in.read(1) != 0) {
+                        if (in.read(1) != 0) {
+                            leading = (int) in.read(5);
+                            int meaningful = (int) in.read(5) + 1;
+                            trailing = 32 - leading - meaningful;
+                        }
+                        int meaningful = 32 - leading - trailing;
+                        bits ^= (int) (in.read(meaningful) << trailing);
+                    }
+                }
+
+                if (t > to) { past = true; return; }
+                if (t >= from) { out.add(t, Float.intBitsToFloat(bits)); added++; }
+            }
+        }
+    }
+
+    private static long readDod(BitReader in) {
+        if (in.read(1) == 0) return 0;
+        if (in.read(1) == 0) return signExtend(in.read(7), 7);
+        if (in.read(1) == 0) return signExtend(in.read(9), 9);
+        if (in.read(1) == 0) return signExtend(in.read(12), 12);
+        return signExtend(in.read(32), 32);
+    }
+
+    private static long signExtend(long v, int bits) {
+        return (v << (64 - bits)) >> (64 - bits);
+    }
+
+    // --------------------------------------------------------------------
+    // Segment: ein Memory-Map zum Anhängen
+    // --------------------------------------------------------------------
+
+    private static final class Segment {
+        private final MappedByteBuffer buf;
+        private final BitWriter out;
+
+        private Segment(MappedByteBuffer buf) {
+            this.buf = buf;
+            this.out = new BitWriter(buf, HEADER, buf.getLong(H_BITS));
+        }
+
+        static Segment create(Path p) throws IOException {
+            MappedByteBuffer buf = mapReadWrite(p);
+            buf.putInt(H_MAGIC, MAGIC);
+            buf.putInt(H_VERSION, VERSION);
+            buf.putInt(H_COUNT, 0);
+            buf.putLong(H_BITS, 0);
+            buf.putInt(H_LEADING, -1);
+            return new Segment(buf);
+        }
+
+        static Segment open(Path p) throws IOException {
+            MappedByteBuffer buf = mapReadWrite(p);
+            if (buf.getInt(H_MAGIC) != MAGIC) throw new IOException("Kein Segment: " + p);
+            return new Segment(buf);
+        }
+
+        int count() { return buf.getInt(H_COUNT); }
+
+        long lastTs() { return buf.getLong(H_LAST_TS); }
+
+        boolean hasRoom() { return PAYLOAD_BITS - out.position() >= MAX_POINT_BITS; }
+
+        void append(long t, float value) {
+            int count = count();
+            int bits = Float.floatToIntBits(value);
+
+            if (count == 0) {
+                buf.putLong(H_FIRST_TS, t);
+                buf.putLong(H_LAST_DELTA, 0);
+                out.write(bits & 0xFFFFFFFFL, 32);
+            } else {
+                long delta = t - buf.getLong(H_LAST_TS);
+                writeDod(delta - buf.getLong(H_LAST_DELTA));
+                buf.putLong(H_LAST_DELTA, delta);
+                writeValue(bits ^ buf.getInt(H_LAST_VALUE));
+            }
+
+            // Nutzdaten zuerst, dann der Kopf – ein Leser sieht nie mehr Punkte als geschrieben
+            buf.putLong(H_BITS, out.position());
+            buf.putLong(H_LAST_TS, t);
+            buf.putInt(H_LAST_VALUE, bits);
+            buf.putInt(H_COUNT, count + 1);
+        }
+
+        private void writeDod(long dod) {
+            if (dod == 0) {
+                out.write(0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                out.write(0b10, 2);
+                out.write(dod & 0x7F, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                out.write(0b110, 3);
+                out.write(dod & 0x1FF, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                out.write(0b1110, 4);
+                out.write(dod & 0xFFF, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod & 0xFFFFFFFFL, 32);
+            }
+        }
+
+        private void writeValue(int xor) {
+            if (xor == 0) {
+                out.write(0, 1);
+                return;
+            }
+            out.write(1, 1);
+
+            int leading = Math.min(31, Integer.numberOfLeadingZeros(xor));
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            int prevLeading = buf.getInt(H_LEADING);
+            int prevTrailing = buf.getInt(H_TRAILING);
+
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                // passt ins vorige Fenster
+                out.write(0, 1);
+                int meaningful = 32 - prevLeading - prevTrailing;
+                out.write((xor >>> prevTrailing) & mask(meaningful), meaningful);
+            } else {
+                int meaningful = 32 - leading - trailing;
+                out.write(1, 1);
+                out.write(leading, 5);
+                out.write(meaningful - 1, 5);
+                out.write((xor >>> trailing) & mask(meaningful), meaningful);
+                buf.putInt(H_LEADING, leading);
+                buf.putInt(H_TRAILING, trailing);
+            }
+        }
+
+        void force() {
+            buf.force();
+        }
+
+        private static long mask(int bits) {
+            return bits == 64 ? -1L : (1L << bits) - 1;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Bitweises Schreiben/Lesen im Puffer
+    // --------------------------------------------------------------------
+
+    private static final class BitWriter {
+        private final ByteBuffer buf;
+        private final int base;
+        private long pos;
+
+        BitWriter(ByteBuffer buf, int base, long pos) {
+            this.buf = buf;
+            this.base = base;
+            this.pos = pos;
+        }
+
+        long position() { return pos; }
+
+        /** Schreibt die unteren {@code n} Bits von {@code value}, höchstwertiges zuerst. */
+        void write(long value, int n) {
+            while (n > 0) {
+                int idx = base + (int) (pos >>> 3);
+                int free = 8 - (int) (pos & 7);
+                int take = Math.min(free, n);
+                int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+                int shift = free - take;
+                int mask = ((1 << take) - 1) << shift;
+                byte b = buf.get(idx);
+                buf.put(idx, (byte) ((b & ~mask) | (chunk << shift)));
+                pos += take;
+                n -= take;
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private final ByteBuffer buf;
+        private final int base;
+        private long pos;
+
+        BitReader(ByteBuffer buf, int base) {
+            this.buf = buf;
+            this.base = base;
+        }
+
+        long read(int n) {
+            long v = 0;
+            while (n > 0) {
+                int idx = base + (int) (pos >>> 3);
+                int avail = 8 - (int) (pos & 7);
+                int take = Math.min(avail, n);
+                int chunk = ((buf.get(idx) & 0xFF) >>> (avail - take)) & ((1 << take) - 1);
+                v = (v << take) | chunk;
+                pos += take;
+                n -= take;
+            }
+            return v;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Dateien
+    // --------------------------------------------------------------------
+
+    private Durable.Lock lock(String sensorId) throws IOException {
+        return lock(sensorDir(sensorId));
+    }
+
+    /** Sperre eines Sensors; die Datei liegt neben dem Verzeichnis, das beim Tausch wechselt. */
+    private static Durable.Lock lock(Path sensorDir) throws IOException {
+        return Durable.lockBeside(sensorDir);
+    }
+
+    private static Path segmentPath(Path sensorDir, int n) {
+        return sensorDir.resolve(String.format("%06d.seg", n));
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - ".seg".length()));
+    }
+
+    /** Höchste Nummer eines beiseitegelegten Segments, sonst -1. */
+    private static int highestBad(Path sensorDir) throws IOException {
+        try (Stream<Path> s = Files.list(sensorDir)) {
+            return s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".seg.bad"))
+                    .mapToInt(n -> Integer.parseInt(n.substring(0, n.length() - ".seg.bad".length())))
+                    .max().orElse(-1);
+        }
+    }
+
+    private static List<Path> segments(Path sensorDir) throws IOException {
+        List<Path> list = new ArrayList<>();
+        try (Stream<Path> s = Files.list(sensorDir)) {
+            s.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().forEach(list::add);
+        }
+        return list;
+    }
+
+    private static MappedByteBuffer mapReadWrite(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        }
+    }
+
+    private static ByteBuffer mapReadOnly(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), SEGMENT_SIZE));
+        }
+    }
+
+    private static Series copySorted(Series rows) {
+        Series s = new Series(rows.size());
+        for (int i = 0; i < rows.size(); i++) s.add(rows.time(i), rows.value(i));
+        s.sortByTime();
+        return s;
+    }
+}
@@ -0,0 +1,26 @@
+package net.envinet.pm25;
+
+/**
+ * Sensoren mit Koordinaten, über Positionen 0…size()-1 adressiert –
+ * gemeinsame Sicht auf {@link SensorCatalogue} (aus einem Snapshot) und
+ * {@link CatalogueFile} (gespeicherter Katalog).
+ */
+public interface Catalogue {
+
+    int size();
+
+    long id(int i);
+
+    double lat(int i);
+
+    double lon(int i);
+
+    /** Sensortyp, z.B. {@code SDS011}; {@code null} wenn unbekannt. */
+    String type(int i);
+
+    /** Zeitstempel der letzten Meldung, {@link Timestamps#INVALID} wenn unbekannt. */
+    long lastSeen(int i);
+
+    /** Position des Sensors im Katalog oder -1. */
+    int indexOf(long id);
+}
@@ -0,0 +1,323 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Gespeicherter Katalog aller bekannten Sensoren ({@code data/catalogue.bin}),
+ * beim Start per Memory-Map geöffnet statt eingelesen.
+ *
+ * <pre>
+ *   Kopf      magic "PMSC", version, count, slots, typeCount, typeBytes   (6 × int)
+ *   Typen     typeCount × (short Länge + UTF-8), auf 8 Byte aufgefüllt
+ *   Sätze     count × 40 Byte, nach ID sortiert:
+ *             id (long), lat (double), lon (double), lastSeen (long), type (int, -1 = unbekannt), frei (int)
+ *   Tabelle   slots × int, offene Adressierung über die ID: Satznummer + 1, 0 = leer
+ * </pre>
+ * {@link #indexOf} kostet damit im Mittel einen bis zwei Zugriffe auf die
+ * Map, unabhängig von der Größe des Katalogs.
+ *
+ * {@link #refresh} gleicht mit einem Snapshot nach ID ab: neue Sensoren
+ * kommen hinzu, bekannte bekommen Position, Typ und letzte Meldung aus dem
+ * Snapshot, fehlende bleiben mit ihrer letzten Meldung erhalten. Die Datei
+ * wird nur bei Änderungen neu geschrieben (temporär + umbenennen).
+ */
+public class CatalogueFile implements Catalogue {
+
+    private static final int MAGIC = 0x504d5343; // "PMSC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int RECORD_BYTES = 40;
+
+    /** Snapshot mit Position und Typ aller Sensoren der letzten 5 Minuten. */
+    static final String SNAPSHOT_URL = "https://data.sensor.community/static/v2/data.json";
+
+    private final Path file;
+
+    // aktueller Stand; refresh() tauscht alles zusammen aus
+    private volatile Mapped mapped = Mapped.EMPTY;
+
+    public CatalogueFile(Path file) {
+        this.file = file;
+    }
+
+    /** Katalog unter {@code data/catalogue.bin}, beim ersten Zugriff geöffnet. */
+    public static CatalogueFile configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final CatalogueFile INSTANCE = open(Path.of("data", "catalogue.bin"));
+    }
+
+    /** Öffnet den Katalog; fehlt oder ist die Datei unlesbar, ist er leer. */
+    static CatalogueFile open(Path file) {
+        CatalogueFile c = new CatalogueFile(file);
+        try {
+            c.map();
+        } catch (IOException e) {
+            System.err.println("CatalogueFile: " + file + " nicht lesbar (" + e.getMessage() + ") – leerer Katalog.");
+        }
+        return c;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    private void map() throws IOException {
+        if (!Files.exists(file)) {
+            mapped = Mapped.EMPTY;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            mapped = new Mapped(buf.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Lesen
+    // --------------------------------------------------------------------
+
+    @Override
+    public int size() { return mapped.count; }
+
+    @Override
+    public long id(int i) { return mapped.buf.getLong(mapped.record(i)); }
+
+    @Override
+    public double lat(int i) { return mapped.buf.getDouble(mapped.record(i) + 8); }
+
+    @Override
+    public double lon(int i) { return mapped.buf.getDouble(mapped.record(i) + 16); }
+
+    @Override
+    public long lastSeen(int i) { return mapped.buf.getLong(mapped.record(i) + 24); }
+
+    @Override
+    public String type(int i) {
+        Mapped m = mapped;
+        int t = m.buf.getInt(m.record(i) + 32);
+        return t < 0 ? null : m.types[t];
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return mapped.indexOf(id);
+    }
+
+    /** Letzte Meldung der Katalogdatei, z.B. für den Hinweis im Offline-Betrieb. */
+    public long newestSeen() {
+        long newest = Timestamps.INVALID;
+        for (int i = 0; i < size(); i++) newest = Math.max(newest, lastSeen(i));
+        return newest;
+    }
+
+    // --------------------------------------------------------------------
+    // Abgleich mit einem Snapshot
+    // --------------------------------------------------------------------
+
+    /** Ergebnis eines Abgleichs. */
+    public record Diff(int added, int changed, int unchanged, int missing) {
+        public boolean isEmpty() { return added == 0 && changed == 0; }
+
+        @Override
+        public String toString() {
+            return added + " neu, " + changed + " geändert, " + unchanged + " unverändert, "
+                    + missing + " nicht im Snapshot";
+        }
+    }
+
+    /** Lädt den Snapshot (bedingt, wenn schon ein Katalog vorliegt) und gleicht ab. */
+    public synchronized Diff refresh() throws IOException, InterruptedException {
+        boolean conditional = size() > 0;
+        try (HttpFetch.Response res = HttpFetch.get(SNAPSHOT_URL, Duration.ofSeconds(120), conditional)) {
+            if (res.notModified()) return new Diff(0, 0, size(), 0);
+            SensorCatalogue snapshot = new SensorCatalogue();
+            SnapshotParser.parse(res.body(), snapshot);
+            Diff diff = refresh(snapshot);
+            res.commit();
+            return diff;
+        }
+    }
+
+    /** Übernimmt {@code snapshot}; schreibt die Datei nur, wenn sich etwas geändert hat. */
+    public synchronized Diff refresh(Catalogue snapshot) throws IOException {
+        Mapped m = mapped;
+        int added = 0, changed = 0, unchanged = 0;
+        boolean seenOnly = false;
+
+        // Sätze nach ID sortiert zusammenführen
+        int n = snapshot.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(snapshot::id));
+
+        List<Rec> merged = new ArrayList<>(m.count + n);
+        int a = 0, b = 0;
+        while (a < m.count || b < n) {
+            long oldId = a < m.count ? id(a) : Long.MAX_VALUE;
+            long newId = b < n ? snapshot.id(order[b]) : Long.MAX_VALUE;
+
+            if (oldId < newId) {
+                merged.add(new Rec(oldId, lat(a), lon(a), lastSeen(a), type(a)));
+                a++;
+                continue;
+            }
+
+            int j = order[b++];
+            Rec fresh = new Rec(newId, snapshot.lat(j), snapshot.lon(j), snapshot.lastSeen(j), snapshot.type(j));
+            if (oldId != newId) {
+                added++;
+            } else {
+                Rec old = new Rec(oldId, lat(a), lon(a), lastSeen(a), type(a));
+                a++;
+                if (fresh.type == null) fresh = fresh.withType(old.type);
+                if (fresh.lastSeen < old.lastSeen) fresh = fresh.withSeen(old.lastSeen);
+                if (!fresh.sameAs(old)) changed++;
+                else {
+                    unchanged++;
+                    seenOnly |= fresh.lastSeen != old.lastSeen;
+                }
+            }
+            merged.add(fresh);
+        }
+        Diff diff = new Diff(added, changed, unchanged, m.count - changed - unchanged);
+
+        // auch nur neuere Meldungen werden gespeichert, sonst veraltet "zuletzt gesehen"
+        if (!diff.isEmpty() || seenOnly) {
+            write(merged);
+            map();
+        }
+        return diff;
+    }
+
+    private record Rec(long id, double lat, double lon, long lastSeen, String type) {
+        Rec withType(String t) { return new Rec(id, lat, lon, lastSeen, t); }
+
+        Rec withSeen(long s) { return new Rec(id, lat, lon, s, type); }
+
+        boolean sameAs(Rec o) {
+            return Double.compare(lat, o.lat) == 0 && Double.compare(lon, o.lon) == 0
+                    && Objects.equals(type, o.type);
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Schreiben
+    // --------------------------------------------------------------------
+
+    private void write(List<Rec> recs) throws IOException {
+        Map<String, Integer> typeIndex = new LinkedHashMap<>();
+        for (Rec r : recs) {
+            if (r.type != null) typeIndex.putIfAbsent(r.type, typeIndex.size());
+        }
+        int typeBytes = 0;
+        List<byte[]> names = new ArrayList<>();
+        for (String t : typeIndex.keySet()) {
+            byte[] b = t.getBytes(StandardCharsets.UTF_8);
+            names.add(b);
+            typeBytes += 2 + b.length;
+        }
+        typeBytes = (typeBytes + 7) & ~7;
+
+        int count = recs.size();
+        int slots = slots(count);
+        int size = HEADER_BYTES + typeBytes + count * RECORD_BYTES + slots * 4;
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(slots).putInt(names.size()).putInt(typeBytes);
+        for (byte[] b : names) buf.putShort((short) b.length).put(b);
+        buf.position(HEADER_BYTES + typeBytes);
+
+        for (Rec r : recs) {
+            buf.putLong(r.id).putDouble(r.lat).putDouble(r.lon).putLong(r.lastSeen)
+               .putInt(r.type == null ? -1 : typeIndex.get(r.type)).putInt(0);
+        }
+
+        int table = buf.position();
+        int mask = slots - 1;
+        for (int i = 0; i < count; i++) {
+            int s = hash(recs.get(i).id) & mask;
+            while (buf.getInt(table + s * 4) != 0) s = (s + 1) & mask;
+            buf.putInt(table + s * 4, i + 1);
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Durable.writeAtomically(file, buf.array());
+    }
+
+    /** Zweierpotenz, höchstens halb belegt. */
+    private static int slots(int count) {
+        return Integer.highestOneBit(Math.max(8, count * 2 - 1)) << 1;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // --------------------------------------------------------------------
+    // Gemappte Datei
+    // --------------------------------------------------------------------
+
+    private static final class Mapped {
+        static final Mapped EMPTY = new Mapped();
+
+        final ByteBuffer buf;
+        final int count, slots, records, table;
+        final String[] types;
+
+        private Mapped() {
+            buf = ByteBuffer.allocate(0);
+            count = slots = records = table = 0;
+            types = new String[0];
+        }
+
+        Mapped(ByteBuffer buf) throws IOException {
+            if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+                throw new IOException("kein Sensor-Katalog (Version " + VERSION + ")");
+            this.buf = buf;
+            count = buf.getInt(8);
+            slots = buf.getInt(12);
+            int typeCount = buf.getInt(16);
+            int typeBytes = buf.getInt(20);
+            records = HEADER_BYTES + typeBytes;
+            table = records + count * RECORD_BYTES;
+            if ((long) table + slots * 4L != buf.capacity() || Integer.bitCount(slots) != 1)
+                throw new IOException("Sensor-Katalog unvollständig");
+
+            types = new String[typeCount];
+            int pos = HEADER_BYTES;
+            for (int t = 0; t < typeCount; t++) {
+                int len = buf.getShort(pos);
+                byte[] b = new byte[len];
+                buf.get(pos + 2, b);
+                types[t] = new String(b, StandardCharsets.UTF_8);
+                pos += 2 + len;
+            }
+        }
+
+        int record(int i) {
+            return records + i * RECORD_BYTES;
+        }
+
+        int indexOf(long id) {
+            if (count == 0) return -1;
+            int mask = slots - 1;
+            for (int s = hash(id) & mask; ; s = (s + 1) & mask) {
+                int e = buf.getInt(table + s * 4);
+                if (e == 0) return -1;
+                if (buf.getLong(record(e - 1)) == id) return e - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spaltenweise Exportdatei ({@code .pmc}), angelehnt an Parquet: die Werte
+ * stehen in Zeilengruppen, innerhalb einer Gruppe Spalte für Spalte, sodass
+ * z.B. nur Zeitstempel und Werte gelesen werden können. Alle Zahlen
+ * little-endian.
+ *
+ * <pre>
+ *   Kopf      magic "PMCX", version                                       (2 × int)
+ *   Gruppen   je Gruppe: rows × long time, rows × int sensor, rows × double value
+ *   Fuß       Messgröße (short Länge + UTF-8),
+ *             sensorCount, je Sensor: short Länge + UTF-8 der ID,
+ *             groupCount, je Gruppe: offset (long), rows (int), minTime (long), maxTime (long)
+ *   Ende      Position des Fußes (long), magic "PMCX"
+ * </pre>
+ * Die Spalte {@code sensor} verweist auf die Sensorliste im Fuß; über
+ * {@code minTime}/{@code maxTime} lassen sich Gruppen außerhalb eines
+ * Zeitraums überspringen.
+ */
+public final class ColumnarFile {
+
+    static final int MAGIC = 0x58434d50; // "PMCX"
+    static final int VERSION = 1;
+
+    /** Zeilen je Gruppe; so viel liegt beim Schreiben höchstens im Speicher. */
+    static final int GROUP_ROWS = 64 * 1024;
+
+    private ColumnarFile() {}
+
+    /** Schreibt zeilenweise, puffert eine Gruppe; erst {@link #commit} legt die Datei an. */
+    static final class Writer implements Archive.Sink {
+        private final Path file, tmp;
+        private final List<String> sensors;
+        private final String measurand;
+        private final FileChannel ch;
+        private final long[] times = new long[GROUP_ROWS];
+        private final int[] sensor = new int[GROUP_ROWS];
+        private final double[] values = new double[GROUP_ROWS];
+        private final ByteBuffer buf = ByteBuffer.allocate(GROUP_ROWS * 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final List<long[]> groups = new ArrayList<>(); // offset, rows, minTime, maxTime
+        private int rows;
+        private boolean closed;
+
+        Writer(Path file, List<String> sensors, String measurand) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.sensors = sensors;
+            this.measurand = measurand;
+            this.ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buf.putInt(MAGIC).putInt(VERSION);
+            write();
+        }
+
+        @Override
+        public void add(long time, int s, double value) throws IOException {
+            times[rows] = time;
+            sensor[rows] = s;
+            values[rows] = value;
+            if (++rows == GROUP_ROWS) flushGroup();
+        }
+
+        private void flushGroup() throws IOException {
+            if (rows == 0) return;
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            for (int i = 0; i < rows; i++) {
+                min = Math.min(min, times[i]);
+                max = Math.max(max, times[i]);
+            }
+            groups.add(new long[]{ch.position(), rows, min, max});
+
+            for (int i = 0; i < rows; i++) buf.putLong(times[i]);
+            for (int i = 0; i < rows; i++) buf.putInt(sensor[i]);
+            for (int i = 0; i < rows; i++) buf.putDouble(values[i]);
+            write();
+            rows = 0;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            flushGroup();
+
+            long footer = ch.position();
+            byte[] m = measurand.getBytes(StandardCharsets.UTF_8);
+            List<byte[]> ids = new ArrayList<>(sensors.size());
+            int size = 2 + m.length + 4 + 4 + groups.size() * 28 + 12;
+            for (String id : sensors) {
+                byte[] b = id.getBytes(StandardCharsets.UTF_8);
+                ids.add(b);
+                size += 2 + b.length;
+            }
+
+            ByteBuffer f = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            f.putShort((short) m.length).put(m);
+            f.putInt(ids.size());
+            for (byte[] b : ids) f.putShort((short) b.length).put(b);
+            f.putInt(groups.size());
+            for (long[] g : groups) f.putLong(g[0]).putInt((int) g[1]).putLong(g[2]).putLong(g[3]);
+            f.putLong(footer).putInt(MAGIC);
+            f.flip();
+            while (f.hasRemaining()) ch.write(f);
+
+            ch.close();
+            closed = true;
+            Durable.moveAtomically(tmp, file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            ch.close();
+            Files.deleteIfExists(tmp);
+        }
+
+        private void write() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -6,32 +6,62 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ConfigLoader {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
-    private static List<SensorConfig> SENSORS;
+    private static volatile List<SensorConfig> SENSORS;
+    /** Sensoren nach ID, für {@link #findById} ohne Durchsuchen der Liste. */
+    private static volatile Map<String, SensorConfig> BY_ID;
 
     public static List<SensorConfig> getSensors() {
-        if (SENSORS == null) {
-            try {
-                SENSORS = MAPPER.readValue(
-                        Path.of("config", "sensors.json").toFile(),
-                        new TypeReference<List<SensorConfig>>() {}
-                );
-            } catch (IOException e) {
-                System.err.println("ConfigLoader: sensors.json konnte nicht gelesen werden: " + e.getMessage());
-                SENSORS = Collections.emptyList();
-            }
-        }
+        if (SENSORS == null) load();
         return SENSORS;
     }
 
     public static SensorConfig findById(String id) {
-        return getSensors().stream()
-                .filter(s -> s.id.equals(id))
-                .findFirst()
-                .orElse(null);
+        if (BY_ID == null) load();
+        return BY_ID.get(id);
+    }
+
+    private static synchronized void load() {
+        if (SENSORS != null) return;
+
+        List<SensorConfig> sensors;
+        try {
+            sensors = MAPPER.readValue(
+                    Path.of("config", "sensors.json").toFile(),
+                    new TypeReference<List<SensorConfig>>() {}
+            );
+        } catch (IOException e) {
+            System.err.println("ConfigLoader: sensors.json konnte nicht gelesen werden: " + e.getMessage());
+            sensors = Collections.emptyList();
+        }
+
+        Map<String, SensorConfig> byId = new HashMap<>(sensors.size() * 2);
+        for (SensorConfig s : sensors) {
+            fillCoordinates(s);
+            byId.putIfAbsent(s.id, s);
+        }
+        BY_ID = byId;
+        SENSORS = Collections.unmodifiableList(sensors);
+    }
+
+    /** Fehlen in sensors.json die Koordinaten, kommen sie aus dem gespeicherten Katalog. */
+    private static void fillCoordinates(SensorConfig s) {
+        if (Geo.isValid(s.lat, s.lon)) return;
+        try {
+            CatalogueFile catalogue = CatalogueFile.configured();
+            int i = catalogue.indexOf(Long.parseLong(s.id.trim()));
+            if (i >= 0 && Geo.isValid(catalogue.lat(i), catalogue.lon(i))) {
+                s.lat = catalogue.lat(i);
+                s.lon = catalogue.lon(i);
+            }
+        } catch (NumberFormatException ignored) {
+            // keine numerische ID: nicht im Katalog
+        }
     }
 }
@@ -0,0 +1,322 @@
+package net.envinet.pm25;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Hängt neue Messwerte an {@code data/sensor_<id>.csv} an, ohne die ganze
+ * Datei zum Deduplizieren zu lesen.
+ *
+ * Neben jeder CSV liegt eine kleine Datei {@code sensor_<id>.csv.hwm} mit
+ * Dateigröße, größtem gespeicherten Zeitstempel (High-Water-Mark) und der
+ * Angabe, ob die Datei aufsteigend sortiert ist:
+ * <ul>
+ *   <li>Zeilen nach der High-Water-Mark werden ohne Lesen angehängt.</li>
+ *   <li>Ältere Zeilen werden gegen das Dateiende geprüft, das von hinten
+ *       nur so weit gelesen wird, wie nötig.</li>
+ *   <li>Bleibt danach eine nachgereichte ältere Zeile übrig, wird sie nicht
+ *       angehängt, sondern einsortiert: die Datei wird einmal sortiert in
+ *       eine temporäre Datei geschrieben, die die CSV per
+ *       {@link Durable#moveAtomically} ersetzt, und bleibt so sortiert. Eine
+ *       unsortierte Datei (ältere Fassung) wird beim nächsten Anhängen ebenso
+ *       sortiert.</li>
+ * </ul>
+ * Passt die gespeicherte Größe nicht zur CSV (Datei extern geändert),
+ * wird der Zustand einmal durch komplettes Lesen neu bestimmt.
+ *
+ * Leser ({@link CsvSeriesStore}) nutzen die Angabe "sortiert", um ab einer
+ * Byte-Position zu lesen, schreiben den Zustand aber nie.
+ *
+ * Angehängt wird unter der Sperre {@code sensor_<id>.csv.lock}
+ * ({@link Durable#lockBeside}) in einem Schreibvorgang; {@code force()}
+ * erfolgt gesammelt über {@link Durable#commit}. Leser sperren nicht: sie
+ * sehen die CSV vor oder nach dem Ersetzen, nie eine halb kopierte.
+ */
+public class CsvAppender {
+
+    private static final int TAIL_CHUNK = 64 * 1024;
+
+    /** Gespeicherter Zustand einer CSV-Datei. */
+    private static final class State {
+        long length;
+        String maxTimestamp = "";
+        boolean ordered = true;
+    }
+
+    /**
+     * Hängt alle Zeilen an, deren Zeitstempel noch nicht in der Datei steht.
+     *
+     * @return die tatsächlich angehängten Zeilen, aufsteigend sortiert
+     */
+    public static List<String[]> append(Path csv, List<String[]> rows) throws IOException {
+        if (rows.isEmpty()) return List.of();
+
+        // Batch selbst deduplizieren und sortieren
+        TreeMap<String, String[]> fresh = new TreeMap<>();
+        for (String[] r : rows) fresh.putIfAbsent(r[0], r);
+
+        // Gesperrt: ein zweiter Schreiber (Thread oder Prozess) wartet, bis diese Zeilen stehen.
+        // Die CSV erst danach öffnen – der Schreiber davor hat sie evtl. durch eine sortierte ersetzt.
+        try (Durable.Lock ignored = Durable.lockBeside(csv);
+             FileChannel ch = FileChannel.open(csv, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            // Abgebrochenes Anhängen hinterlässt eine Zeile ohne Umbruch – weg damit
+            Durable.truncateTornTail(ch);
+
+            State state = readState(csv);
+            if (!state.ordered) return insertSorted(csv, fresh);
+
+            NavigableMap<String, String[]> older = fresh.headMap(state.maxTimestamp, true);
+            if (!older.isEmpty() && state.length > 0) {
+                older.keySet().removeIf(tailTimestamps(csv, older.firstKey())::contains);
+                // nachgereicht: einsortieren statt die Sortierung zu brechen
+                if (!older.isEmpty()) return insertSorted(csv, fresh);
+            }
+
+            if (fresh.isEmpty()) return List.of();
+
+            // Alle Zeilen in einem Schreibvorgang; auf die Platte kommen sie beim Gruppen-Commit
+            StringBuilder sb = new StringBuilder(fresh.size() * 24);
+            for (String[] r : fresh.values()) sb.append(r[0]).append(',').append(r[1]).append('\n');
+            ByteBuffer out = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            long pos = ch.size();
+            while (out.hasRemaining()) pos += ch.write(out, pos);
+            Durable.pending(csv);
+
+            if (fresh.lastKey().compareTo(state.maxTimestamp) > 0) state.maxTimestamp = fresh.lastKey();
+            state.length = pos;
+            writeState(csv, state);
+
+            return new ArrayList<>(fresh.values());
+        }
+    }
+
+    /**
+     * Schreibt die Datei samt den noch nicht vorhandenen Zeilen aus
+     * {@code fresh} sortiert nach {@code <csv>.tmp} und ersetzt die CSV damit
+     * ({@link Durable#moveAtomically}). Gleiche Zeitstempel behalten ihre
+     * Reihenfolge. Nur unter der Sperre aufrufen.
+     */
+    private static List<String[]> insertSorted(Path csv, TreeMap<String, String[]> fresh) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank()) continue;
+                fresh.remove(timestampOf(line));
+                lines.add(line);
+            }
+        }
+        for (String[] r : fresh.values()) lines.add(r[0] + "," + r[1]);
+        lines.sort(Comparator.comparing(CsvAppender::timestampOf));
+
+        Path tmp = csv.resolveSibling(csv.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                w.write(line);
+                w.write('\n');
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Durable.moveAtomically(tmp, csv);
+
+        State state = new State();
+        state.length = Files.size(csv);
+        state.maxTimestamp = lines.isEmpty() ? "" : timestampOf(lines.get(lines.size() - 1));
+        writeState(csv, state);
+
+        return new ArrayList<>(fresh.values());
+    }
+
+    // --------------------------------------------------------------------
+    // Zustandsdatei: "<länge>,<max-zeitstempel>,<sortiert 1/0>"
+    // --------------------------------------------------------------------
+
+    private static Path stateFile(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + ".hwm");
+    }
+
+    /**
+     * Größter gespeicherter Zeitstempel ({@code ""} bei leerer Datei), ohne
+     * Sperre und ohne zu schreiben: aus der Zustandsdatei, wenn sie zur CSV
+     * passt, sonst aus der letzten vollständigen Zeile.
+     */
+    static String maxTimestamp(Path csv) throws IOException {
+        if (!Files.exists(csv)) return "";
+        State s = peekState(csv, Files.size(csv));
+        return s != null ? s.maxTimestamp : lastTimestamp(csv);
+    }
+
+    /**
+     * true, wenn die Zustandsdatei zur CSV passt und sie als aufsteigend
+     * ausweist – ohne Sperre und ohne zu schreiben. Im Zweifel (fehlender
+     * oder veralteter Zustand) {@code false}.
+     */
+    static boolean ordered(Path csv) throws IOException {
+        if (!Files.exists(csv)) return false;
+        State s = peekState(csv, Files.size(csv));
+        return s != null && s.ordered;
+    }
+
+    /** Vor dem Ersetzen der CSV: ein alter Zustand darf nicht zufällig zur neuen Größe passen. */
+    static void forget(Path csv) throws IOException {
+        Files.deleteIfExists(stateFile(csv));
+    }
+
+    /** Nach dem Ersetzen der CSV (unter der Sperre): Zustand der neuen Fassung, ohne sie zu lesen. */
+    static void remember(Path csv, String maxTimestamp, boolean ordered) throws IOException {
+        State s = new State();
+        s.length = Files.size(csv);
+        s.maxTimestamp = maxTimestamp;
+        s.ordered = ordered;
+        writeState(csv, s);
+    }
+
+    private static State readState(Path csv) throws IOException {
+        if (!Files.exists(csv)) return new State();
+
+        long length = Files.size(csv);
+        State s = peekState(csv, length);
+        return s != null ? s : scanState(csv, length);
+    }
+
+    /** Gespeicherter Zustand, wenn er zur Länge {@code length} passt, sonst {@code null}. */
+    private static State peekState(Path csv, long length) throws IOException {
+        String[] a;
+        try {
+            a = Files.readString(stateFile(csv), StandardCharsets.UTF_8).trim().split(",", -1);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (a.length != 3) return null;
+        try {
+            State s = new State();
+            s.length = Long.parseLong(a[0]);
+            s.maxTimestamp = a[1];
+            s.ordered = "1".equals(a[2]);
+            return s.length == length ? s : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static State scanState(Path csv, long length) throws IOException {
+        State s = new State();
+        s.length = length;
+
+        String prev = "";
+        try (BufferedReader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String ts = timestampOf(line);
+                if (ts.compareTo(prev) < 0) s.ordered = false;
+                if (ts.compareTo(s.maxTimestamp) > 0) s.maxTimestamp = ts;
+                prev = ts;
+            }
+        }
+
+        writeState(csv, s);
+        return s;
+    }
+
+    private static void writeState(Path csv, State s) throws IOException {
+        String text = s.length + "," + s.maxTimestamp + "," + (s.ordered ? "1" : "0");
+        Durable.writeAtomically(stateFile(csv), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // --------------------------------------------------------------------
+    // Bekannte Zeitstempel am Dateiende
+    // --------------------------------------------------------------------
+
+    /**
+     * Zeitstempel vom Dateiende rückwärts, bis eine Zeile älter als
+     * {@code oldest} ist. Setzt eine aufsteigend sortierte Datei voraus.
+     */
+    private static Set<String> tailTimestamps(Path csv, String oldest) throws IOException {
+        Set<String> known = new HashSet<>();
+
+        try (FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long end = ch.size();
+            byte[] carry = new byte[0]; // angeschnittene Zeile vom Anfang des zuletzt gelesenen Blocks
+
+            while (end > 0) {
+                int n = (int) Math.min(TAIL_CHUNK, end);
+                long start = end - n;
+
+                ByteBuffer buf = ByteBuffer.allocate(n + carry.length);
+                while (buf.position() < n && ch.read(buf, start + buf.position()) >= 0) { /* weiterlesen */ }
+                buf.position(n);
+                buf.put(carry);
+                byte[] block = buf.array();
+                end = start;
+
+                // Vor dem ersten Zeilenumbruch steht (außer am Dateianfang) eine angeschnittene Zeile
+                int from = 0;
+                if (end > 0) {
+                    while (from < block.length && block[from] != '\n') from++;
+                    carry = Arrays.copyOf(block, Math.min(from, block.length));
+                    from++;
+                }
+
+                String first = null;
+                for (int i = from; i < block.length; ) {
+                    int nl = i;
+                    while (nl < block.length && block[nl] != '\n') nl++;
+                    String line = new String(block, i, nl - i, StandardCharsets.UTF_8);
+                    if (!line.isBlank()) {
+                        String ts = timestampOf(line);
+                        known.add(ts);
+                        if (first == null) first = ts;
+                    }
+                    i = nl + 1;
+                }
+
+                if (first != null && first.compareTo(oldest) < 0) break;
+            }
+        }
+
+        return known;
+    }
+
+    /**
+     * Zeitstempel der letzten vollständigen Zeile ({@code ""} ohne eine);
+     * Text nach dem letzten Umbruch ist ein noch laufendes oder abgebrochenes
+     * Anhängen. Setzt eine aufsteigend sortierte Datei voraus.
+     */
+    private static String lastTimestamp(Path csv) throws IOException {
+        try (FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (long n = Math.min(TAIL_CHUNK, size); ; n = Math.min(2 * n, size)) {
+                long start = size - n;
+                ByteBuffer buf = ByteBuffer.allocate((int) n);
+                while (buf.hasRemaining() && ch.read(buf, start + buf.position()) >= 0) { /* weiterlesen */ }
+                byte[] block = buf.array();
+
+                int end = buf.position() - 1;
+                while (end >= 0 && block[end] != '\n') end--;
+                while (end >= 0) {
+                    int begin = end - 1;
+                    while (begin >= 0 && block[begin] != '\n') begin--;
+                    if (begin < 0 && start > 0) break; // Zeile angeschnitten: mehr lesen
+                    String line = new String(block, begin + 1, end - begin - 1, StandardCharsets.UTF_8);
+                    if (!line.isBlank()) return timestampOf(line);
+                    end = begin;
+                }
+                if (start == 0) return "";
+            }
+        }
+    }
+
+    private static String timestampOf(String line) {
+        return line.split(",", -1)[0].trim();
+    }
+}
@@ -0,0 +1,284 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Liest {@code sensor_<id>.csv} in einem Durchgang direkt in eine
+ * {@link Series}: Bytes blockweise lesen, Zeitstempel und Wert ohne
+ * Zwischen-Strings parsen, sortieren nur wenn die Datei nicht schon
+ * aufsteigend ist (der Normalfall).
+ *
+ * Aufsteigende Dateien können ab einem Zeitpunkt gelesen werden
+ * ({@link #cursor}, {@link #readSorted}): die Byte-Position wird per
+ * Binärsuche über die Zeitstempel einzelner Zeilen bestimmt, geparst wird
+ * nur der angefragte Bereich.
+ *
+ * Kaputte Zeilen (z.B. {@code 2025-11-25 22:582:28,3.47}) werden
+ * übersprungen und in {@link #skippedRows()} gezählt. Eine letzte Zeile
+ * ohne Zeilenumbruch gilt als noch nicht fertig geschrieben und wird
+ * ignoriert.
+ */
+public class CsvSeriesReader {
+
+    private static final int BLOCK = 64 * 1024;
+
+    /** So viel wird je Schritt der Binärsuche gelesen; reicht für zwei Zeilen. */
+    private static final int PROBE = 256;
+
+    private int rows;
+    private int skipped;
+    /** Eine Zeile nach dem Bereichsende gesehen: in einer aufsteigenden Datei kommt nichts mehr. */
+    private boolean beyond;
+
+    /** Gelesene gültige Zeilen im letzten Aufruf (auch außerhalb des Zeitbereichs). */
+    public int rows() { return rows; }
+
+    /** Übersprungene, nicht lesbare Zeilen im letzten Aufruf. */
+    public int skippedRows() { return skipped; }
+
+    public Series read(Path csv) throws IOException {
+        return read(csv, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Alle Werte mit {@code from <= t <= to}, aufsteigend sortiert. */
+    public Series read(Path csv, long from, long to) throws IOException {
+        rows = 0;
+        skipped = 0;
+
+        long size = Files.size(csv);
+        // ca. 25 Byte je Zeile
+        Series s = new Series((int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, size / 24)));
+
+        try (InputStream in = Files.newInputStream(csv)) {
+            byte[] buf = new byte[BLOCK];
+            int len = 0;
+
+            while (true) {
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0) break;
+                len += n;
+
+                int start = 0;
+                for (int i = 0; i < len; i++) {
+                    if (buf[i] == '\n') {
+                        parseLine(buf, start, i, from, to, s);
+                        start = i + 1;
+                    }
+                }
+
+                // Rest der angefangenen Zeile nach vorne schieben
+                len -= start;
+                System.arraycopy(buf, start, buf, 0, len);
+                if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            // Eine Zeile ohne Umbruch am Ende wird gerade angehängt (oder ist
+            // angeschnitten, siehe Durable#recover) und wird nicht gelesen.
+        }
+
+        s.sortByTime();
+        return s;
+    }
+
+    /**
+     * Wie {@link #read(Path, long, long)} für aufsteigende Dateien: ab der
+     * Position von {@code from} und nur bis {@code to} gelesen.
+     */
+    public Series readSorted(Path csv, long from, long to) throws IOException {
+        Series s = new Series();
+        try (SeriesCursor c = cursor(csv, from, to)) {
+            for (Series b = c.next(); b != null; b = c.next()) {
+                for (int i = 0; i < b.size(); i++) s.add(b.time(i), b.value(i));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Wie {@link #read(Path, long, long)}, aber blockweise, ab der Position
+     * von {@code from} und ohne zu sortieren – nur für aufsteigende Dateien
+     * ({@link CsvAppender#ordered}).
+     */
+    public SeriesCursor cursor(Path csv, long from, long to) throws IOException {
+        rows = 0;
+        skipped = 0;
+        beyond = false;
+        FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ);
+        InputStream in;
+        try {
+            in = Channels.newInputStream(ch.position(from == Long.MIN_VALUE ? 0 : seek(ch, from)));
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+
+        return new SeriesCursor() {
+            private final byte[] buf = new byte[BLOCK];
+            private int len;
+            private boolean done;
+
+            @Override
+            public Series next() throws IOException {
+                while (!done) {
+                    int n = in.read(buf, len, buf.length - len);
+                    if (n < 0) break;
+                    len += n;
+
+                    Series out = new Series(len / 24 + 1);
+                    int start = 0;
+                    for (int i = 0; i < len; i++) {
+                        if (buf[i] == '\n') {
+                            parseLine(buf, start, i, from, to, out);
+                            start = i + 1;
+                        }
+                    }
+                    len -= start;
+                    System.arraycopy(buf, start, buf, 0, len);
+                    // überlange Zeile: verwerfen statt den Puffer wachsen zu lassen
+                    if (len == buf.length) { skipped++; len = 0; }
+
+                    done = beyond;
+                    if (!out.isEmpty()) return out;
+                }
+                done = true;
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Anfang einer Zeile, vor der nur Zeilen mit {@code t < from} stehen
+     * (Binärsuche, setzt eine aufsteigende Datei voraus). Ab hier gelesen
+     * fehlt also keine Zeile mit {@code t >= from}.
+     */
+    static long seek(FileChannel ch, long from) throws IOException {
+        long lo = 0, hi = ch.size();
+        ByteBuffer buf = ByteBuffer.allocate(PROBE);
+        byte[] b = buf.array();
+
+        while (hi - lo > BLOCK) {
+            long mid = (lo + hi) >>> 1;
+            buf.clear();
+            while (buf.hasRemaining() && ch.read(buf, mid + buf.position()) >= 0) { /* weiterlesen */ }
+            int n = buf.position();
+
+            // erste vollständige Zeile nach mid
+            int start = indexOf(b, 0, n, (byte) '\n') + 1;
+            int end = start > 0 ? indexOf(b, start, n, (byte) '\n') : -1;
+            int comma = end > 0 ? indexOf(b, start, end, (byte) ',') : -1;
+            long t = comma > 0 ? Timestamps.parse(b, start, comma) : Timestamps.INVALID;
+
+            // unlesbar (kaputte oder überlange Zeile): vorsichtshalber links weitersuchen
+            if (t != Timestamps.INVALID && t < from) lo = mid + start;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** true, wenn die lesbaren Zeilen aufsteigend sind (ein Durchgang, Speicher je Block). */
+    public static boolean isSorted(Path csv) throws IOException {
+        CsvSeriesReader r = new CsvSeriesReader();
+        long prev = Long.MIN_VALUE;
+        try (SeriesCursor c = r.cursor(csv, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            for (Series s = c.next(); s != null; s = c.next()) {
+                if (!s.isSorted() || s.time(0) < prev) return false;
+                prev = s.lastTime();
+            }
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------
+    // Zeile "timestamp,value[,...]"
+    // --------------------------------------------------------------------
+
+    private void parseLine(byte[] b, int from, int to, long tFrom, long tTo, Series out) {
+        if (to > from && b[to - 1] == '\r') to--;
+        if (isBlank(b, from, to)) return;
+
+        int comma = indexOf(b, from, to, (byte) ',');
+        if (comma < 0) { skipped++; return; }
+
+        int end = indexOf(b, comma + 1, to, (byte) ',');
+        if (end < 0) end = to;
+
+        long t = Timestamps.parse(b, from, comma);
+        double v = parseDecimal(b, comma + 1, end);
+        if (t == Timestamps.INVALID || Double.isNaN(v)) { skipped++; return; }
+
+        rows++;
+        if (t > tTo) beyond = true;
+        else if (t >= tFrom) out.add(t, v);
+    }
+
+    /**
+     * Dezimalzahl wie {@code -12.34} ohne String; andere Schreibweisen
+     * (Exponent, sehr viele Stellen) gehen über {@link Double#parseDouble}.
+     */
+    static double parseDecimal(byte[] b, int from, int to) {
+        while (from < to && b[from] <= ' ') from++;
+        while (to > from && b[to - 1] <= ' ') to--;
+        if (from == to) return Double.NaN;
+
+        int i = from;
+        boolean neg = false;
+        if (b[i] == '-' || b[i] == '+') { neg = b[i] == '-'; i++; }
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false;
+
+        for (; i < to; i++) {
+            int c = b[i];
+            if (c >= '0' && c <= '9') {
+                if (++digits > 17) return slowParse(b, from, to);
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) scale++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return slowParse(b, from, to);
+            }
+        }
+        if (digits == 0) return Double.NaN;
+
+        double v = scale < POW10.length ? mantissa / POW10[scale] : slowParse(b, from, to);
+        return neg ? -v : v;
+    }
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17};
+
+    private static double slowParse(byte[] b, int from, int to) {
+        try { return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII)); }
+        catch (NumberFormatException ex) { return Double.NaN; }
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] > ' ') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package net.envinet.pm25;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Textablage: eine Datei {@code sensor_<id>.csv} mit Zeilen {@code timestamp,value}. */
+public class CsvSeriesStore implements SeriesStore {
+
+    private final Path dir;
+
+    public CsvSeriesStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path file(String sensorId) {
+        return dir.resolve("sensor_" + sensorId + ".csv");
+    }
+
+    @Override
+    public Series append(String sensorId, Series rows) throws IOException {
+        List<String[]> lines = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            lines.add(new String[]{Timestamps.format(rows.time(i)), Series.formatValue(rows.value(i))});
+        }
+
+        Files.createDirectories(dir);
+        return Series.fromRows(CsvAppender.append(file(sensorId), lines));
+    }
+
+    /** Aufsteigende Dateien (laut {@link CsvAppender#ordered}) ab {@code from}, sonst komplett. */
+    @Override
+    public Series read(String sensorId, long from, long to) throws IOException {
+        Path p = file(sensorId);
+        if (!Files.exists(p)) return new Series();
+        CsvSeriesReader r = new CsvSeriesReader();
+        return CsvAppender.ordered(p) ? r.readSorted(p, from, to) : r.read(p, from, to);
+    }
+
+    /** Aus der High-Water-Mark ({@link CsvAppender}). */
+    @Override
+    public long lastTime(String sensorId) throws IOException {
+        Path p = file(sensorId);
+        if (!Files.exists(p)) return Timestamps.INVALID;
+        long t = Timestamps.parse(CsvAppender.maxTimestamp(p));
+        return t != Timestamps.INVALID ? t : SeriesStore.super.lastTime(sensorId);
+    }
+
+    /**
+     * Aufsteigende Dateien (der Normalfall, laut {@link CsvAppender#ordered})
+     * blockweise ab {@code from}, sonst einmal komplett gelesen und sortiert.
+     */
+    @Override
+    public SeriesCursor cursor(String sensorId, long from, long to) throws IOException {
+        Path p = file(sensorId);
+        if (!Files.exists(p)) return SeriesCursor.of(new Series());
+        if (!CsvAppender.ordered(p)) return SeriesCursor.of(new CsvSeriesReader().read(p, from, to));
+        return new CsvSeriesReader().cursor(p, from, to);
+    }
+
+    /**
+     * Schreibt die neue Fassung nach {@code sensor_<id>.csv.tmp}; beim
+     * {@link Rewrite#commit} ersetzt sie unter Sperre ({@link Durable#lockBeside})
+     * die CSV per Umbenennen und hinterlegt deren Zustand ({@link CsvAppender}),
+     * damit Leser ohne erneutes Prüfen wissen, ob sie aufsteigend ist.
+     */
+    @Override
+    public Rewrite rewrite(String sensorId) throws IOException {
+        Files.createDirectories(dir);
+        Path csv = file(sensorId);
+        Path tmp = csv.resolveSibling(csv.getFileName() + ".tmp");
+
+        Durable.Lock lock = Durable.lockBeside(csv);
+        BufferedWriter w;
+        try {
+            w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            lock.close();
+            throw e;
+        }
+
+        return new Rewrite() {
+            private final StringBuilder sb = new StringBuilder(32);
+            private long last = Long.MIN_VALUE;
+            private long max = Long.MIN_VALUE;
+            private boolean ordered = true;
+            private boolean committed;
+
+            @Override
+            public void write(Series rows) throws IOException {
+                for (int i = 0; i < rows.size(); i++) {
+                    long t = rows.time(i);
+                    if (t < last) ordered = false;
+                    last = t;
+                    max = Math.max(max, t);
+                    sb.setLength(0);
+                    Timestamps.appendTo(sb, t);
+                    sb.append(',').append(Series.formatValue(rows.value(i))).append('\n');
+                    w.append(sb);
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                w.close();
+                // Zustand zuerst verwerfen: passt er nach einem Absturz zufällig zur neuen Größe, wäre er falsch
+                CsvAppender.forget(csv);
+                Durable.moveAtomically(tmp, csv);
+                committed = true;
+                CsvAppender.remember(csv, max == Long.MIN_VALUE ? "" : Timestamps.format(max), ordered);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    if (!committed) {
+                        w.close();
+                        Files.deleteIfExists(tmp);
+                    }
+                } finally {
+                    lock.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package net.envinet.pm25;
+
+/**
+ * Ausdünnen von Zeitreihen für Charts.
+ */
+public final class Downsampling {
+
+    private Downsampling() {}
+
+    /**
+     * Largest-Triangle-Three-Buckets (S. Steinarsson, 2013): wählt höchstens
+     * {@code maxPoints} Punkte aus {@code s[from, to)}, sodass der Kurvenverlauf
+     * (Spitzen, Täler) erhalten bleibt. Erster und letzter Punkt bleiben immer.
+     */
+    public static Series lttb(Series s, int from, int to, int maxPoints) {
+        int n = to - from;
+        Series out = new Series(Math.min(n, Math.max(1, maxPoints)));
+
+        if (n <= maxPoints || maxPoints < 3) {
+            for (int i = from; i < to; i++) out.add(s.time(i), s.value(i));
+            return out;
+        }
+
+        double every = (double) (n - 2) / (maxPoints - 2);
+        int a = from;
+        out.add(s.time(a), s.value(a));
+
+        for (int b = 0; b < maxPoints - 2; b++) {
+            // Mittelwert des nächsten Eimers als dritter Dreieckspunkt
+            int nextStart = from + (int) Math.floor((b + 1) * every) + 1;
+            int nextEnd = Math.min(to, from + (int) Math.floor((b + 2) * every) + 1);
+            double avgT = 0, avgV = 0;
+            int cnt = Math.max(1, nextEnd - nextStart);
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgT += s.time(i);
+                avgV += s.value(i);
+            }
+            avgT /= cnt;
+            avgV /= cnt;
+
+            // Punkt im aktuellen Eimer mit der größten Dreiecksfläche
+            int start = from + (int) Math.floor(b * every) + 1;
+            int end = from + (int) Math.floor((b + 1) * every) + 1;
+            double ta = s.time(a), va = s.value(a);
+            double maxArea = -1;
+            int pick = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ta - avgT) * (s.value(i) - va) - (ta - s.time(i)) * (avgV - va));
+                if (area > maxArea) {
+                    maxArea = area;
+                    pick = i;
+                }
+            }
+
+            out.add(s.time(pick), s.value(pick));
+            a = pick;
+        }
+
+        out.add(s.time(to - 1), s.value(to - 1));
+        return out;
+    }
+}
@@ -0,0 +1,363 @@
+package net.envinet.pm25;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Absturz- und nebenläufigkeitssicheres Schreiben.
+ *
+ * <ul>
+ *   <li>{@link #locked}: Anhängen an eine Datei nur unter Sperre – im
+ *       Prozess per Monitor, zwischen Prozessen per {@link FileLock}.</li>
+ *   <li>{@link #pending}/{@link #commit}: statt nach jedem Anhängen
+ *       {@code force()} aufzurufen, werden alle geänderten Dateien eines
+ *       Zyklus gemeinsam auf die Platte gebracht (Gruppen-Commit).</li>
+ *   <li>{@link #writeAtomically}: ganze Dateien (Karte, Metriken, Kataloge)
+ *       über eine gesicherte temporäre Datei und Umbenennen – Leser sehen nie
+ *       eine halbe Datei, nach einem Absturz steht die alte oder die neue.</li>
+ *   <li>{@link #lockBeside}: Sperre auf {@code <datei>.lock} für Dateien,
+ *       die unter der Sperre durch Umbenennen ersetzt werden (Messreihen):
+ *       Leser brauchen keine Sperre, sie öffnen die alte oder die neue Fassung.</li>
+ *   <li>{@link #recover}: beim Start werden angeschnittene letzte Zeilen
+ *       eines abgebrochenen Schreibvorgangs entfernt.</li>
+ * </ul>
+ */
+public final class Durable {
+
+    /** Eine Aktion, die eine Datei auf die Platte bringt. */
+    @FunctionalInterface
+    public interface Force {
+        void force() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ChannelAction<T> {
+        T apply(FileChannel ch) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface WriterAction {
+        void write(Writer w) throws IOException;
+    }
+
+    private static final Metrics.Histogram COMMIT = Metrics.histogram(
+            "pm25_store_commit_seconds", "Gruppen-Commit (force) aller geänderten Dateien");
+    private static final Metrics.Counter TORN = Metrics.counter(
+            "pm25_store_torn_tails_total", "Reparierte angeschnittene Zeilen (Schreibabbruch)");
+
+    private static final Map<Path, ReentrantLock> MONITORS = new ConcurrentHashMap<>();
+    /** Geänderte, noch nicht gesicherte Dateien; Schlüssel = Pfad. */
+    private static final Map<String, Force> PENDING = new LinkedHashMap<>();
+
+    private Durable() {}
+
+    // --------------------------------------------------------------------
+    // Sperren
+    // --------------------------------------------------------------------
+
+    /**
+     * Führt {@code action} mit einem exklusiv gesperrten Kanal auf {@code file}
+     * aus (Datei wird bei Bedarf angelegt). Zwei Schreiber – auch aus
+     * verschiedenen Prozessen – hängen so nie gleichzeitig an.
+     */
+    public static <T> T locked(Path file, ChannelAction<T> action) throws IOException {
+        try (Lock lock = lock(file)) {
+            return action.apply(lock.channel());
+        }
+    }
+
+    /** Wie {@link #locked}, die Sperre hält aber bis {@link Lock#close}. */
+    public static Lock lock(Path file) throws IOException {
+        // FileLock gilt je Prozess: Threads desselben Prozesses zuerst über die Sperre im Speicher
+        ReentrantLock monitor = MONITORS.computeIfAbsent(file.toAbsolutePath().normalize(), k -> new ReentrantLock());
+        monitor.lock();
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Lock(monitor, ch, ch.lock());
+        } catch (IOException | RuntimeException e) {
+            if (ch != null) ch.close();
+            monitor.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Wie {@link #locked}, gesperrt wird aber {@code <file>.lock} daneben. So
+     * darf {@code file} unter der Sperre per {@link #moveAtomically} ersetzt
+     * werden; {@code action} bekommt einen erst nach dem Sperren geöffneten
+     * Kanal, also immer auf die aktuelle Fassung.
+     */
+    public static <T> T lockedBeside(Path file, ChannelAction<T> action) throws IOException {
+        try (Lock ignored = lockBeside(file);
+             FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            return action.apply(ch);
+        }
+    }
+
+    /**
+     * Sperre auf {@code <file>.lock}. Wer {@code file} unter dieser Sperre
+     * beschreibt, öffnet die Datei erst danach: ein vorher geöffneter Kanal
+     * zeigt nach einem Ersetzen auf die alte Fassung.
+     */
+    public static Lock lockBeside(Path file) throws IOException {
+        return lock(file.resolveSibling(file.getFileName() + ".lock"));
+    }
+
+    /** Eine gehaltene Sperre auf eine Datei samt offenem Kanal. */
+    public static final class Lock implements Closeable {
+        private final ReentrantLock monitor;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private Lock(ReentrantLock monitor, FileChannel channel, FileLock fileLock) {
+            this.monitor = monitor;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        public FileChannel channel() { return channel; }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                fileLock.release();
+                channel.close();
+            } finally {
+                monitor.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hängt vollständige Zeilen ({@code text} endet mit Zeilenumbruch) gesperrt
+     * ({@link #lockBeside}) und in einem Schreibvorgang an; gesichert wird beim
+     * nächsten {@link #commit}.
+     */
+    public static void append(Path file, CharSequence text) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        lockedBeside(file, ch -> {
+            truncateTornTail(ch);
+            long pos = ch.size();
+            while (out.hasRemaining()) pos += ch.write(out, pos);
+            return null;
+        });
+        pending(file);
+    }
+
+    // --------------------------------------------------------------------
+    // Gruppen-Commit
+    // --------------------------------------------------------------------
+
+    /** Merkt {@code file} für den nächsten {@link #commit} vor. */
+    public static void pending(Path file) {
+        pending(file.toString(), () -> {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.force(false);
+            } catch (NoSuchFileException ignored) {
+                // inzwischen gelöscht oder umbenannt
+            }
+        });
+    }
+
+    /** Merkt eine beliebige Sicherung vor (z.B. einen gemappten Puffer); gleicher Schlüssel ersetzt. */
+    public static void pending(String key, Force force) {
+        synchronized (PENDING) {
+            PENDING.put(key, force);
+        }
+    }
+
+    /**
+     * Bringt alle seit dem letzten Aufruf geänderten Dateien auf die Platte.
+     * @return Anzahl gesicherter Dateien
+     */
+    public static int commit() throws IOException {
+        Force[] batch;
+        synchronized (PENDING) {
+            if (PENDING.isEmpty()) return 0;
+            batch = PENDING.values().toArray(new Force[0]);
+            PENDING.clear();
+        }
+        long t0 = COMMIT.start();
+        IOException first = null;
+        for (Force f : batch) {
+            try { f.force(); }
+            catch (IOException e) { if (first == null) first = e; }
+        }
+        COMMIT.stop(t0);
+        if (first != null) throw first;
+        return batch.length;
+    }
+
+    /** {@link #commit} für geplante Aufgaben: Fehler nur melden. */
+    public static void commitQuietly() {
+        try { commit(); }
+        catch (IOException e) {
+            System.out.println("⚠️  Sichern auf die Platte fehlgeschlagen: " + e.getMessage());
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Ganze Dateien
+    // --------------------------------------------------------------------
+
+    /** Schreibt {@code file} neu über {@code <file>.tmp} und {@link #moveAtomically}. */
+    public static void writeAtomically(Path file, WriterAction action) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            action.write(w);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        moveAtomically(tmp, file);
+    }
+
+    /** Wie {@link #writeAtomically(Path, WriterAction)} für einen fertigen Inhalt. */
+    public static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, content);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        moveAtomically(tmp, file);
+    }
+
+    /**
+     * Bringt die fertig geschriebene Datei {@code tmp} auf die Platte, benennt
+     * sie atomar in {@code file} um und sichert das Verzeichnis: nach einem
+     * Absturz steht dort die alte oder die vollständige neue Fassung.
+     */
+    public static void moveAtomically(Path tmp, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(false);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    /** Sichert Anlegen, Umbenennen und Löschen in {@code dir}. */
+    public static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows öffnet keine Verzeichnisse; Umbenennen ist dort ohnehin durchgeschrieben
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Angeschnittene Zeilen
+    // --------------------------------------------------------------------
+
+    /**
+     * Prüft die zeilenweise geschriebenen Dateien unter {@code dir}
+     * (Messreihen, Markierungen, Alarme, Verdichtungen) auf eine letzte Zeile
+     * ohne Zeilenumbruch und schneidet sie ab. Eine angeschnittene Verdichtung wird
+     * gelöscht und beim nächsten Anhängen aus der Messreihe neu aufgebaut.
+     * Ein abgebrochener Tausch der binären Ablage wird zuerst rückgängig
+     * gemacht ({@link BinarySeriesStore#recover}).
+     *
+     * @return Anzahl reparierter Dateien
+     */
+    public static int recover(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        int repaired = BinarySeriesStore.recover(dir);
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                String name = f.getFileName().toString();
+                if (!name.endsWith(".csv") && !name.endsWith(".jsonl")) continue;
+
+                if (f.getParent().getFileName().toString().equals("rollup")) {
+                    if (isTorn(f)) {
+                        Files.delete(f);
+                        TORN.inc();
+                        repaired++;
+                        System.out.println("✔ " + f + ": angeschnitten, wird neu aufgebaut");
+                    }
+                } else if (repairTail(f)) {
+                    repaired++;
+                }
+            }
+        }
+        return repaired;
+    }
+
+    private static boolean isTorn(Path file) throws IOException {
+        return locked(file, ch -> ch.size() > 0 && lastByte(ch, ch.size()) != '\n');
+    }
+
+    /**
+     * Endet {@code file} nicht mit einem Zeilenumbruch, wird die letzte Zeile
+     * abgeschnitten – auch wenn sie noch lesbar ist: {@code …,1} kann der
+     * Anfang von {@code …,15.5} sein. Der nächste Abruf liefert sie erneut.
+     * @return true, wenn die Datei geändert wurde
+     */
+    static boolean repairTail(Path file) throws IOException {
+        return lockedBeside(file, ch -> {
+            long size = ch.size();
+            if (size == 0 || lastByte(ch, size) == '\n') return false;
+
+            long start = lineStart(ch, size);
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, size - start));
+            ch.read(tail, start);
+            String line = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+
+            ch.truncate(start);
+            ch.force(false);
+            TORN.inc();
+            System.out.println("✔ " + file + ": angeschnittene Zeile entfernt (" + line.strip() + ")");
+            return true;
+        });
+    }
+
+    /** Für das Anhängen: entfernt eine angeschnittene letzte Zeile, ohne nachzufragen. */
+    static void truncateTornTail(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size > 0 && lastByte(ch, size) != '\n') {
+            ch.truncate(lineStart(ch, size));
+            TORN.inc();
+        }
+    }
+
+    private static byte lastByte(FileChannel ch, long size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        ch.read(b, size - 1);
+        return b.get(0);
+    }
+
+    /** Position nach dem letzten Zeilenumbruch (0, wenn keiner). */
+    private static long lineStart(FileChannel ch, long size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4096);
+        long end = size;
+        while (end > 0) {
+            int n = (int) Math.min(b.capacity(), end);
+            b.clear().limit(n);
+            ch.read(b, end - n);
+            for (int i = n - 1; i >= 0; i--) {
+                if (b.get(i) == '\n') return end - n + i + 1;
+            }
+            end -= n;
+        }
+        return 0;
+    }
+}
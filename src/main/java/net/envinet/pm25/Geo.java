@@ -0,0 +1,32 @@
+package net.envinet.pm25;
+
+/** Geografische Hilfsfunktionen. */
+public final class Geo {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    /** Kilometer je Breitengrad (Mittelwert). */
+    public static final double KM_PER_DEG_LAT = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    private Geo() {}
+
+    // --------------------------------------------------------------------
+    // Haversine-Distanz (km)
+    // --------------------------------------------------------------------
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat/2)*Math.sin(dLat/2)
+                + Math.cos(Math.toRadians(lat1))*Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon/2)*Math.sin(dLon/2);
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+    }
+
+    /** true, wenn die Koordinaten brauchbar sind (nicht NaN, nicht 0/0-Platzhalter). */
+    public static boolean isValid(double lat, double lon) {
+        return !Double.isNaN(lat) && !Double.isNaN(lon)
+                && lat != 0 && lon != 0
+                && lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180;
+    }
+}
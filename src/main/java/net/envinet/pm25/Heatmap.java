@@ -0,0 +1,345 @@
+package net.envinet.pm25;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * PM2.5-Fläche zwischen den Sensoren als Kachel-Overlay für Leaflet.
+ *
+ * Je Kachel ({@code heatmap/<z>/<x>/<y>.png}, Web-Mercator wie OpenStreetMap)
+ * wird ein Raster von 64×64 Zellen per inverser Distanzgewichtung (IDW,
+ * Potenz 2) aus den höchstens 8 nächsten Sensoren im Umkreis
+ * {@code pm25.heatmap.radiusKm} berechnet; die Nachbarn liefert der
+ * {@link SpatialIndex}. Zellen ohne Sensor im Umkreis bleiben durchsichtig.
+ *
+ * Gerechnet wird parallel über die Rasterzeilen (Fork/Join). Neu erzeugt
+ * werden nur Kacheln, deren Umkreis einen Sensor mit geändertem Wert
+ * berührt; beim ersten Lauf im Prozess alle.
+ */
+public class Heatmap {
+
+    /** Umkreis, in dem ein Sensor die Fläche beeinflusst. */
+    static final double RADIUS_KM = Double.parseDouble(System.getProperty("pm25.heatmap.radiusKm", "3"));
+
+    static final int MIN_ZOOM = Integer.getInteger("pm25.heatmap.minZoom", 11);
+    static final int MAX_ZOOM = Integer.getInteger("pm25.heatmap.maxZoom", 14);
+
+    private static final int CELLS = 64;
+    private static final int TILE_PX = 256;
+    private static final int MAX_SENSORS = 8;
+    /** Werte, die älter sind, gehen nicht in die Fläche ein. */
+    private static final long MAX_AGE_SEK = 2 * 3600;
+    /** Kleinere Änderungen lösen keine Neuberechnung aus. */
+    private static final double MIN_CHANGE = 0.05;
+
+    private static final Metrics.Histogram RENDER = Metrics.histogram(
+            "pm25_heatmap_seconds", "Neuberechnung der Heatmap-Kacheln");
+
+    private final Path dir;
+    /** Werte je Sensor, mit denen seine Kacheln zuletzt gerechnet wurden: {lat, lon, wert}. */
+    private final Map<String, double[]> rendered = new HashMap<>();
+    private boolean first = true;
+
+    public Heatmap(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Kacheln unter {@code heatmap/} neben der Karten-Datei. */
+    public static Heatmap configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final Heatmap INSTANCE = new Heatmap(Path.of("heatmap"));
+    }
+
+    // --------------------------------------------------------------------
+    // Aktualisieren
+    // --------------------------------------------------------------------
+
+    /** Aktuelle Werte aller konfigurierten Sensoren übernehmen und betroffene Kacheln neu schreiben. */
+    public synchronized void update() throws IOException {
+        update(currentValues());
+    }
+
+    /**
+     * Wie {@link #update()}, mit vorgegebenen Werten {@code id -> {lat, lon, wert}}.
+     * @return Anzahl neu geschriebener Kacheln
+     */
+    public synchronized int update(Map<String, double[]> values) throws IOException {
+        long t0 = RENDER.start();
+
+        // geänderte, neue und weggefallene Sensoren – verglichen mit dem zuletzt gerechneten
+        // Wert, so löst auch langsames Abdriften in kleinen Schritten irgendwann aus
+        List<double[]> changed = new ArrayList<>();
+        Map<String, double[]> redrawn = new HashMap<>();
+        for (Map.Entry<String, double[]> e : values.entrySet()) {
+            double[] old = rendered.get(e.getKey());
+            double[] now = e.getValue();
+            if (old == null || old[0] != now[0] || old[1] != now[1]
+                    || Math.abs(old[2] - now[2]) >= MIN_CHANGE) {
+                redrawn.put(e.getKey(), now);
+                changed.add(now);
+                if (old != null) changed.add(old);
+            }
+        }
+        List<String> gone = new ArrayList<>();
+        for (Map.Entry<String, double[]> e : rendered.entrySet()) {
+            if (!values.containsKey(e.getKey())) {
+                gone.add(e.getKey());
+                changed.add(e.getValue());
+            }
+        }
+        if (!first && changed.isEmpty()) return 0;
+
+        // Index über die aktuellen Werte
+        int n = values.size();
+        double[] lats = new double[n], lons = new double[n], vals = new double[n];
+        int i = 0;
+        for (double[] v : values.values()) {
+            lats[i] = v[0];
+            lons[i] = v[1];
+            vals[i] = v[2];
+            i++;
+        }
+        SpatialIndex index = new SpatialIndex(lats, lons, n, 0.1);
+
+        // betroffene Kacheln: beim ersten Lauf alle im Umkreis eines Sensors
+        Set<Tile> dirty = new LinkedHashSet<>();
+        for (double[] p : first ? values.values() : changed) {
+            for (int z = MIN_ZOOM; z <= MAX_ZOOM; z++) tilesAround(p[0], p[1], z, dirty);
+        }
+        if (first) dirty.addAll(existingTiles()); // Reste früherer Läufe ggf. löschen
+
+        List<RenderTile> tasks = new ArrayList<>(dirty.size());
+        for (Tile t : dirty) tasks.add(new RenderTile(t, index, lats, lons, vals));
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() { invokeAll(tasks); }
+        });
+
+        int count = 0;
+        for (RenderTile task : tasks) {
+            Path f = file(task.tile);
+            if (task.empty) {
+                Files.deleteIfExists(f);
+            } else {
+                Files.createDirectories(f.getParent());
+                Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+                ImageIO.write(task.image(), "png", tmp.toFile());
+                Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            }
+        }
+
+        // nur Sensoren, deren Kacheln neu gerechnet wurden
+        rendered.putAll(redrawn);
+        rendered.keySet().removeAll(gone);
+        first = false;
+        RENDER.stop(t0);
+        System.out.println("✔ Heatmap: " + count + " Kacheln neu (" + changed.size() + " Änderungen)");
+        return count;
+    }
+
+    /** Bereits auf der Platte liegende Kacheln der konfigurierten Zoomstufen. */
+    private List<Tile> existingTiles() throws IOException {
+        List<Tile> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (var files = Files.walk(dir)) {
+            files.filter(f -> f.toString().endsWith(".png")).forEach(f -> {
+                String key = dir.relativize(f).toString().replace('\\', '/');
+                Tile t = Tile.parse(key.substring(0, key.length() - 4));
+                if (t.z >= MIN_ZOOM && t.z <= MAX_ZOOM) out.add(t);
+            });
+        }
+        return out;
+    }
+
+    /** true, sobald Kacheln gerechnet wurden (das Verzeichnis existiert). */
+    boolean hasTiles() {
+        return Files.isDirectory(dir);
+    }
+
+    Path file(Tile t) {
+        return dir.resolve(t.z + "/" + t.x + "/" + t.y + ".png");
+    }
+
+    /** Letzter unmarkierter Wert der letzten 2 Stunden je konfiguriertem Sensor. */
+    private static Map<String, double[]> currentValues() throws IOException {
+        long since = Instant.now().getEpochSecond() - MAX_AGE_SEK;
+        HotWindow hot = HotWindow.configured();
+        Validation flags = Validation.configured();
+
+        Map<String, double[]> out = new LinkedHashMap<>();
+        for (SensorConfig c : ConfigLoader.getSensors()) {
+            if (!Geo.isValid(c.lat, c.lon)) continue;
+            Series s = hot.read(c.id, since);
+            for (int i = s.size() - 1; i >= 0; i--) {
+                if (!flags.isFlagged(c.id, s.time(i))) {
+                    out.put(c.id, new double[]{c.lat, c.lon, s.value(i)});
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    // --------------------------------------------------------------------
+    // Kacheln (Web-Mercator)
+    // --------------------------------------------------------------------
+
+    record Tile(int z, int x, int y) {
+        String key() { return z + "/" + x + "/" + y; }
+
+        static Tile parse(String key) {
+            String[] a = key.split("/");
+            return new Tile(Integer.parseInt(a[0]), Integer.parseInt(a[1]), Integer.parseInt(a[2]));
+        }
+
+        /** Breite/Länge der Position (px, py) in Kachel-Einheiten (0…1) dieser Kachel. */
+        double lat(double py) {
+            double n = Math.PI * (1 - 2 * (y + py) / (1 << z));
+            return Math.toDegrees(Math.atan(Math.sinh(n)));
+        }
+
+        double lon(double px) {
+            return (x + px) / (1 << z) * 360.0 - 180.0;
+        }
+    }
+
+    private static double tileX(double lon, int z) {
+        return (lon + 180.0) / 360.0 * (1 << z);
+    }
+
+    private static double tileY(double lat, int z) {
+        double r = Math.toRadians(lat);
+        return (1 - Math.log(Math.tan(r) + 1 / Math.cos(r)) / Math.PI) / 2 * (1 << z);
+    }
+
+    /** Alle Kacheln der Stufe {@code z}, die den Umkreis um lat/lon berühren. */
+    private static void tilesAround(double lat, double lon, int z, Set<Tile> out) {
+        double dLat = RADIUS_KM / Geo.KM_PER_DEG_LAT;
+        double dLon = dLat / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+        int x0 = (int) Math.floor(tileX(lon - dLon, z)), x1 = (int) Math.floor(tileX(lon + dLon, z));
+        int y0 = (int) Math.floor(tileY(lat + dLat, z)), y1 = (int) Math.floor(tileY(lat - dLat, z));
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) out.add(new Tile(z, x, y));
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Berechnung einer Kachel, parallel über Zeilenblöcke
+    // --------------------------------------------------------------------
+
+    private static final class RenderTile extends RecursiveAction {
+        final Tile tile;
+        final SpatialIndex index;
+        final double[] lats, lons, vals;
+        /** Rasterwerte, NaN = kein Sensor im Umkreis. */
+        final double[] grid = new double[CELLS * CELLS];
+        boolean empty;
+
+        RenderTile(Tile tile, SpatialIndex index, double[] lats, double[] lons, double[] vals) {
+            this.tile = tile;
+            this.index = index;
+            this.lats = lats;
+            this.lons = lons;
+            this.vals = vals;
+        }
+
+        @Override
+        protected void compute() {
+            new Rows(this, 0, CELLS).invoke();
+            empty = true;
+            for (double g : grid) {
+                if (!Double.isNaN(g)) { empty = false; break; }
+            }
+        }
+
+        void computeRow(int row) {
+            double lat = tile.lat((row + 0.5) / CELLS);
+            for (int col = 0; col < CELLS; col++) {
+                double lon = tile.lon((col + 0.5) / CELLS);
+                grid[row * CELLS + col] = idw(lat, lon);
+            }
+        }
+
+        double idw(double lat, double lon) {
+            int[] near = index.nearest(lat, lon, MAX_SENSORS, RADIUS_KM);
+            if (near.length == 0) return Double.NaN;
+            double sum = 0, wsum = 0;
+            for (int k : near) {
+                double d = index.distanceKm(k, lat, lon);
+                if (d < 0.01) return vals[k];
+                // Gewicht fällt zum Rand des Umkreises auf 0, damit die Fläche dort nicht abbricht
+                double w = (1 / (d * d)) * (1 - d / RADIUS_KM);
+                sum += w * vals[k];
+                wsum += w;
+            }
+            return wsum > 0 ? sum / wsum : Double.NaN;
+        }
+
+        BufferedImage image() {
+            BufferedImage img = new BufferedImage(TILE_PX, TILE_PX, BufferedImage.TYPE_INT_ARGB);
+            int scale = TILE_PX / CELLS;
+            for (int py = 0; py < TILE_PX; py++) {
+                for (int px = 0; px < TILE_PX; px++) {
+                    img.setRGB(px, py, color(grid[(py / scale) * CELLS + px / scale]));
+                }
+            }
+            return img;
+        }
+    }
+
+    /** Zeilenblöcke einer Kachel; teilt bis höchstens 8 Zeilen je Aufgabe. */
+    private static final class Rows extends RecursiveAction {
+        final RenderTile tile;
+        final int from, to;
+
+        Rows(RenderTile tile, int from, int to) {
+            this.tile = tile;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 8) {
+                for (int r = from; r < to; r++) tile.computeRow(r);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Rows(tile, from, mid), new Rows(tile, mid, to));
+        }
+    }
+
+    /** Farbverlauf wie die Marker: grün bis 10, orange bis 20, rot darüber (ARGB). */
+    static int color(double v) {
+        if (Double.isNaN(v)) return 0;
+        int alpha = 0x99;
+        double f;
+        int r, g, b;
+        if (v <= 10) {                // grün -> gelbgrün
+            f = Math.max(0, v) / 10;
+            r = (int) (0x2e + f * (0xc8 - 0x2e)); g = 0xb0; b = 0x3a;
+        } else if (v <= 20) {         // gelb -> orange
+            f = (v - 10) / 10;
+            r = 0xff; g = (int) (0xd0 - f * (0xd0 - 0x8c)); b = 0x00;
+        } else {                      // rot -> dunkelrot
+            f = Math.min(1, (v - 20) / 30);
+            r = (int) (0xe5 - f * (0xe5 - 0x8b)); g = 0x1a; b = (int) (0x1a + f * 0x30);
+        }
+        return alpha << 24 | r << 16 | g << 8 | b;
+    }
+
+    static {
+        // ohne Bildschirm rendern (Server, Cron)
+        System.setProperty("java.awt.headless", "true");
+    }
+}
@@ -0,0 +1,196 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Die jüngsten Messwerte je Sensor im Speicher, damit Karte und Server
+ * nicht bei jedem Aufruf die Historie von der Platte lesen.
+ *
+ * Je Sensor ein fest allokierter Ringpuffer außerhalb des Heaps
+ * ({@code ByteBuffer.allocateDirect}), Eintrag = Epoch-Sekunde (long) +
+ * Wert (float), 12 Byte. Platz für {@code pm25.hot.hours} Stunden bei
+ * einem Wert pro Minute; bei 48 h sind das 2880 Einträge bzw. rund 34 KiB.
+ *
+ * Ein Schreiber je Sensor ({@link #onAppend} läuft je Sensor nie parallel),
+ * beliebig viele Leser ohne Sperren: der Schreiber veröffentlicht die
+ * Anzahl geschriebener Einträge erst nach dem Schreiben, Leser prüfen nach
+ * dem Kopieren, welche Einträge inzwischen überschrieben sein könnten, und
+ * verwerfen diese.
+ */
+public class HotWindow implements AppendListener {
+
+    private static final int ENTRY_BYTES = 12;
+
+    /** Abgedeckte Stunden (Standard wie das Chart-Fenster der Karte). */
+    static final long HOURS = Long.getLong("pm25.hot.hours", Long.getLong("pm25.map.hours", 48L));
+
+    private final SeriesStore store;
+    private final long windowSec;
+    private final int capacity;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public HotWindow(SeriesStore store, long hours) {
+        this.store = store;
+        this.windowSec = hours * 3600;
+        this.capacity = (int) Math.max(16, hours * 60);
+    }
+
+    /** Fenster über dem konfigurierten Speicher. */
+    public static HotWindow configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final HotWindow INSTANCE = new HotWindow(SeriesStore.configured(), HOURS);
+    }
+
+    // --------------------------------------------------------------------
+    // Schreiben
+    // --------------------------------------------------------------------
+
+    @Override
+    public void onAppend(String sensorId, Series added) throws IOException {
+        ring(sensorId).append(added);
+    }
+
+    /** Ring eines Sensors; beim ersten Zugriff aus dem Speicher vorbelegt. */
+    private Ring ring(String sensorId) throws IOException {
+        Ring r = rings.get(sensorId);
+        if (r != null) return r;
+
+        synchronized (rings) {
+            r = rings.get(sensorId);
+            if (r == null) {
+                long since = Instant.now().getEpochSecond() - windowSec;
+                r = new Ring(capacity, since);
+                r.append(store.read(sensorId, since, Long.MAX_VALUE));
+                rings.put(sensorId, r);
+            }
+            return r;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Lesen
+    // --------------------------------------------------------------------
+
+    /** Werte mit {@code t >= from}, soweit noch im Ring; aufsteigend. */
+    public Series read(String sensorId, long from) throws IOException {
+        return ring(sensorId).read(from);
+    }
+
+    /** Ältester Zeitstempel im Ring, {@link Timestamps#INVALID} wenn leer. */
+    public long oldest(String sensorId) throws IOException {
+        return ring(sensorId).oldest();
+    }
+
+    /** Jüngster Zeitstempel im Ring, {@link Timestamps#INVALID} wenn leer. */
+    public long newest(String sensorId) throws IOException {
+        return ring(sensorId).newest();
+    }
+
+    /** true, wenn der Ring alle gespeicherten Werte ab {@code from} enthält. */
+    public boolean covers(String sensorId, long from) throws IOException {
+        Ring r = ring(sensorId);
+        if (from < r.since) return false;
+        return r.written.get() < r.capacity || r.oldest() <= from;
+    }
+
+    // --------------------------------------------------------------------
+    // Ringpuffer: Eintrag i liegt an Position (i % capacity) * 12
+    // --------------------------------------------------------------------
+
+    private static final class Ring {
+        private final ByteBuffer buf;
+        private final int capacity;
+        /** Ab hier wurde beim Anlegen aus dem Speicher vorbelegt. */
+        private final long since;
+        /** Anzahl je geschriebener Einträge; wird erst nach dem Schreiben erhöht. */
+        private final AtomicLong written = new AtomicLong();
+        /** Nur vom Schreiber benutzt. */
+        private long lastTime = Long.MIN_VALUE;
+
+        Ring(int capacity, long since) {
+            this.capacity = capacity;
+            this.since = since;
+            this.buf = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES);
+        }
+
+        /** Hängt an; ältere oder doppelte Zeitstempel als der letzte werden übergangen. */
+        void append(Series s) {
+            long n = written.get();
+            for (int i = 0; i < s.size(); i++) {
+                long t = s.time(i);
+                if (t <= lastTime) continue;
+                int pos = (int) (n % capacity) * ENTRY_BYTES;
+                // Gegenstück zum acquireFence der Leser: das Überschreiben darf nicht vor
+                // die Veröffentlichung des vorigen Eintrags rutschen (sonst sähe ein Leser
+                // neue Daten bei altem Zähler und hielte den Platz für unverändert)
+                VarHandle.storeStoreFence();
+                buf.putLong(pos, t);
+                buf.putFloat(pos + 8, (float) s.value(i));
+                lastTime = t;
+                n++;
+                // je Eintrag veröffentlichen, damit Leser nie mehr als einen Eintrag Rückstand haben
+                written.set(n);
+            }
+        }
+
+        long oldest() {
+            while (true) {
+                long n = written.get();
+                if (n == 0) return Timestamps.INVALID;
+                long first = firstReadable(n);
+                long t = buf.getLong(slot(first));
+                VarHandle.acquireFence();
+                if (!overwritten(first)) return t;
+            }
+        }
+
+        long newest() {
+            long n = written.get();
+            return n == 0 ? Timestamps.INVALID : buf.getLong(slot(n - 1));
+        }
+
+        Series read(long from) {
+            while (true) {
+                long end = written.get();
+                long start = firstReadable(end);
+
+                Series s = new Series((int) (end - start));
+                for (long i = start; i < end; i++) {
+                    int pos = slot(i);
+                    long t = buf.getLong(pos);
+                    if (t >= from) s.add(t, buf.getFloat(pos + 8));
+                }
+
+                // hat der Schreiber inzwischen Gelesenes überschrieben: noch einmal
+                VarHandle.acquireFence();
+                if (!overwritten(start)) return s;
+            }
+        }
+
+        /**
+         * Ältester lesbarer Eintrag. Der älteste Platz im vollen Ring wird
+         * ausgelassen: ihn überschreibt der nächste Eintrag zuerst.
+         */
+        private long firstReadable(long n) {
+            return n < capacity ? 0 : n - capacity + 1;
+        }
+
+        /** Der Schreiber hat Eintrag {@code i} schon überschrieben oder ist gerade dabei. */
+        private boolean overwritten(long i) {
+            return written.get() - capacity >= i;
+        }
+
+        private int slot(long i) {
+            return (int) (i % capacity) * ENTRY_BYTES;
+        }
+    }
+}
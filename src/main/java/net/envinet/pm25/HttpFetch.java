@@ -0,0 +1,222 @@
+package net.envinet.pm25;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gemeinsamer HTTP-Zugriff für {@link SensorUpdater}, {@link SnapshotIngest}
+ * und {@link SensorFinder}:
+ * <ul>
+ *   <li>fragt gzip an und entpackt gestreamt,</li>
+ *   <li>merkt sich ETag/Last-Modified je URL in {@code data/http_cache.tsv}
+ *       ({@code pm25.http.cache}) und fragt bedingt an; {@code 304} liefert
+ *       keinen Inhalt. Geschrieben wird einmal je Zyklus ({@link #flush}) und
+ *       spätestens beim Beenden, auch für {@link SensorFinder},</li>
+ *   <li>{@link #backoff(int)}: exponentielle Wartezeit mit Zufallsanteil
+ *       zwischen Wiederholungen.</li>
+ * </ul>
+ */
+public final class HttpFetch {
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(15))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private static final String USER_AGENT = "gptLuftAPI/1.0 (Java)";
+
+    private static final Path CACHE_FILE = Path.of(System.getProperty("pm25.http.cache", "data/http_cache.tsv"));
+
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+
+    private static final Metrics.Counter NOT_MODIFIED = Metrics.counter(
+            "pm25_http_not_modified_total", "Antworten 304 (Daten unverändert)");
+    private static final Metrics.Counter GZIPPED = Metrics.counter(
+            "pm25_http_gzip_total", "Antworten mit gzip-Kodierung");
+
+    /** url -> {etag, last-modified}; null-Einträge als "" */
+    private static volatile Map<String, String[]> validators;
+    private static volatile boolean dirty;
+
+    private HttpFetch() {}
+
+    /**
+     * Antwort mit entpacktem Inhalt; bei {@link #notModified()} ohne Inhalt.
+     * Neue Validatoren gelten erst nach {@link #commit()}, damit ein
+     * abgebrochenes Einlesen beim nächsten Mal nicht als 304 endet.
+     */
+    public static final class Response implements Closeable {
+        private final int status;
+        private final InputStream body;
+        private final String url;
+        private final String[] validator;
+
+        private Response(int status, InputStream body, String url, String[] validator) {
+            this.status = status;
+            this.body = body;
+            this.url = url;
+            this.validator = validator;
+        }
+
+        /** Inhalt aus einer lokalen Datei o.ä., ohne Validatoren. */
+        public static Response of(InputStream body) {
+            return new Response(200, body, null, null);
+        }
+
+        public boolean notModified() { return status == 304; }
+
+        /** Merkt ETag/Last-Modified dieser Antwort für den nächsten bedingten Abruf. */
+        public void commit() {
+            if (validator == null) return;
+            validators().put(url, validator);
+            dirty = true;
+        }
+
+        public InputStream body() {
+            if (body == null) throw new IllegalStateException("Keine Daten (HTTP " + status + ")");
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) body.close();
+        }
+    }
+
+    /** HTTP-Status außer 200/304; {@link #retryable()} bei 429 und 5xx. */
+    public static final class StatusException extends IOException {
+        public final int status;
+
+        StatusException(int status, String url) {
+            super("HTTP Status " + status + " für " + url);
+            this.status = status;
+        }
+
+        public boolean retryable() { return status == 429 || status >= 500; }
+    }
+
+    // --------------------------------------------------------------------
+    // Abruf
+    // --------------------------------------------------------------------
+
+    /**
+     * GET mit gzip. Bei {@code conditional} werden gespeicherte Validatoren
+     * mitgeschickt; dann kann die Antwort {@link Response#notModified()} sein.
+     */
+    public static Response get(String url, Duration timeout, boolean conditional)
+            throws IOException, InterruptedException {
+
+        HttpRequest.Builder req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(timeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+
+        String[] known = conditional ? validators().get(url) : null;
+        if (known != null) {
+            if (!known[0].isEmpty()) req.header("If-None-Match", known[0]);
+            if (!known[1].isEmpty()) req.header("If-Modified-Since", known[1]);
+        }
+
+        HttpResponse<InputStream> res = HTTP.send(req.build(), HttpResponse.BodyHandlers.ofInputStream());
+        int status = res.statusCode();
+
+        if (status == 304) {
+            res.body().close();
+            NOT_MODIFIED.inc();
+            return new Response(304, null, url, null);
+        }
+        if (status != 200) {
+            res.body().close();
+            throw new StatusException(status, url);
+        }
+
+        String[] validator = null;
+        if (conditional) {
+            String etag = res.headers().firstValue("ETag").orElse("");
+            String lastModified = res.headers().firstValue("Last-Modified").orElse("");
+            if (!etag.isEmpty() || !lastModified.isEmpty()) validator = new String[]{etag, lastModified};
+        }
+
+        InputStream in = res.body();
+        if (res.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+            GZIPPED.inc();
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new Response(200, in, url, validator);
+    }
+
+    /** Wartet vor Versuch {@code attempt + 1}: zufällig zwischen c/2 und c mit c = min(30 s, 0,5 s·2^attempt). */
+    public static void backoff(int attempt) throws InterruptedException {
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+    }
+
+    // --------------------------------------------------------------------
+    // Validatoren auf der Platte
+    // --------------------------------------------------------------------
+
+    private static Map<String, String[]> validators() {
+        Map<String, String[]> v = validators;
+        if (v != null) return v;
+        synchronized (HttpFetch.class) {
+            if (validators == null) {
+                validators = load();
+                // wer nicht selbst flush() aufruft (z.B. SensorFinder), verliert die Validatoren so nicht
+                Runtime.getRuntime().addShutdownHook(new Thread(HttpFetch::flushQuietly, "http-cache"));
+            }
+            return validators;
+        }
+    }
+
+    private static Map<String, String[]> load() {
+        Map<String, String[]> map = new ConcurrentHashMap<>();
+        if (!Files.exists(CACHE_FILE)) return map;
+        try (BufferedReader r = Files.newBufferedReader(CACHE_FILE, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] a = line.split("\t", -1);
+                if (a.length == 3) map.put(a[0], new String[]{a[1], a[2]});
+            }
+        } catch (IOException e) {
+            System.out.println("   HTTP-Cache nicht lesbar, starte leer: " + e.getMessage());
+        }
+        return map;
+    }
+
+    /** Schreibt geänderte Validatoren nach {@code data/http_cache.tsv} (einmal je Zyklus). */
+    public static synchronized void flush() throws IOException {
+        if (!dirty) return;
+        dirty = false;
+
+        Files.createDirectories(CACHE_FILE.toAbsolutePath().getParent());
+        Durable.writeAtomically(CACHE_FILE, w -> {
+            for (Map.Entry<String, String[]> e : validators().entrySet()) {
+                w.write(e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1] + "\n");
+            }
+        });
+    }
+
+    /** {@link #flush} beim Beenden: Fehler nur melden. */
+    static void flushQuietly() {
+        try { flush(); }
+        catch (IOException e) {
+            System.out.println("⚠️  HTTP-Cache nicht geschrieben: " + e.getMessage());
+        }
+    }
+}
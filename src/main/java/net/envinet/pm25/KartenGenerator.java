@@ -1,48 +1,72 @@
 package net.envinet.pm25;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.Writer;
 import java.nio.file.*;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
 
 public class KartenGenerator {
 
+    private static final JsonFactory JSON = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /** Zeitfenster je Chart: die letzten Stunden vor dem jüngsten Messwert eines Sensors. */
+    private static final long FENSTER_SEK = Long.getLong("pm25.map.hours", 48L) * 3600L;
+
+    /** Höchstens so viele Punkte je Chart (LTTB-Ausdünnung). */
+    private static final int MAX_PUNKTE = Integer.getInteger("pm25.map.maxPoints", 500);
+
+    private static final Metrics.Histogram GENERATE = Metrics.histogram(
+            "pm25_map_generate_seconds", "Dauer der Kartenerzeugung (Datei oder /)");
+
     /**
      * Erzeugt eine HTML-Datei mit:
      *  - Leaflet-Karte
      *  - Marker für jeden Sensor
-     *  - Farbe abhängig vom letzten PM2.5-Wert
+     *  - Farbe abhängig vom letzten unauffälligen PM2.5-Wert
      *  - Chart.js-Verlauf beim Klick
      */
     public static void exportHtmlWithChart() throws IOException {
+        // temporär + umbenennen: ein Browser oder Webserver liest nie eine halbe Karte
+        Durable.writeAtomically(Path.of("karte_mit_chart.html"), KartenGenerator::writeHtml);
+        System.out.println("✔ Karte erzeugt: karte_mit_chart.html");
+    }
 
-        // ---------------------------------------------------------
-        // 1. CSV-Daten aus data/sensor_<id>.csv laden
-        // ---------------------------------------------------------
-        Map<String, List<String[]>> daten = new LinkedHashMap<>();
-
-        for (String id : SensorUpdater.getSensorIds()) {
-            Path p = Path.of("data", "sensor_" + id + ".csv");
+    /**
+     * Schreibt die Karte in {@code w}. Die Messreihen werden Sensor für Sensor
+     * geladen und sofort als kompaktes JSON ausgegeben; Marker und Charts
+     * baut eine gemeinsame JavaScript-Funktion im Browser.
+     */
+    public static void writeHtml(Writer w) throws IOException {
+        writeHtml(w, ConfigLoader.getSensors(), SeriesStore.configured(), HotWindow.configured(),
+                Validation.configured());
+    }
 
-            if (Files.exists(p)) {
-                List<String[]> rows = Files.readAllLines(p, StandardCharsets.UTF_8).stream()
-                        .filter(l -> !l.isBlank())
-                        .map(l -> l.split(",", -1))
-                        .filter(a -> a.length >= 2)
-                        .sorted(Comparator.comparing(a -> a[0]))
-                        .collect(Collectors.toList());
+    /**
+     * Ebene der geschätzten Fläche zwischen den Sensoren ({@link Heatmap}),
+     * erst wenn Kacheln gerechnet sind – sonst fragt Leaflet bei jedem
+     * Verschieben Hunderte fehlender Kacheln an.
+     */
+    private static String heatmapLayer() {
+        if (!Heatmap.configured().hasTiles()) return "";
+        return "    L.tileLayer('heatmap/{z}/{x}/{y}.png', {minZoom: %d, maxNativeZoom: %d, opacity: 0.5}).addTo(map);\n"
+                .formatted(Heatmap.MIN_ZOOM, Heatmap.MAX_ZOOM);
+    }
 
-                if (!rows.isEmpty())
-                    daten.put(id, rows);
-            }
-        }
+    /** Wie {@link #writeHtml(Writer)} mit vorgegebenen Sensoren und Quellen (z.B. für Benchmarks). */
+    static void writeHtml(Writer w, List<SensorConfig> sensors, SeriesStore store, HotWindow hot,
+                          Validation flags) throws IOException {
+        long t0 = GENERATE.start();
 
         // ---------------------------------------------------------
-        // 2. Starte HTML-Datei
+        // 1. Kopf der HTML-Datei
         // ---------------------------------------------------------
-        StringBuilder html = new StringBuilder();
-        html.append("""
+        w.write("""
                 <!DOCTYPE html>
                 <html lang='de'>
                 <head>
@@ -73,114 +97,163 @@ public class KartenGenerator {
                   <script>
                     var map = L.map('map').setView([48.5216, 9.0576], 14);
                     L.tileLayer('https://{s}.tile.openstreetmap.org/{z}/{x}/{y}.png', {maxZoom: 19}).addTo(map);
+                %s
+                    // Je Sensor: t0 = erster Zeitstempel (Epoch-s), dt = Abstände in s, v = PM2.5-Werte
+                    var sensors =
+                """.formatted(heatmapLayer()).stripTrailing());
+        w.write(' ');
 
-                    var sensors = {};
-                """);
+        // ---------------------------------------------------------
+        // 2. Messreihen als JSON, ein Sensor nach dem anderen
+        // ---------------------------------------------------------
+        writeSensorData(w, sensors, store, hot, flags);
+        w.write(";\n");
 
         // ---------------------------------------------------------
-        // 3. JavaScript-Datenobjekte aufbauen
+        // 3. Eine gemeinsame Funktion für Marker + Chart.js
         // ---------------------------------------------------------
-        for (Map.Entry<String, List<String[]>> e : daten.entrySet()) {
-            String id = e.getKey();
-            List<String[]> rows = e.getValue();
+        w.write("""
 
-            SensorConfig cfg = ConfigLoader.findById(id);
-            double lat = cfg != null ? cfg.lat : 48.5216;
-            double lon = cfg != null ? cfg.lon : 9.0576;
+                    function labelsOf(d) {
+                      var out = new Array(d.dt.length), t = d.t0;
+                      for (var i = 0; i < d.dt.length; i++) {
+                        t += d.dt[i];
+                        out[i] = new Date(t * 1000).toISOString().substring(11, 16); // HH:mm
+                      }
+                      return out;
+                    }
 
-            String last = rows.get(rows.size() - 1)[1];
-            double pm = parseDouble(last);
-            String farbe = pm <= 10 ? "green" : (pm <= 20 ? "orange" : "red");
+                    function addSensor(d) {
+                      var m = L.circleMarker([d.lat, d.lon], {radius: 10, color: d.color}).addTo(map);
 
-            String labels = rows.stream()
-                    .map(r -> "'" + extractTime(r[0]) + "'")
-                    .collect(Collectors.joining(","));
+                      m.on('click', function(){
+                        if (d.v.length >= 3) {
+                          var cid = 'chart_' + d.id;
+                          var content =
+                            "<b>Sensor " + d.id + "</b><br>Messpunkte: " + d.v.length +
+                            "<div style='width:320px;margin-top:6px'>" +
+                            "<canvas id='" + cid + "' width='320' height='160'></canvas>" +
+                            "</div>";
+                          this.bindPopup(content).openPopup();
 
-            String values = rows.stream()
-                    .map(r -> r[1])
-                    .collect(Collectors.joining(","));
+                          setTimeout(function(){
+                            var canvas = document.getElementById(cid);
+                            if (!canvas) return;
 
-            html.append(String.format(Locale.US,
-                    "sensors['%s'] = {lat:%f, lon:%f, color:'%s', labels:[%s], values:[%s]};\n",
-                    id, lat, lon, farbe, labels, values));
-        }
+                            new Chart(canvas.getContext('2d'), {
+                              type: 'line',
+                              data: {
+                                labels: labelsOf(d),
+                                datasets: [{ label: 'PM2.5', data: d.v, borderColor: 'blue', tension: 0.2 }]
+                              },
+                              options: { responsive: false, scales: { y: { beginAtZero: true } } }
+                            });
+                          }, 80);
 
-        // ---------------------------------------------------------
-        // 4. Marker + Chart.js Interaktion
-        // ---------------------------------------------------------
-        for (String id : daten.keySet()) {
-            html.append(String.format(
-                    """
-                    (function(){
-                        var d = sensors['%s'];
-                        var m = L.circleMarker([d.lat, d.lon], {radius: 10, color: d.color}).addTo(map);
-
-                        m.on('click', function(){
-                            if (d.values.length >= 3) {
-                                var cid = 'chart_%s';
-                                var content =
-                                  "<b>Sensor %s</b><br>Messpunkte: " + d.values.length +
-                                  "<div style='width:320px;margin-top:6px'>" +
-                                  "<canvas id='" + cid + "' width='320' height='160'></canvas>" +
-                                  "</div>";
-                                this.bindPopup(content).openPopup();
-
-                                setTimeout(function(){
-                                    var canvas = document.getElementById(cid);
-                                    if (!canvas) return;
-                                    var ctx = canvas.getContext('2d');
-
-                                    new Chart(ctx, {
-                                        type: 'line',
-                                        data: {
-                                            labels: d.labels,
-                                            datasets: [{
-                                                label: 'PM2.5',
-                                                data: d.values,
-                                                borderColor: 'blue',
-                                                tension: 0.2
-                                            }]
-                                        },
-                                        options: {
-                                            responsive: false,
-                                            scales: { y: { beginAtZero: true } }
-                                        }
-                                    });
-                                }, 80);
-
-                            } else {
-                                this.bindPopup("<b>Sensor %s</b><br>Nicht genug Daten (mind. 3 Punkte).").openPopup();
-                            }
-                        });
-
-                    })();
-                    """,
-                    id, id, id, id));
-        }
+                        } else {
+                          this.bindPopup("<b>Sensor " + d.id + "</b><br>Nicht genug Daten (mind. 3 Punkte).").openPopup();
+                        }
+                      });
+                    }
 
-        // ---------------------------------------------------------
-        // 5. HTML abschließen
-        // ---------------------------------------------------------
-        html.append("""
+                    sensors.forEach(addSensor);
                   </script>
                 </body>
                 </html>
                 """);
-
-        Files.writeString(Path.of("karte_mit_chart.html"), html.toString(), StandardCharsets.UTF_8);
-        System.out.println("✔ Karte erzeugt: karte_mit_chart.html");
+        GENERATE.stop(t0);
     }
 
     // --------------------------------------------------------------------
-    // Hilfsfunktionen
+    // JSON-Nutzlast: [{id, lat, lon, color, t0, dt:[...], v:[...]}, ...]
     // --------------------------------------------------------------------
-    private static double parseDouble(String s) {
-        try { return Double.parseDouble(s.trim()); }
-        catch (Exception ex) { return Double.NaN; }
+
+    private static void writeSensorData(Writer w, List<SensorConfig> sensors, SeriesStore store,
+                                        HotWindow hot, Validation flags) throws IOException {
+        try (JsonGenerator g = JSON.createGenerator(w)) {
+            g.setCharacterEscapes(HtmlSafeEscapes.INSTANCE);
+            g.writeStartArray();
+
+            for (SensorConfig cfg : sensors) {
+                String id = cfg.id;
+                Series rows = recent(store, hot, id);
+                if (rows.isEmpty()) continue;
+
+                double lat = cfg.lat;
+                double lon = cfg.lon;
+
+                // Farbe nach dem letzten nicht markierten Wert (Validation), sonst dem letzten
+                double pm = rows.lastValue();
+                for (int i = rows.size() - 1; i >= 0; i--) {
+                    if (!flags.isFlagged(id, rows.time(i))) { pm = rows.value(i); break; }
+                }
+                String farbe = pm <= 10 ? "green" : (pm <= 20 ? "orange" : "red");
+
+                // nur das Zeitfenster vor dem letzten Messwert, höchstens MAX_PUNKTE Punkte
+                long von = rows.lastTime() - FENSTER_SEK;
+                int start = 0;
+                while (start < rows.size() - 1 && rows.time(start) < von) start++;
+                Series chart = Downsampling.lttb(rows, start, rows.size(), MAX_PUNKTE);
+
+                g.writeStartObject();
+                g.writeStringField("id", id);
+                g.writeNumberField("lat", lat);
+                g.writeNumberField("lon", lon);
+                g.writeStringField("color", farbe);
+                g.writeNumberField("t0", chart.time(0));
+
+                g.writeArrayFieldStart("dt");
+                long prev = chart.time(0);
+                for (int i = 0; i < chart.size(); i++) {
+                    g.writeNumber(chart.time(i) - prev);
+                    prev = chart.time(i);
+                }
+                g.writeEndArray();
+
+                g.writeArrayFieldStart("v");
+                for (int i = 0; i < chart.size(); i++) {
+                    g.writeNumber(Series.formatValue(chart.value(i)));
+                }
+                g.writeEndArray();
+
+                g.writeEndObject();
+                g.writeRaw('\n');
+            }
+
+            g.writeEndArray();
+        }
+    }
+
+    /**
+     * Zeitfenster vor dem jüngsten Wert aus dem {@link HotWindow}, sonst nur
+     * dieses Fenster von der Platte (z.B. Sensor seit Tagen ohne Werte).
+     */
+    private static Series recent(SeriesStore store, HotWindow hot, String id) throws IOException {
+        long newest = hot.newest(id);
+        if (newest != Timestamps.INVALID && hot.covers(id, newest - FENSTER_SEK)) {
+            return hot.read(id, newest - FENSTER_SEK);
+        }
+        if (newest == Timestamps.INVALID) newest = store.lastTime(id);
+        if (newest == Timestamps.INVALID) return new Series();
+        return store.read(id, newest - FENSTER_SEK, Long.MAX_VALUE);
     }
 
-    private static String extractTime(String timestamp) {
-        if (timestamp == null || timestamp.length() < 16) return timestamp;
-        return timestamp.substring(11, 16); // HH:mm
+    /** Maskiert {@code <}, {@code >} und {@code &}, damit JSON in {@code <script>} nichts beenden kann. */
+    private static final class HtmlSafeEscapes extends CharacterEscapes {
+        static final HtmlSafeEscapes INSTANCE = new HtmlSafeEscapes();
+
+        private final int[] ascii = standardAsciiEscapesForJSON();
+
+        private HtmlSafeEscapes() {
+            ascii['<'] = ESCAPE_STANDARD;
+            ascii['>'] = ESCAPE_STANDARD;
+            ascii['&'] = ESCAPE_STANDARD;
+        }
+
+        @Override
+        public int[] getEscapeCodesForAscii() { return ascii; }
+
+        @Override
+        public SerializableString getEscapeSequence(int ch) { return null; }
     }
 }
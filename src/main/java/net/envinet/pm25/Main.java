@@ -1,13 +1,61 @@
 package net.envinet.pm25;
 
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class Main {
     public static void main(String[] args) throws Exception {
         final long INTERVALL_MS = 30L * 60L * 1000L; // 30 Minuten
 
+        // nach einem Absturz: angeschnittene letzte Zeilen reparieren
+        int repaired = Durable.recover(Path.of("data"));
+        if (repaired > 0) System.out.println("✔ " + repaired + " Datei(en) nach Schreibabbruch repariert");
+        // beim Beenden (Strg+C) noch nicht gesicherte Zeilen auf die Platte bringen
+        Runtime.getRuntime().addShutdownHook(new Thread(Durable::commitQuietly));
+
+        // "serve [port]": Karte und Daten per HTTP statt HTML-Datei
+        boolean serve = args.length > 0 && args[0].equals("serve");
+        if (serve) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            MapServer server = new MapServer(port, SeriesStore.configured(), Rollups.configured(),
+                    HotWindow.configured());
+            SensorUpdater.addListener(server);
+            server.start();
+        }
+
+        // adaptiv: jeder Sensor im eigenen Takt; fixed (und bulk): alle 30 Minuten alle
+        boolean adaptive = System.getProperty("pm25.schedule", "adaptive").equals("adaptive")
+                && !System.getProperty("pm25.fetch.mode", "sensor").equals("bulk");
+
+        if (adaptive) {
+            AtomicBoolean changed = new AtomicBoolean(true);
+            SensorUpdater.addListener((id, added) -> changed.set(true));
+            new PollScheduler(SensorUpdater.getSensorIds(), SeriesStore.configured()).start();
+
+            while (true) {
+                try {
+                    if (changed.getAndSet(false)) {                // nur bei neuen Werten
+                        Heatmap.configured().update();             // betroffene Heatmap-Kacheln
+                        if (!serve)
+                            KartenGenerator.exportHtmlWithChart(); // Karte neu erzeugen
+                    }
+                    SensorUpdater.checkStale();
+                    Durable.commitQuietly();               // Alarme und Markierungen sichern
+                    SensorUpdater.writeMetrics();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.out.println("⚠️  Fehler beim Erzeugen der Karte – nächster Versuch später.");
+                }
+                Thread.sleep(INTERVALL_MS);
+            }
+        }
+
         while (true) {
             try {
-                SensorUpdater.fetchAndStore();         // Daten aktualisieren
-                KartenGenerator.exportHtmlWithChart(); // Karte (inkl. Charts) neu erzeugen
+                SensorUpdater.fetchAndStore();             // Daten aktualisieren
+                Heatmap.configured().update();             // betroffene Heatmap-Kacheln neu rechnen
+                if (!serve)
+                    KartenGenerator.exportHtmlWithChart(); // Karte (inkl. Charts) neu erzeugen
                 System.out.println("➡️  Warte 30 Minuten …");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -0,0 +1,526 @@
+package net.envinet.pm25;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Kleiner HTTP-Server für Karte und Messreihen, statt die HTML-Datei alle
+ * 30 Minuten neu zu schreiben.
+ *
+ * <pre>
+ *   GET /                                    Karte (wie karte_mit_chart.html)
+ *   GET /sensors                             alle Sensoren mit letztem Wert
+ *   GET /sensors/{id}/series?from=&amp;to=&amp;step=&amp;measurand=
+ *                                            Messreihe; step = raw|10m|1h|1d, measurand = P2 (Standard), P1, …
+ *   GET /metrics                             {@link Metrics} im Prometheus-Textformat
+ *   GET /heatmap/{z}/{x}/{y}.png             Kachel der {@link Heatmap}
+ * </pre>
+ * {@code from}/{@code to} als Epoch-Sekunden oder {@code yyyy-MM-ddTHH:mm:ss} (UTC). Ohne
+ * {@code from} beginnt eine Rohreihe {@code pm25.hot.hours} vor {@code to}
+ * bzw. jetzt – die ganze Historie nur auf ausdrückliche Anfrage.
+ *
+ * Der Server lauscht nur auf der Loopback-Adresse; für andere Rechner muss
+ * die Adresse über {@code pm25.serve.host} ausdrücklich freigegeben werden
+ * (z.B. {@code 0.0.0.0}).
+ *
+ * Antworten werden mit ETag/Last-Modified im Speicher gehalten (gzip bei
+ * Bedarf) und nur verworfen, wenn für den betreffenden Sensor neue Werte
+ * gespeichert werden ({@link AppendListener}) oder der Cache mehr als
+ * {@code pm25.serve.cacheMB} belegt (am längsten ungenutzte zuerst).
+ */
+public class MapServer implements AppendListener {
+
+    private static final JsonFactory JSON = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /** Adresse, auf der der Server lauscht; ohne Angabe nur Loopback. */
+    static final String HOST = System.getProperty("pm25.serve.host");
+
+    /** Obergrenze der zwischengespeicherten Antworten (ungepackt) in Byte. */
+    static final long MAX_CACHE_BYTES = Long.getLong("pm25.serve.cacheMB", 32L) * 1024 * 1024;
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    /** Zwischengespeicherte Antwort. */
+    private static final class Entry {
+        final String sensorId; // null = hängt von allen Sensoren ab
+        final String contentType;
+        final byte[] body;
+        final String etag;
+        final long lastModified;
+        volatile byte[] gzip;
+
+        Entry(String sensorId, String contentType, byte[] body, long lastModified) {
+            this.sensorId = sensorId;
+            this.contentType = contentType;
+            this.body = body;
+            this.lastModified = lastModified;
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"";
+        }
+
+        byte[] gzip() throws IOException {
+            byte[] g = gzip;
+            if (g == null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                    gz.write(body);
+                }
+                gzip = g = bos.toByteArray();
+            }
+            return g;
+        }
+    }
+
+    /**
+     * Anzahl und letzter Wert eines Sensors für {@code /sensors}: einmal
+     * blockweise gezählt, danach mit jedem Anhängen fortgeschrieben.
+     */
+    private static final class Stats {
+        private boolean loaded;
+        private long count;
+        private long lastTime = Long.MIN_VALUE;
+        private double lastValue;
+
+        synchronized Stats load(SeriesStore store, String id) throws IOException {
+            if (loaded) return this;
+            try (SeriesCursor c = store.cursor(id, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                for (Series b = c.next(); b != null; b = c.next()) fold(b);
+            }
+            loaded = true;
+            return this;
+        }
+
+        /**
+         * Nach {@link #load}: neue Werte mitzählen. Davor nichts tun – sie
+         * stehen schon in der Ablage, und eine vorgezogene letzte Zeit ließe
+         * das Zählen alle älteren überspringen.
+         */
+        synchronized void add(Series s) {
+            if (loaded) fold(s);
+        }
+
+        /** Nur neuere Werte: was das Zählen schon gesehen hat, zählt nicht doppelt. */
+        private void fold(Series s) {
+            for (int i = 0; i < s.size(); i++) {
+                if (s.time(i) <= lastTime) continue;
+                count++;
+                lastTime = s.time(i);
+                lastValue = s.value(i);
+            }
+        }
+    }
+
+    private final SeriesStore store;
+    private final Rollups rollups;
+    private final HotWindow hot;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /** In Zugriffsreihenfolge; Größe in {@link #cacheBytes}, beides unter der Sperre von {@code cache}. */
+    private final Map<String, Entry> cache = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true));
+    private long cacheBytes;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /** Zeitpunkt der letzten Änderung je Sensor (Epoch-ms). */
+    private final Map<String, Long> changed = new ConcurrentHashMap<>();
+    private volatile long anyChanged = System.currentTimeMillis();
+    /** Zählt Invalidierungen – eine während des Renderns veraltete Antwort wird nicht gespeichert. */
+    private volatile long generation;
+
+    public MapServer(int port, SeriesStore store, Rollups rollups, HotWindow hot) throws IOException {
+        this.store = store;
+        this.rollups = rollups;
+        this.hot = hot;
+        InetSocketAddress address = HOST == null || HOST.isBlank()
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(HOST.trim(), port);
+        if (address.isUnresolved()) throw new IOException("pm25.serve.host unbekannt: " + HOST);
+        this.server = HttpServer.create(address, 0);
+        // Java 17: ein Thread je Anfrage aus einem Cached-Pool statt virtueller Threads
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "map-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        InetSocketAddress a = server.getAddress();
+        String host = a.getAddress().isLoopbackAddress() ? "localhost" : a.getHostString();
+        System.out.println("✔ Server läuft: http://" + host + ":" + a.getPort() + "/");
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // --------------------------------------------------------------------
+    // Invalidierung bei neuen Messwerten
+    // --------------------------------------------------------------------
+
+    @Override
+    public void onAppend(String sensorId, Series added) {
+        long now = System.currentTimeMillis();
+        changed.put(sensorId, now);
+        anyChanged = now;
+
+        Stats st = stats.get(sensorId);
+        if (st != null) st.add(added);
+
+        synchronized (cache) {
+            generation++;
+            for (Iterator<Entry> it = cache.values().iterator(); it.hasNext(); ) {
+                Entry e = it.next();
+                if (e.sensorId == null || e.sensorId.equals(sensorId)) {
+                    it.remove();
+                    cacheBytes -= e.body.length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Speichert {@code e}, wenn seit {@code gen} nichts verworfen wurde, und
+     * verdrängt die am längsten ungenutzten Antworten über {@link #MAX_CACHE_BYTES}.
+     */
+    private void remember(String key, Entry e, long gen) {
+        synchronized (cache) {
+            if (gen != generation || e.body.length > MAX_CACHE_BYTES) return;
+            Entry old = cache.put(key, e);
+            if (old != null) cacheBytes -= old.body.length;
+            cacheBytes += e.body.length;
+
+            for (Iterator<Entry> it = cache.values().iterator(); cacheBytes > MAX_CACHE_BYTES && it.hasNext(); ) {
+                Entry eldest = it.next();
+                it.remove();
+                cacheBytes -= eldest.body.length;
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Anfragen
+    // --------------------------------------------------------------------
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!"GET".equals(ex.getRequestMethod()) && !"HEAD".equals(ex.getRequestMethod())) {
+                sendError(ex, 405, "Nur GET");
+                return;
+            }
+
+            String path = ex.getRequestURI().getPath();
+            if (path.equals("/metrics")) {
+                sendMetrics(ex);
+                return;
+            }
+            if (path.startsWith("/heatmap/")) {
+                sendTile(ex, path);
+                return;
+            }
+
+            String query = ex.getRequestURI().getRawQuery();
+            String key = query == null ? path : path + "?" + query;
+
+            Entry e = cache.get(key);
+            if (e == null) {
+                long gen = generation;
+                e = render(path, query);
+                if (e == null) {
+                    sendError(ex, 404, "Nicht gefunden: " + path);
+                    return;
+                }
+                remember(key, e, gen);
+            }
+            send(ex, e);
+
+        } catch (IllegalArgumentException iae) {
+            sendError(ex, 400, iae.getMessage());
+        } catch (Exception err) {
+            sendError(ex, 500, String.valueOf(err.getMessage()));
+        } finally {
+            ex.close();
+        }
+    }
+
+    private Entry render(String path, String query) throws IOException {
+        if (path.equals("/") || path.equals("/index.html")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+            try (Writer w = new OutputStreamWriter(bos, StandardCharsets.UTF_8)) {
+                KartenGenerator.writeHtml(w);
+            }
+            return new Entry(null, "text/html; charset=utf-8", bos.toByteArray(), anyChanged);
+        }
+
+        if (path.equals("/sensors")) {
+            return new Entry(null, "application/json", sensorsJson(), anyChanged);
+        }
+
+        String[] parts = path.split("/");
+        if (parts.length == 4 && parts[1].equals("sensors") && parts[3].equals("series")) {
+            String id = parts[2];
+            if (!SensorUpdater.getSensorIds().contains(id)) return null;
+
+            Map<String, String> q = parseQuery(query);
+            long to = parseTime(q.get("to"), Long.MAX_VALUE);
+            String step = q.getOrDefault("step", "raw");
+            // Rohwerte ohne Beginn: nur das Fenster, nicht die ganze Historie von der Platte
+            long end = to == Long.MAX_VALUE ? Instant.now().getEpochSecond() : to;
+            long from = parseTime(q.get("from"), step.equals("raw") ? end - HotWindow.HOURS * 3600 : Long.MIN_VALUE);
+            String measurand = q.getOrDefault("measurand", Measurements.PRIMARY);
+            if (!Measurements.SELECTED.contains(measurand))
+                throw new IllegalArgumentException("measurand nicht gespeichert: " + measurand);
+
+            return new Entry(id, "application/json", seriesJson(id, measurand, from, to, step),
+                    changed.getOrDefault(id, anyChanged));
+        }
+
+        return null;
+    }
+
+    private byte[] sensorsJson() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (JsonGenerator g = JSON.createGenerator(bos)) {
+            g.writeStartArray();
+            for (String id : SensorUpdater.getSensorIds()) {
+                SensorConfig cfg = ConfigLoader.findById(id);
+                Stats s = stats.computeIfAbsent(id, k -> new Stats()).load(store, id);
+
+                g.writeStartObject();
+                g.writeStringField("id", id);
+                if (cfg != null) {
+                    g.writeNumberField("lat", cfg.lat);
+                    g.writeNumberField("lon", cfg.lon);
+                }
+                synchronized (s) {
+                    g.writeNumberField("count", s.count);
+                    if (s.count > 0) {
+                        g.writeStringField("lastTimestamp", Timestamps.format(s.lastTime));
+                        g.writeFieldName("lastValue");
+                        g.writeNumber(Series.formatValue(s.lastValue));
+                    }
+                }
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        return bos.toByteArray();
+    }
+
+    private byte[] seriesJson(String id, String measurand, long from, long to, String step) throws IOException {
+        String seriesId = Measurements.seriesId(id, measurand);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (JsonGenerator g = JSON.createGenerator(bos)) {
+            g.writeStartObject();
+            g.writeStringField("id", id);
+            g.writeStringField("measurand", measurand);
+            g.writeStringField("step", step);
+
+            if (step.equals("raw")) {
+                // jüngste PM2.5-Werte aus dem Speicherfenster, ältere und andere Messgrößen von der Platte
+                Series s = seriesId.equals(id) && to == Long.MAX_VALUE && hot.covers(id, from)
+                        ? hot.read(id, from)
+                        : store.read(seriesId, from, to);
+                g.writeArrayFieldStart("t");
+                for (int i = 0; i < s.size(); i++) g.writeNumber(s.time(i));
+                g.writeEndArray();
+                g.writeArrayFieldStart("v");
+                for (int i = 0; i < s.size(); i++) g.writeNumber(Series.formatValue(s.value(i)));
+                g.writeEndArray();
+            } else {
+                Rollups.Buckets b = rollups.read(seriesId, resolution(step), from, to);
+                g.writeArrayFieldStart("t");
+                for (int i = 0; i < b.size(); i++) g.writeNumber(b.start(i));
+                g.writeEndArray();
+                g.writeArrayFieldStart("min");
+                for (int i = 0; i < b.size(); i++) g.writeNumber(Series.formatValue(b.min(i)));
+                g.writeEndArray();
+                g.writeArrayFieldStart("mean");
+                for (int i = 0; i < b.size(); i++) g.writeNumber(Series.formatValue(b.mean(i)));
+                g.writeEndArray();
+                g.writeArrayFieldStart("max");
+                for (int i = 0; i < b.size(); i++) g.writeNumber(Series.formatValue(b.max(i)));
+                g.writeEndArray();
+                g.writeArrayFieldStart("count");
+                for (int i = 0; i < b.size(); i++) g.writeNumber(b.count(i));
+                g.writeEndArray();
+            }
+
+            g.writeEndObject();
+        }
+        return bos.toByteArray();
+    }
+
+    // --------------------------------------------------------------------
+    // Antwort mit ETag / Last-Modified / gzip
+    // --------------------------------------------------------------------
+
+    private static void send(HttpExchange ex, Entry e) throws IOException {
+        var h = ex.getResponseHeaders();
+        h.set("Content-Type", e.contentType);
+        h.set("ETag", e.etag);
+        h.set("Last-Modified", httpDate(e.lastModified));
+        h.set("Cache-Control", "no-cache");
+        h.set("Vary", "Accept-Encoding");
+
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        String ims = ex.getRequestHeaders().getFirst("If-Modified-Since");
+        if ((inm != null && inm.contains(e.etag))
+                || (inm == null && ims != null && notModifiedSince(ims, e.lastModified))) {
+            ex.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] body = e.body;
+        String ae = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        if (ae != null && ae.contains("gzip") && body.length >= GZIP_MIN_BYTES) {
+            body = e.gzip();
+            h.set("Content-Encoding", "gzip");
+        }
+
+        boolean head = "HEAD".equals(ex.getRequestMethod());
+        ex.sendResponseHeaders(200, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /** Metriken ändern sich ständig: ohne Cache, ohne ETag. */
+    private static void sendMetrics(HttpExchange ex) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(8 * 1024);
+        try (Writer w = new OutputStreamWriter(bos, StandardCharsets.UTF_8)) {
+            Metrics.writePrometheus(w);
+        }
+        byte[] body = bos.toByteArray();
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-store");
+        boolean head = "HEAD".equals(ex.getRequestMethod());
+        ex.sendResponseHeaders(200, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /** Kacheln ändert {@link Heatmap} auf der Platte: nicht im Cache, ETag aus dem Inhalt. */
+    private static void sendTile(HttpExchange ex, String path) throws IOException {
+        String[] parts = path.split("/");
+        if (parts.length != 5 || !parts[4].endsWith(".png")) {
+            sendError(ex, 404, "Nicht gefunden: " + path);
+            return;
+        }
+        int z, x, y;
+        try {
+            z = Integer.parseInt(parts[2]);
+            x = Integer.parseInt(parts[3]);
+            y = Integer.parseInt(parts[4].substring(0, parts[4].length() - 4));
+        } catch (NumberFormatException nfe) {
+            sendError(ex, 404, "Nicht gefunden: " + path);
+            return;
+        }
+        Heatmap heatmap = Heatmap.configured();
+        Path f = heatmap.file(new Heatmap.Tile(z, x, y));
+        byte[] body;
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(f).toMillis();
+            body = Files.readAllBytes(f);
+        } catch (NoSuchFileException nsf) {
+            // keine Messwerte in der Nähe: Leaflet zeigt dann nichts
+            sendError(ex, 404, "Keine Kachel: " + path);
+            return;
+        }
+        send(ex, new Entry(null, "image/png", body, lastModified));
+    }
+
+    private static void sendError(HttpExchange ex, int status, String msg) throws IOException {
+        byte[] b = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, b.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(b);
+        }
+    }
+
+    private static String httpDate(long epochMs) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMs), ZoneOffset.UTC));
+    }
+
+    private static boolean notModifiedSince(String header, long lastModified) {
+        try {
+            long since = ZonedDateTime.parse(header, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 <= since / 1000;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Parameter
+    // --------------------------------------------------------------------
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> q = new HashMap<>();
+        if (query == null || query.isEmpty()) return q;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                  URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static long parseTime(String s, long dflt) {
+        if (s == null || s.isBlank()) return dflt;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException ex) {
+            long t = Timestamps.parse(s);
+            if (t == Timestamps.INVALID) throw new IllegalArgumentException("Ungültige Zeit: " + s);
+            return t;
+        }
+    }
+
+    private static Rollups.Resolution resolution(String step) {
+        for (Rollups.Resolution r : Rollups.Resolution.values()) {
+            if (r.suffix.equals(step)) return r;
+        }
+        throw new IllegalArgumentException("Ungültiger step: " + step + " (raw, 10m, 1h, 1d)");
+    }
+}
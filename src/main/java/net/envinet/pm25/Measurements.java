@@ -0,0 +1,130 @@
+package net.envinet.pm25;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Messungen eines Sensors in Spalten: ein Zeitstempel je Zeile, je
+ * Messgröße ({@code value_type}, z.B. {@code P1}, {@code P2},
+ * {@code temperature}, {@code humidity}) eine {@code double}-Spalte;
+ * fehlende Werte sind NaN.
+ *
+ * Welche Messgrößen übernommen werden, legt {@code pm25.measurands} fest
+ * (Standard {@code P2}); P2 ist immer dabei und wird wie bisher unter der
+ * Sensor-ID gespeichert, alle anderen unter {@code <id>_<Messgröße>}.
+ * Befüllt wird direkt aus den JSON-Tokens ({@link SnapshotParser#parseColumns}).
+ */
+public final class Measurements {
+
+    /** PM2.5, die Messgröße für Karte, Prüfung und Alarme. */
+    public static final String PRIMARY = "P2";
+
+    /** Gewählte Messgrößen, P2 zuerst. */
+    public static final List<String> SELECTED = selected(System.getProperty("pm25.measurands", PRIMARY));
+
+    private final String[] names;
+    private final char[][] nameChars;
+    private long[] times;
+    private double[][] columns;
+    private int size;
+    private int rejected;
+
+    public Measurements() {
+        this(SELECTED);
+    }
+
+    public Measurements(List<String> names) {
+        this.names = names.toArray(new String[0]);
+        this.nameChars = new char[this.names.length][];
+        for (int c = 0; c < this.names.length; c++) nameChars[c] = this.names[c].toCharArray();
+        this.times = new long[16];
+        this.columns = new double[this.names.length][16];
+    }
+
+    static List<String> selected(String property) {
+        Set<String> out = new LinkedHashSet<>();
+        out.add(PRIMARY);
+        for (String s : property.split(",")) {
+            if (!s.isBlank()) out.add(s.trim());
+        }
+        return List.copyOf(out);
+    }
+
+    /** Speicher-ID einer Messgröße: P2 unter der Sensor-ID, sonst {@code <id>_<Messgröße>}. */
+    public static String seriesId(String sensorId, String measurand) {
+        return measurand.equals(PRIMARY) ? sensorId : sensorId + "_" + measurand;
+    }
+
+    /** true, wenn nur Feinstaubwerte gewählt sind ({@code P0}, {@code P1}, …). */
+    static boolean particulateOnly() {
+        return SELECTED.stream().allMatch(n -> n.matches("P\\d+"));
+    }
+
+    // --------------------------------------------------------------------
+    // Befüllen
+    // --------------------------------------------------------------------
+
+    /** Spalte zu {@code value_type} in {@code c[off, off+len)} oder -1; ohne String anzulegen. */
+    public int column(char[] c, int off, int len) {
+        for (int k = 0; k < nameChars.length; k++) {
+            char[] n = nameChars[k];
+            if (n.length == len && Arrays.equals(n, 0, len, c, off, off + len)) return k;
+        }
+        return -1;
+    }
+
+    public int column(String name) {
+        for (int k = 0; k < names.length; k++) {
+            if (names[k].equals(name)) return k;
+        }
+        return -1;
+    }
+
+    /** Hängt eine Zeile an; {@code row[k]} ist der Wert der Spalte k (NaN = fehlt). */
+    public void add(long time, double[] row) {
+        if (size == times.length) {
+            int cap = size * 2;
+            times = Arrays.copyOf(times, cap);
+            for (int k = 0; k < columns.length; k++) columns[k] = Arrays.copyOf(columns[k], cap);
+        }
+        times[size] = time;
+        for (int k = 0; k < columns.length; k++) columns[k][size] = row[k];
+        size++;
+    }
+
+    /** Zählt einen Eintrag mit unlesbarem Zeitstempel. */
+    void reject() {
+        rejected++;
+    }
+
+    // --------------------------------------------------------------------
+    // Lesen
+    // --------------------------------------------------------------------
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public int columns() { return names.length; }
+
+    public String name(int column) { return names[column]; }
+
+    public long time(int i) { return times[i]; }
+
+    public double value(int column, int i) { return columns[column][i]; }
+
+    /** Verworfene Einträge (Zeitstempel unlesbar). */
+    public int rejected() { return rejected; }
+
+    /** Die Werte einer Spalte als Reihe, ohne fehlende Werte. */
+    public Series series(int column) {
+        double[] col = columns[column];
+        Series s = new Series(size);
+        for (int i = 0; i < size; i++) {
+            if (!Double.isNaN(col[i])) s.add(times[i], col[i]);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,214 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Zähler und Latenz-Histogramme für den Aktualisierungszyklus.
+ *
+ * Die Histogramme sind log-linear wie bei HdrHistogram: je Zweierpotenz
+ * 8 Eimer, d.h. rund 12 % Auflösung von 1 µs bis mehrere Tage. Erfassen
+ * kostet ein {@code AtomicLongArray}-Inkrement und zwei {@link LongAdder}.
+ *
+ * Export im Prometheus-Textformat ({@link #writePrometheus}) als Datei
+ * ({@code data/metrics.prom}) oder über {@code /metrics} im {@link MapServer}.
+ */
+public final class Metrics {
+
+    // Schlüssel "name\0label=wert": gleiche Namen liegen sortiert beieinander
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+    /** Eimergrenzen für den Prometheus-Export (Sekunden). */
+    private static final double[] EXPORT_BOUNDS =
+            {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+
+    private Metrics() {}
+
+    // --------------------------------------------------------------------
+    // Registry
+    // --------------------------------------------------------------------
+
+    public static Counter counter(String name, String help) {
+        return COUNTERS.computeIfAbsent(name + '\0', n -> new Counter(name, help, ""));
+    }
+
+    public static Counter counter(String name, String help, String label, String value) {
+        return COUNTERS.computeIfAbsent(name + '\0' + label + "=" + value,
+                n -> new Counter(name, help, label + "=\"" + value + "\""));
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return HISTOGRAMS.computeIfAbsent(name + '\0', n -> new Histogram(name, help, ""));
+    }
+
+    public static Histogram histogram(String name, String help, String label, String value) {
+        return HISTOGRAMS.computeIfAbsent(name + '\0' + label + "=" + value,
+                n -> new Histogram(name, help, label + "=\"" + value + "\""));
+    }
+
+    // --------------------------------------------------------------------
+    // Zähler
+    // --------------------------------------------------------------------
+
+    public static final class Counter {
+        final String name, help, labels;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help, String labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+        }
+
+        public void inc() { value.increment(); }
+
+        public void add(long n) { value.add(n); }
+
+        public long get() { return value.sum(); }
+    }
+
+    // --------------------------------------------------------------------
+    // Histogramm (Mikrosekunden)
+    // --------------------------------------------------------------------
+
+    public static final class Histogram {
+        private static final int SUB = 8;
+        private static final int BUCKETS = 304; // bis ca. 2^40 µs
+
+        final String name, help, labels;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+
+        private Histogram(String name, String help, String labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+        }
+
+        /** Startzeit für {@link #stop(long)}. */
+        public long start() { return System.nanoTime(); }
+
+        /** Erfasst die Dauer seit {@code startNanos}. */
+        public void stop(long startNanos) {
+            recordMicros((System.nanoTime() - startNanos) / 1000);
+        }
+
+        public void recordMicros(long micros) {
+            long v = Math.max(0, micros);
+            counts.incrementAndGet(index(v));
+            count.increment();
+            sumMicros.add(v);
+        }
+
+        public long count() { return count.sum(); }
+
+        public Snapshot snapshot() {
+            long[] c = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) c[i] = counts.get(i);
+            return new Snapshot(c);
+        }
+
+        static int index(long v) {
+            if (v < SUB) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exp - 3)) & (SUB - 1);
+            return Math.min(BUCKETS - 1, (exp - 2) * SUB + sub);
+        }
+
+        /** Größter Wert im Eimer {@code i} (µs). */
+        static long upperBound(int i) {
+            if (i < SUB) return i;
+            int exp = i / SUB + 2;
+            int sub = i % SUB;
+            return ((long) (SUB + sub + 1) << (exp - 3)) - 1;
+        }
+    }
+
+    /** Eingefrorene Eimer eines Histogramms; Differenz zweier Stände über {@link #minus}. */
+    public static final class Snapshot {
+        private final long[] counts;
+
+        private Snapshot(long[] counts) { this.counts = counts; }
+
+        public Snapshot minus(Snapshot earlier) {
+            long[] c = counts.clone();
+            if (earlier != null) {
+                for (int i = 0; i < c.length; i++) c[i] -= earlier.counts[i];
+            }
+            return new Snapshot(c);
+        }
+
+        public long count() {
+            long n = 0;
+            for (long c : counts) n += c;
+            return n;
+        }
+
+        /** Perzentil in Millisekunden (obere Eimergrenze), 0 wenn leer. */
+        public double percentileMillis(double p) {
+            long total = count();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Histogram.upperBound(i) / 1000.0;
+            }
+            return Histogram.upperBound(counts.length - 1) / 1000.0;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Export
+    // --------------------------------------------------------------------
+
+    /** Alle Metriken im Prometheus-Textformat. */
+    public static void writePrometheus(Writer w) throws IOException {
+        String lastName = null;
+        for (Counter c : COUNTERS.values()) {
+            if (!c.name.equals(lastName)) {
+                w.write("# HELP " + c.name + " " + c.help + "\n# TYPE " + c.name + " counter\n");
+                lastName = c.name;
+            }
+            w.write(c.name + braces(c.labels) + " " + c.get() + "\n");
+        }
+
+        lastName = null;
+        for (Histogram h : HISTOGRAMS.values()) {
+            if (!h.name.equals(lastName)) {
+                w.write("# HELP " + h.name + " " + h.help + "\n# TYPE " + h.name + " histogram\n");
+                lastName = h.name;
+            }
+            String sep = h.labels.isEmpty() ? "" : h.labels + ",";
+            long[] c = h.snapshot().counts;
+            long cumulative = 0;
+            int i = 0;
+            for (double bound : EXPORT_BOUNDS) {
+                long boundMicros = (long) (bound * 1_000_000);
+                while (i < c.length && Histogram.upperBound(i) <= boundMicros) cumulative += c[i++];
+                w.write(h.name + "_bucket{" + sep + "le=\"" + bound + "\"} " + cumulative + "\n");
+            }
+            while (i < c.length) cumulative += c[i++];
+            w.write(h.name + "_bucket{" + sep + "le=\"+Inf\"} " + cumulative + "\n");
+            w.write(String.format(Locale.US, "%s_sum%s %.6f%n", h.name, braces(h.labels), h.sumMicros.sum() / 1e6));
+            w.write(h.name + "_count" + braces(h.labels) + " " + cumulative + "\n");
+        }
+    }
+
+    /** Schreibt {@link #writePrometheus} atomar nach {@code file}. */
+    public static void writePrometheus(Path file) throws IOException {
+        Durable.writeAtomically(file, Metrics::writePrometheus);
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+}
@@ -0,0 +1,214 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Abruf je Sensor im eigenen Takt statt alle 30 Minuten für alle.
+ *
+ * Aus den Abständen der zuletzt gespeicherten Zeitstempel wird das
+ * Sendeintervall eines Sensors geschätzt (Median); abgefragt wird kurz
+ * nach dem nächsten erwarteten Messwert, frühestens nach
+ * {@code pm25.poll.minMinutes}. {@code max_results} wird auf die seit dem
+ * letzten Wert erwartete Zeilenzahl verkleinert.
+ *
+ * Liefert ein Sensor nichts Neues (offline, defekt), verdoppelt sich der
+ * Abstand bis höchstens {@code pm25.poll.maxHours}; der erste neue Wert
+ * setzt ihn zurück. Scheitert dagegen der Abruf selbst (Netz weg, 5xx nach
+ * allen Versuchen), wird nach kurzer Pause erneut versucht – ab 1 min
+ * verdoppelt, höchstens {@code pm25.poll.minMinutes} –, ohne den Abstand
+ * des Sensors zu vergrößern. Eine endgültige Absage (z.B. 404) zählt wie
+ * "nichts Neues".
+ */
+public class PollScheduler {
+
+    /** Frühestens nach so vielen Minuten wird ein Sensor erneut abgefragt. */
+    static final long MIN_INTERVAL_SEK = Long.getLong("pm25.poll.minMinutes", 10L) * 60L;
+
+    /** Obergrenze des Abstands für Sensoren ohne neue Werte. */
+    static final long MAX_INTERVAL_SEK = Long.getLong("pm25.poll.maxHours", 6L) * 3600L;
+
+    /** Sendeintervall, solange zu wenige Messwerte vorliegen (airrohr: ca. 145 s). */
+    static final long DEFAULT_CADENCE_SEK = 150;
+
+    /** Erste Pause nach einem gescheiterten Abruf; verdoppelt bis {@link #MIN_INTERVAL_SEK}. */
+    static final long RETRY_SEK = 60;
+
+    /** Wartezeit nach dem erwarteten Messzeitpunkt, bis er in der API steht. */
+    static final long GRACE_SEK = 30;
+
+    /** Abstand der Gruppen-Commits ({@link Durable#commit}) im adaptiven Betrieb. */
+    static final long COMMIT_SEK = Long.getLong("pm25.store.commitSeconds", 30L);
+
+    /** So viele Abstände gehen in die Schätzung ein. */
+    private static final int CADENCE_GAPS = 32;
+
+    /** Zustand eines Sensors; nur vom jeweils laufenden Abruf verändert. */
+    static final class SensorState {
+        final String id;
+        long lastTime = Timestamps.INVALID;
+        long cadence = DEFAULT_CADENCE_SEK;
+        int misses;
+        /** Gescheiterte Abrufe in Folge (kein Ergebnis, auch kein leeres). */
+        int failures;
+        final long[] recent = new long[CADENCE_GAPS + 1];
+        int recentSize;
+
+        SensorState(String id) { this.id = id; }
+
+        /** Neue (aufsteigende) Zeitstempel übernehmen und das Intervall neu schätzen. */
+        void observe(Series s) {
+            for (int i = 0; i < s.size(); i++) {
+                long t = s.time(i);
+                if (recentSize == recent.length) {
+                    System.arraycopy(recent, 1, recent, 0, recentSize - 1);
+                    recentSize--;
+                }
+                recent[recentSize++] = t;
+                lastTime = lastTime == Timestamps.INVALID ? t : Math.max(lastTime, t);
+            }
+            cadence = estimateCadence(recent, recentSize);
+        }
+    }
+
+    private final List<String> ids;
+    private final SeriesStore store;
+    private final RateLimiter limiter;
+    private final ScheduledExecutorService executor;
+
+    public PollScheduler(List<String> ids, SeriesStore store) {
+        this.ids = ids;
+        this.store = store;
+        this.limiter = new RateLimiter(SensorUpdater.REQUESTS_PER_SECOND, SensorUpdater.MAX_IN_FLIGHT);
+        // Java 17: Plattform-Threads; die Parallelität begrenzt weiterhin pm25.fetch.parallel
+        this.executor = new ScheduledThreadPoolExecutor(SensorUpdater.MAX_IN_FLIGHT, SensorUpdater.fetchThreads());
+    }
+
+    /** Plant den ersten Abruf aller Sensoren, gestaffelt nach der erlaubten Abrufrate. */
+    public void start() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        long staggerMs = (long) Math.ceil(1000 / SensorUpdater.REQUESTS_PER_SECOND);
+
+        for (int i = 0; i < ids.size(); i++) {
+            SensorState s = new SensorState(ids.get(i));
+            // Historie der letzten Tage reicht für Intervall und letzten Zeitstempel
+            s.observe(store.read(s.id, now - 2 * 86400, Long.MAX_VALUE));
+
+            // überfällige Sensoren sofort, die anderen kurz nach dem nächsten erwarteten Wert
+            long delayMs = i * staggerMs;
+            if (s.lastTime != Timestamps.INVALID) {
+                delayMs = Math.max(delayMs, (s.lastTime + s.cadence + GRACE_SEK - now) * 1000);
+            }
+            schedule(s, delayMs);
+        }
+        // Abrufe laufen verteilt: was bis dahin angehängt wurde, gemeinsam sichern
+        executor.scheduleWithFixedDelay(Durable::commitQuietly, COMMIT_SEK, COMMIT_SEK, TimeUnit.SECONDS);
+        System.out.println("✔ Adaptiver Abruf für " + ids.size() + " Sensoren gestartet");
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        Durable.commitQuietly();
+    }
+
+    private void schedule(SensorState s, long delayMs) {
+        executor.schedule(() -> poll(s), Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(SensorState s) {
+        long now = Instant.now().getEpochSecond();
+        try {
+            Series added = SensorUpdater.poll(s.id, maxResults(s, now), limiter);
+            s.failures = 0;
+            if (added.isEmpty()) {
+                s.misses++;
+            } else {
+                s.misses = 0;
+                s.observe(added);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (HttpFetch.StatusException e) {
+            // endgültige Absage des Servers: wie "nichts Neues"
+            if (e.retryable()) s.failures++;
+            else { s.failures = 0; s.misses++; }
+        } catch (IOException e) {
+            s.failures++; // von SensorUpdater.poll schon gemeldet
+        } catch (Throwable e) {
+            // auch ein Error darf den Sensor nicht aus dem Plan werfen
+            s.failures++;
+            System.out.println("   " + s.id + ": Abruf fehlgeschlagen: " + e);
+        }
+
+        now = Instant.now().getEpochSecond();
+        long next = nextPoll(s, now);
+        if (s.failures > 0) {
+            System.out.println("   " + s.id + ": Abruf gescheitert (" + s.failures + "×), nächster Versuch in "
+                    + Math.max(1, (next - now) / 60) + " min");
+        } else if (s.misses > 0) {
+            System.out.println("   " + s.id + ": nichts Neues (" + s.misses + "×), nächster Abruf in "
+                    + (next - now) / 60 + " min");
+        }
+        if (!executor.isShutdown()) schedule(s, (next - now) * 1000);
+    }
+
+    // --------------------------------------------------------------------
+    // Planung
+    // --------------------------------------------------------------------
+
+    /**
+     * Nächster Abrufzeitpunkt (Epoch-s) nach {@code now}: kurz nach einem
+     * erwarteten Messzeitpunkt, Abstand mindestens {@link #MIN_INTERVAL_SEK},
+     * verdoppelt je Abruf ohne neue Werte. Nach gescheiterten Abrufen kurz
+     * danach ({@link #RETRY_SEK}, verdoppelt bis {@link #MIN_INTERVAL_SEK}).
+     */
+    static long nextPoll(SensorState s, long now) {
+        if (s.failures > 0) {
+            return now + Math.min(MIN_INTERVAL_SEK, RETRY_SEK << Math.min(s.failures - 1, 20));
+        }
+
+        long interval = Math.max(MIN_INTERVAL_SEK, s.cadence);
+        if (s.misses > 0) {
+            interval = Math.min(MAX_INTERVAL_SEK, interval << Math.min(s.misses, 20));
+        }
+
+        long target = now + interval;
+        if (s.lastTime == Timestamps.INVALID) return target;
+
+        // auf den nächsten erwarteten Messzeitpunkt ausrichten
+        long steps = Math.max(1, ceilDiv(target - GRACE_SEK - s.lastTime, s.cadence));
+        long expected = s.lastTime + steps * s.cadence + GRACE_SEK;
+        return Math.min(expected, now + MAX_INTERVAL_SEK);
+    }
+
+    /** Seit dem letzten Wert erwartete Zeilen plus Reserve, höchstens wie bisher 100. */
+    static int maxResults(SensorState s, long now) {
+        if (s.lastTime == Timestamps.INVALID) return SensorUpdater.MAX_RESULTS;
+        long expected = ceilDiv(Math.max(0, now - s.lastTime), s.cadence);
+        return (int) Math.max(5, Math.min(SensorUpdater.MAX_RESULTS, expected + 3));
+    }
+
+    /** Median der Abstände, begrenzt auf 1 min … 1 h. */
+    static long estimateCadence(long[] times, int n) {
+        if (n < 3) return DEFAULT_CADENCE_SEK;
+        long[] gaps = new long[n - 1];
+        int g = 0;
+        for (int i = 1; i < n; i++) {
+            long d = times[i] - times[i - 1];
+            if (d > 0) gaps[g++] = d;
+        }
+        if (g < 2) return DEFAULT_CADENCE_SEK;
+        Arrays.sort(gaps, 0, g);
+        return Math.max(60, Math.min(3600, gaps[g / 2]));
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+}
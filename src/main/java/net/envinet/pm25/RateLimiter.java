@@ -0,0 +1,51 @@
+package net.envinet.pm25;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Einfacher Token-Bucket für ausgehende API-Aufrufe.
+ *
+ * Es werden {@code permitsPerSecond} Tokens pro Sekunde nachgefüllt,
+ * höchstens {@code burst} Tokens können angespart werden.
+ * {@link #acquire()} blockiert, bis ein Token verfügbar ist.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond muss > 0 sein");
+        if (burst < 1) throw new IllegalArgumentException("burst muss >= 1 sein");
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /** Wartet, bis ein Token frei ist, und verbraucht es. */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryReserve()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /** Verbraucht ein Token und liefert 0 – oder die Wartezeit bis zum nächsten Token. */
+    private synchronized long tryReserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0;
+        }
+        return (long) Math.ceil((1.0 - tokens) / permitsPerNano);
+    }
+}
@@ -0,0 +1,351 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Verdichtete Messreihen je Sensor: Min/Mittel/Max/Anzahl in Zeit-Eimern
+ * zu 10 Minuten, 1 Stunde und 1 Tag.
+ *
+ * Je Sensor und Auflösung liegt eine Datei
+ * {@code data/rollup/sensor_<id>_<auflösung>.csv} mit Zeilen
+ * {@code eimer-start,min,max,summe,anzahl}. Neue Messwerte ändern nur den
+ * letzten (offenen) Eimer bzw. hängen neue an; nur nachgereichte Werte für
+ * ältere Eimer führen zum Neuschreiben der Datei. Geschrieben und gelesen
+ * wird immer unter der Dateisperre ({@link Durable#locked}) und in derselben
+ * Datei – ein Umbenennen über den gesperrten Pfad ließe einen wartenden
+ * Schreiber in die alte Datei weiterschreiben.
+ *
+ * Die letzte Zeile trägt als sechste Spalte den jüngsten eingerechneten
+ * Messzeitpunkt (High-Water-Mark). Vor dem Fortschreiben wird alles
+ * nachgeholt, was danach in der Ablage steht – Werte, deren Verdichtung
+ * gescheitert ist oder bei einem Absturz nach dem Speichern fehlte, gehen
+ * so nicht verloren. Fehlt die Marke (ältere Datei), wird neu aufgebaut.
+ */
+public class Rollups implements AppendListener {
+
+    /** Auflösungen der Verdichtung. */
+    public enum Resolution {
+        MIN10(600, "10m"),
+        HOUR(3600, "1h"),
+        DAY(86400, "1d");
+
+        public final int seconds;
+        public final String suffix;
+
+        Resolution(int seconds, String suffix) {
+            this.seconds = seconds;
+            this.suffix = suffix;
+        }
+
+        long bucketOf(long t) {
+            return Math.floorDiv(t, seconds) * seconds;
+        }
+    }
+
+    /** Eimer einer Auflösung, aufsteigend nach Startzeit. */
+    public static final class Buckets {
+        private long[] start = new long[16];
+        private double[] min = new double[16];
+        private double[] max = new double[16];
+        private double[] sum = new double[16];
+        private int[] count = new int[16];
+        private int size;
+
+        public int size() { return size; }
+        public long start(int i) { return start[i]; }
+        public double min(int i) { return min[i]; }
+        public double max(int i) { return max[i]; }
+        public double mean(int i) { return sum[i] / count[i]; }
+        public int count(int i) { return count[i]; }
+
+        void add(long s, double mn, double mx, double sm, int c) {
+            if (size == start.length) {
+                int cap = size * 2;
+                start = Arrays.copyOf(start, cap);
+                min = Arrays.copyOf(min, cap);
+                max = Arrays.copyOf(max, cap);
+                sum = Arrays.copyOf(sum, cap);
+                count = Arrays.copyOf(count, cap);
+            }
+            start[size] = s;
+            min[size] = mn;
+            max[size] = mx;
+            sum[size] = sm;
+            count[size] = c;
+            size++;
+        }
+
+        /** Mittelwerte als Zeitreihe, z.B. für Charts. */
+        public Series means() {
+            Series s = new Series(size);
+            for (int i = 0; i < size; i++) s.add(start[i], mean(i));
+            return s;
+        }
+    }
+
+    private final Path dir;
+    private final SeriesStore store;
+
+    public Rollups(Path dir, SeriesStore store) {
+        this.dir = dir;
+        this.store = store;
+    }
+
+    /** Verdichtung unter {@code data/rollup} über dem konfigurierten Speicher. */
+    public static Rollups configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final Rollups INSTANCE = new Rollups(Path.of("data", "rollup"), SeriesStore.configured());
+    }
+
+    public Path file(String sensorId, Resolution res) {
+        return dir.resolve("sensor_" + sensorId + "_" + res.suffix + ".csv");
+    }
+
+    // --------------------------------------------------------------------
+    // Fortschreiben
+    // --------------------------------------------------------------------
+
+    @Override
+    public void onAppend(String sensorId, Series added) throws IOException {
+        if (added.isEmpty()) return;
+        Files.createDirectories(dir);
+
+        // meist haben alle Auflösungen dieselbe Marke: die Ablage nur einmal je Marke lesen
+        Map<Long, Series> newer = new HashMap<>();
+        for (Resolution res : Resolution.values()) {
+            Path f = file(sensorId, res);
+            if (Files.exists(f)) update(f, res, sensorId, added, newer);
+            else rebuild(f, res, sensorId);
+        }
+    }
+
+    /** Baut alle Verdichtungen eines Sensors aus der kompletten Reihe neu auf. */
+    public void rebuild(String sensorId) throws IOException {
+        Files.createDirectories(dir);
+        for (Resolution res : Resolution.values()) rebuild(file(sensorId, res), res, sensorId);
+    }
+
+    private void update(Path f, Resolution res, String sensorId, Series added, Map<Long, Series> newer)
+            throws IOException {
+        Durable.locked(f, ch -> {
+            long lastLineStart = lastLineStart(ch);
+            Bucket open = lastLineStart < ch.size() ? Bucket.parse(readFrom(ch, lastLineStart)) : null;
+            if (open == null || open.folded == Timestamps.INVALID) {
+                rebuild(ch, res, sensorId);
+                return null;
+            }
+
+            Series rows = unfolded(sensorId, open.folded, added, newer);
+            if (rows.isEmpty()) return null;
+            long folded = Math.max(open.folded, rows.lastTime());
+
+            // nachgereichte Werte für ältere Eimer: Datei neu schreiben
+            if (res.bucketOf(rows.time(0)) < open.start) {
+                merge(ch, res, rows, folded);
+                return null;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            Bucket cur = open;
+            for (int i = 0; i < rows.size(); i++) {
+                long b = res.bucketOf(rows.time(i));
+                if (b != cur.start) {
+                    cur.appendTo(sb);
+                    cur = new Bucket(b);
+                }
+                cur.add(rows.value(i));
+            }
+            cur.appendTo(sb, folded);
+
+            // offenen Eimer ersetzen, neue anhängen
+            ch.truncate(lastLineStart);
+            ch.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)), ch.size());
+            return null;
+        });
+        Durable.pending(f);
+    }
+
+    /**
+     * Noch nicht eingerechnete Werte, aufsteigend: nachgereichte aus
+     * {@code added} (nicht neuer als die Marke) und alles, was nach der Marke
+     * in der Ablage steht – darunter die neueren aus {@code added}.
+     */
+    private Series unfolded(String sensorId, long folded, Series added, Map<Long, Series> newer)
+            throws IOException {
+        Series after = newer.get(folded);
+        if (after == null) {
+            after = store.read(sensorId, folded + 1, Long.MAX_VALUE);
+            newer.put(folded, after);
+        }
+        Series out = new Series(added.size() + after.size());
+        for (int i = 0; i < added.size() && added.time(i) <= folded; i++) out.add(added.time(i), added.value(i));
+        for (int i = 0; i < after.size(); i++) out.add(after.time(i), after.value(i));
+        return out;
+    }
+
+    private static void merge(FileChannel ch, Resolution res, Series rows, long folded) throws IOException {
+        TreeMap<Long, Bucket> all = new TreeMap<>();
+        readFrom(ch, 0).lines().forEach(line -> {
+            Bucket b = Bucket.parse(line);
+            if (b != null) all.put(b.start, b);
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            all.computeIfAbsent(res.bucketOf(rows.time(i)), Bucket::new).add(rows.value(i));
+        }
+        write(ch, all, folded);
+    }
+
+    private void rebuild(Path f, Resolution res, String sensorId) throws IOException {
+        Durable.locked(f, ch -> {
+            rebuild(ch, res, sensorId);
+            return null;
+        });
+        Durable.pending(f);
+    }
+
+    private void rebuild(FileChannel ch, Resolution res, String sensorId) throws IOException {
+        // unter der Sperre gelesen: ein paralleles Fortschreiben wartet und setzt danach auf
+        Series s = store.readAll(sensorId);
+        TreeMap<Long, Bucket> all = new TreeMap<>();
+        for (int i = 0; i < s.size(); i++) {
+            all.computeIfAbsent(res.bucketOf(s.time(i)), Bucket::new).add(s.value(i));
+        }
+        write(ch, all, s.isEmpty() ? Timestamps.INVALID : s.lastTime());
+    }
+
+    /**
+     * Überschreibt den Inhalt des gesperrten Kanals, die letzte Zeile mit der
+     * Marke {@code folded}; Leser lesen ebenfalls unter der Sperre.
+     */
+    private static void write(FileChannel ch, Map<Long, Bucket> buckets, long folded) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int n = buckets.size();
+        for (Bucket b : buckets.values()) {
+            if (--n > 0) b.appendTo(sb);
+            else b.appendTo(sb, folded);
+        }
+        ByteBuffer out = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        long pos = 0;
+        while (out.hasRemaining()) pos += ch.write(out, pos);
+        ch.truncate(pos);
+    }
+
+    // --------------------------------------------------------------------
+    // Lesen
+    // --------------------------------------------------------------------
+
+    /** Eimer mit {@code from <= start <= to}. */
+    public Buckets read(String sensorId, Resolution res, long from, long to) throws IOException {
+        Buckets out = new Buckets();
+        Path f = file(sensorId, res);
+        if (!Files.exists(f)) {
+            rebuild(sensorId);
+            if (!Files.exists(f)) return out;
+        }
+
+        // unter der Sperre: ein Neuschreiben ist nie halb zu sehen
+        String text = Durable.locked(f, ch -> readFrom(ch, 0));
+        for (String line : (Iterable<String>) text.lines()::iterator) {
+            Bucket b = Bucket.parse(line);
+            if (b == null || b.start < from) continue;
+            if (b.start > to) break;
+            out.add(b.start, b.min, b.max, b.sum, b.count);
+        }
+        return out;
+    }
+
+    // --------------------------------------------------------------------
+    // Einzelner Eimer als Textzeile
+    // --------------------------------------------------------------------
+
+    private static final class Bucket {
+        final long start;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum;
+        int count;
+        /** Nur letzte Zeile: jüngster eingerechneter Messzeitpunkt. */
+        long folded = Timestamps.INVALID;
+
+        Bucket(long start) { this.start = start; }
+
+        void add(double v) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+            count++;
+        }
+
+        void appendTo(StringBuilder sb) {
+            Timestamps.appendTo(sb, start);
+            sb.append(',').append(Series.formatValue(min))
+              .append(',').append(Series.formatValue(max))
+              .append(',').append(Series.formatValue(sum))
+              .append(',').append(count).append('\n');
+        }
+
+        /** Als letzte Zeile, mit der Marke {@code folded}. */
+        void appendTo(StringBuilder sb, long folded) {
+            appendTo(sb);
+            sb.setLength(sb.length() - 1);
+            sb.append(',');
+            Timestamps.appendTo(sb, folded);
+            sb.append('\n');
+        }
+
+        static Bucket parse(String line) {
+            String[] a = line.trim().split(",", -1);
+            if (a.length != 5 && a.length != 6) return null;
+            long t = Timestamps.parse(a[0]);
+            if (t == Timestamps.INVALID) return null;
+            try {
+                Bucket b = new Bucket(t);
+                b.min = Double.parseDouble(a[1]);
+                b.max = Double.parseDouble(a[2]);
+                b.sum = Double.parseDouble(a[3]);
+                b.count = Integer.parseInt(a[4]);
+                if (a.length == 6) b.folded = Timestamps.parse(a[5]);
+                return b;
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Letzte Zeile einer kleinen Textdatei
+    // --------------------------------------------------------------------
+
+    private static long lastLineStart(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) return 0;
+
+        int n = (int) Math.min(4096, size);
+        ByteBuffer buf = ByteBuffer.allocate(n);
+        ch.read(buf, size - n);
+        byte[] b = buf.array();
+
+        // abschließenden Zeilenumbruch überspringen
+        int i = n - 1;
+        if (b[i] == '\n') i--;
+        while (i >= 0 && b[i] != '\n') i--;
+        return size - n + i + 1;
+    }
+
+    private static String readFrom(FileChannel ch, long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) (ch.size() - pos));
+        ch.read(buf, pos);
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+}
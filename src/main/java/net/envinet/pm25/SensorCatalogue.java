@@ -0,0 +1,80 @@
+package net.envinet.pm25;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kompakte Liste aller Sensoren eines Snapshots: ID, Koordinaten, Typ und
+ * letzte Meldung in primitiven Arrays, jede Sensor-ID nur einmal (bei
+ * mehreren Einträgen zählt der jüngste).
+ */
+public class SensorCatalogue implements SnapshotParser.Handler, Catalogue {
+
+    private long[] ids = new long[1024];
+    private double[] lats = new double[1024];
+    private double[] lons = new double[1024];
+    private String[] types = new String[1024];
+    private long[] seen = new long[1024];
+    private int size;
+
+    private final Map<Long, Integer> index = new HashMap<>();
+    /** Typnamen nur einmal im Speicher. */
+    private final Map<String, String> typeNames = new HashMap<>();
+
+    @Override
+    public void onSensor(long id, double lat, double lon, String type, long time) {
+        if (type != null) type = typeNames.computeIfAbsent(type, k -> k);
+
+        Integer known = index.get(id);
+        if (known != null) {
+            int i = known;
+            if (time > seen[i]) set(i, id, lat, lon, type, time);
+            return;
+        }
+
+        if (size == ids.length) {
+            int cap = size * 2;
+            ids = Arrays.copyOf(ids, cap);
+            lats = Arrays.copyOf(lats, cap);
+            lons = Arrays.copyOf(lons, cap);
+            types = Arrays.copyOf(types, cap);
+            seen = Arrays.copyOf(seen, cap);
+        }
+        set(size, id, lat, lon, type, time);
+        index.put(id, size);
+        size++;
+    }
+
+    private void set(int i, long id, double lat, double lon, String type, long time) {
+        ids[i] = id;
+        lats[i] = lat;
+        lons[i] = lon;
+        if (type != null) types[i] = type;
+        seen[i] = time;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public long id(int i) { return ids[i]; }
+
+    @Override
+    public double lat(int i) { return lats[i]; }
+
+    @Override
+    public double lon(int i) { return lons[i]; }
+
+    @Override
+    public String type(int i) { return types[i]; }
+
+    @Override
+    public long lastSeen(int i) { return seen[i]; }
+
+    @Override
+    public int indexOf(long id) {
+        Integer i = index.get(id);
+        return i != null ? i : -1;
+    }
+}
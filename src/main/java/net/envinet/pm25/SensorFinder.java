@@ -1,60 +1,49 @@
 package net.envinet.pm25;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.*;
+import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SensorFinder {
 
-    private static final HttpClient HTTP = HttpClient.newHttpClient();
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-
     public static void main(String[] args) throws Exception {
 
         if (args.length == 0) {
             System.out.println("Bitte Sensor-ID angeben. Beispiel:");
-            System.out.println("  java SensorFinder 81607");
+            System.out.println("  java SensorFinder 81607 [--offline]");
             return;
         }
 
         String baseId = args[0];
 
+        // "--offline": nur den gespeicherten Katalog benutzen
+        boolean offline = args.length > 1 && args[1].equals("--offline");
+        Catalogue catalogue = loadCatalogue(offline);
+
         System.out.println("Suche Koordinaten für Sensor " + baseId + " …");
 
-        double[] baseCoords = getCoordinates(baseId);
+        int base = indexOf(catalogue, baseId);
 
-        if (baseCoords == null) {
+        if (base < 0 || Double.isNaN(catalogue.lat(base)) || Double.isNaN(catalogue.lon(base))) {
             System.out.println("Fehler: Sensor " + baseId + " hat keine Koordinaten.");
             return;
         }
 
-        double baseLat = baseCoords[0];
-        double baseLon = baseCoords[1];
+        double baseLat = catalogue.lat(base);
+        double baseLon = catalogue.lon(base);
 
         System.out.println("Basis-Sensor: lat=" + baseLat + " lon=" + baseLon);
 
-        System.out.println("Lade alle Sensoren der Region (ca. 25 km Radius) …");
+        System.out.println("Suche die 5 nächsten Sensoren (max. 25 km) …");
 
-        List<SensorEntry> all = fetchAllNearby(baseLat, baseLon);
+        SpatialIndex index = SpatialIndex.of(catalogue);
+        List<SensorEntry> nearest = nearest(catalogue, index, baseLat, baseLon, 5, 25.0);
 
-        if (all.isEmpty()) {
+        if (nearest.isEmpty()) {
             System.out.println("Keine Sensoren gefunden.");
             return;
         }
 
-        System.out.println("Sortiere nach Entfernung …");
-
-        List<SensorEntry> nearest =
-                all.stream()
-                        .sorted(Comparator.comparingDouble(s -> distance(baseLat, baseLon, s.lat, s.lon)))
-                        .limit(5)
-                        .collect(Collectors.toList());
-
         System.out.println("\n=============================");
         System.out.println("JSON für sensors.json:");
         System.out.println("=============================\n");
@@ -86,85 +75,60 @@ System.out.println("]");
     }
 
     // --------------------------------------------------------------------
-    // SensorCommunity API: Sensor-Koordinaten laden
+    // Katalog: gespeicherter Stand, abgeglichen mit dem aktuellen Snapshot
     // --------------------------------------------------------------------
 
-    private static double[] getCoordinates(String id) throws Exception {
-        String url = "https://data.sensor.community/static/v2/data.json";
-
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("User-Agent", "gptLuftAPI/1.0 (Java)")
-                .GET()
-                .build();
-
-        HttpResponse<String> res = HTTP.send(req, HttpResponse.BodyHandlers.ofString());
-        JsonNode root = MAPPER.readTree(res.body());
-
-        for (JsonNode node : root) {
-            JsonNode sensor = node.path("sensor");
-            if (!sensor.isMissingNode() && sensor.path("id").asText().equals(id)) {
-                double lat = node.path("location").path("latitude").asDouble();
-                double lon = node.path("location").path("longitude").asDouble();
-                return new double[]{lat, lon};
+    /**
+     * Gespeicherter Katalog ({@link CatalogueFile}), vorher mit dem Snapshot
+     * abgeglichen; ohne Netz genügt der letzte gespeicherte Stand.
+     */
+    static Catalogue loadCatalogue(boolean offline) throws IOException, InterruptedException {
+        CatalogueFile catalogue = CatalogueFile.configured();
+        if (!offline) {
+            System.out.println("Gleiche Sensor-Katalog ab (static/v2/data.json) …");
+            try {
+                System.out.println("✔ Katalog: " + catalogue.refresh());
+                return catalogue;
+            } catch (IOException e) {
+                if (catalogue.size() == 0) throw e;
+                System.out.println("⚠️  Snapshot nicht erreichbar (" + e.getMessage() + ").");
             }
         }
-        return null;
+        if (catalogue.size() == 0)
+            throw new IOException("Kein gespeicherter Katalog unter " + catalogue.file() + " – einmal online starten.");
+        long stand = catalogue.newestSeen();
+        System.out.println("Nutze gespeicherten Katalog: " + catalogue.size() + " Sensoren"
+                + (stand == Timestamps.INVALID ? "" : ", Stand " + Timestamps.format(stand)));
+        return catalogue;
     }
 
-    // --------------------------------------------------------------------
-    // Alle Sensoren (in großem Umkreis) laden
-    // --------------------------------------------------------------------
-
-    private static List<SensorEntry> fetchAllNearby(double lat0, double lon0) throws Exception {
-        String url = "https://data.sensor.community/static/v2/data.json";
+    static SensorCatalogue parseCatalogue(InputStream in) throws IOException {
+        SensorCatalogue catalogue = new SensorCatalogue();
+        SnapshotParser.parse(in, catalogue);
+        return catalogue;
+    }
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("User-Agent", "gptLuftAPI/1.0 (Java)")
-                .GET()
-                .build();
+    private static int indexOf(Catalogue catalogue, String id) {
+        try { return catalogue.indexOf(Long.parseLong(id.trim())); }
+        catch (NumberFormatException ex) { return -1; }
+    }
 
-        HttpResponse<String> res = HTTP.send(req, HttpResponse.BodyHandlers.ofString());
-        JsonNode root = MAPPER.readTree(res.body());
+    // --------------------------------------------------------------------
+    // Nächste Sensoren über den räumlichen Index
+    // --------------------------------------------------------------------
 
+    static List<SensorEntry> nearest(Catalogue catalogue, SpatialIndex index,
+                                     double lat0, double lon0, int k, double radiusKm) {
         List<SensorEntry> list = new ArrayList<>();
 
-        for (JsonNode node : root) {
-            JsonNode sensor = node.path("sensor");
-            if (sensor.isMissingNode()) continue;
-
-            String id = sensor.path("id").asText();
-            double lat = node.path("location").path("latitude").asDouble();
-            double lon = node.path("location").path("longitude").asDouble();
-
-            // Ausschließen von sinnlosen Koordinaten
-            if (lat == 0 || lon == 0) continue;
-
-            // grober Umkreisfilter (~25 km)
-            if (distance(lat0, lon0, lat, lon) < 25.0) {
-                SensorEntry s = new SensorEntry();
-                s.id = id;
-                s.lat = lat;
-                s.lon = lon;
-                list.add(s);
-            }
+        for (int i : index.nearest(lat0, lon0, k, radiusKm)) {
+            SensorEntry s = new SensorEntry();
+            s.id = Long.toString(catalogue.id(i));
+            s.lat = catalogue.lat(i);
+            s.lon = catalogue.lon(i);
+            list.add(s);
         }
 
         return list;
     }
-
-    // --------------------------------------------------------------------
-    // Haversine-Distanz (km)
-    // --------------------------------------------------------------------
-
-    private static double distance(double lat1, double lon1, double lat2, double lon2) {
-        double R = 6371.0;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat/2)*Math.sin(dLat/2)
-                + Math.cos(Math.toRadians(lat1))*Math.cos(Math.toRadians(lat2))
-                * Math.sin(dLon/2)*Math.sin(dLon/2);
-        return R * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-    }
 }
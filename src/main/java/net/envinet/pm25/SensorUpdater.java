@@ -1,27 +1,58 @@
 package net.envinet.pm25;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class SensorUpdater {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-    private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(15))
-            .version(HttpClient.Version.HTTP_2)
-            .build();
+    static final int MAX_RESULTS = 100;
+
+    /** Maximal gleichzeitig laufende Abrufe (1 = nacheinander wie bisher). */
+    static final int MAX_IN_FLIGHT = Math.max(1, Integer.getInteger("pm25.fetch.parallel", 1));
+
+    /** Erlaubte API-Aufrufe pro Sekunde (Token-Bucket statt zufälliger Pausen). */
+    static final double REQUESTS_PER_SECOND =
+            Double.parseDouble(System.getProperty("pm25.fetch.rate", "4"));
+
+    /** {@code sensor}: ein API-Aufruf je Sensor; {@code bulk}: ein Snapshot für alle ({@link SnapshotIngest}). */
+    private static final String MODE = System.getProperty("pm25.fetch.mode", "sensor");
 
-    private static final int MAX_RESULTS = 100;
+    /** Werden nach jedem Speichern mit den neuen Werten aufgerufen (z.B. Verdichtung). */
+    private static final List<AppendListener> LISTENERS = new CopyOnWriteArrayList<>(
+            List.of(Rollups.configured(), HotWindow.configured(), AlertEngine.configured()));
+
+    // --------------------------------------------------------------------
+    // Metriken (Export nach data/metrics.prom und /metrics)
+    // --------------------------------------------------------------------
+
+    private static final Path METRICS_FILE = Path.of("data", "metrics.prom");
+
+    private static final Metrics.Counter RETRIES = Metrics.counter(
+            "pm25_fetch_retries_total", "Wiederholte API-Abrufe nach Fehlern");
+    private static final Metrics.Counter ERRORS = Metrics.counter(
+            "pm25_fetch_errors_total", "Sensoren ohne Daten nach allen Versuchen");
+    private static final Metrics.Counter ROWS_ADDED = Metrics.counter(
+            "pm25_rows_added_total", "Neu gespeicherte Messwerte");
+    private static final Metrics.Histogram PARSE = Metrics.histogram(
+            "pm25_json_parse_seconds", "Einlesen einer API-Antwort");
+    private static final Metrics.Histogram APPEND = Metrics.histogram(
+            "pm25_store_append_seconds", "Anhängen neuer Werte an den Speicher");
+    private static final Metrics.Histogram CYCLE = Metrics.histogram(
+            "pm25_cycle_seconds", "Dauer eines kompletten Abrufzyklus");
+
+    private static Metrics.Histogram httpFetch(String id) {
+        return Metrics.histogram("pm25_http_fetch_seconds", "HTTP-Abruf je Sensor", "sensor", id);
+    }
+
+    public static void addListener(AppendListener l) {
+        LISTENERS.add(l);
+    }
 
     /** Liste der Sensor-IDs aus config/sensors.json */
     public static List<String> getSensorIds() {
@@ -35,102 +66,303 @@ public class SensorUpdater {
 
         Files.createDirectories(Path.of("data"));
 
-        for (String id : getSensorIds()) {
+        if (MODE.equals("bulk")) {
+            fetchAndStoreBulk(SnapshotIngest.SOURCE);
+            return;
+        }
 
-            try {
-                System.out.println("⇒ Sensor " + id + " abrufen …");
+        List<String> ids = getSensorIds();
+        RateLimiter limiter = new RateLimiter(REQUESTS_PER_SECOND, MAX_IN_FLIGHT);
+        ExecutorService pool = Executors.newFixedThreadPool(MAX_IN_FLIGHT, fetchThreads());
 
-                List<String[]> fresh = fetchWithRetry(id, 3);
+        long cycleStart = CYCLE.start();
+        Metrics.Snapshot parseBefore = PARSE.snapshot();
+        Metrics.Snapshot appendBefore = APPEND.snapshot();
+        long rowsBefore = ROWS_ADDED.get(), retriesBefore = RETRIES.get(), errorsBefore = ERRORS.get();
 
-                int added = appendToCsv(id, fresh);
+        List<Future<Long>> jobs = new ArrayList<>(ids.size());
 
-                System.out.println("   " + id + ": +" + added + " neue Zeilen");
+        for (String id : ids) {
+            jobs.add(pool.submit(() -> updateSensor(id, limiter)));
+        }
 
-            } catch (Exception e) {
-                System.out.println("   Fehler bei Sensor " + id + ": " + e.getMessage());
+        long[] latenciesMs = new long[jobs.size()];
+        int done = 0;
+        try {
+            for (Future<Long> job : jobs) {
+                latenciesMs[done++] = job.get();
             }
-
-            try { Thread.sleep(ThreadLocalRandom.current().nextInt(150, 400)); }
-            catch (InterruptedException ignored) {}
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            return;
+        } catch (ExecutionException e) {
+            throw new IOException("Abruf abgebrochen", e.getCause());
+        } finally {
+            pool.shutdown();
         }
+
+        CYCLE.stop(cycleStart);
+        long cycleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStart);
+        Arrays.sort(latenciesMs, 0, done);
+
+        System.out.printf(Locale.US,
+                "✔ Zyklus: %d Sensoren in %.1f s (parallel=%d, %.1f req/s) – Latenz p50=%d ms, p95=%d ms, max=%d ms%n",
+                done, cycleMs / 1000.0, MAX_IN_FLIGHT, REQUESTS_PER_SECOND,
+                percentile(latenciesMs, done, 0.50),
+                percentile(latenciesMs, done, 0.95),
+                done > 0 ? latenciesMs[done - 1] : 0);
+
+        Metrics.Snapshot parse = PARSE.snapshot().minus(parseBefore);
+        Metrics.Snapshot append = APPEND.snapshot().minus(appendBefore);
+        System.out.printf(Locale.US,
+                "  +%d Zeilen, %d Wiederholungen, %d Fehler – JSON p95=%.1f ms, Speichern p95=%.1f ms%n",
+                ROWS_ADDED.get() - rowsBefore, RETRIES.get() - retriesBefore, ERRORS.get() - errorsBefore,
+                parse.percentileMillis(0.95), append.percentileMillis(0.95));
+
+        Durable.commitQuietly();                 // alle Sensoren des Zyklus gemeinsam sichern
+        checkStale();
+        writeMetrics();
     }
 
-    private static List<String[]> fetchWithRetry(String id, int tries) {
-        for (int i = 1; i <= tries; i++) {
-            try { return fetchSensor(id); }
-            catch (Exception e) {
-                System.out.println("   Versuch " + i + " fehlgeschlagen: " + e.getMessage());
-            }
+    /** Alarme für Sensoren ohne neue Werte prüfen (einmal je Zyklus). */
+    static void checkStale() {
+        try {
+            AlertEngine.configured().checkStale(getSensorIds(), Instant.now().getEpochSecond());
+        } catch (IOException e) {
+            System.out.println("   Alarme nicht geprüft: " + e.getMessage());
         }
-        return List.of();
     }
 
-    private static List<String[]> fetchSensor(String id) throws IOException, InterruptedException {
-
-        String url = "https://data.sensor.community/airrohr/v1/sensor/" +
-                id + "/?type=pm&max_results=" + MAX_RESULTS;
+    static void writeMetrics() {
+        try {
+            HttpFetch.flush();
+        } catch (IOException e) {
+            System.out.println("   HTTP-Cache nicht geschrieben: " + e.getMessage());
+        }
+        try {
+            Metrics.writePrometheus(METRICS_FILE);
+        } catch (IOException e) {
+            System.out.println("   Metriken nicht geschrieben: " + e.getMessage());
+        }
+    }
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(20))
-                .header("User-Agent", "gptLuftAPI/1.0 (Java)")
-                .GET()
-                .build();
+    /**
+     * Ein Snapshot für alle Sensoren: einmal laden, gestreamt verteilen,
+     * je Sensor ein Batch an den Speicher.
+     */
+    public static void fetchAndStoreBulk(String source) throws IOException {
+        List<String> ids = getSensorIds();
+        long cycleStart = CYCLE.start();
+
+        Map<String, Measurements> bySensor;
+        long t0 = System.nanoTime();
+        try (HttpFetch.Response res = SnapshotIngest.open(source)) {
+            if (res.notModified()) {
+                System.out.println("✔ Snapshot unverändert (304) – nichts zu tun");
+                checkStale();
+                writeMetrics();
+                return;
+            }
+            bySensor = SnapshotIngest.demultiplex(res.body(), ids);
+            res.commit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException e) {
+            ERRORS.inc();
+            throw e;
+        }
+        long loadMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        int total = 0;
+        for (String id : ids) {
+            Measurements fresh = bySensor.get(id);
+            if (fresh == null) {
+                System.out.println("⇒ Sensor " + id + ": nicht im Snapshot");
+                continue;
+            }
+            try {
+                int added = store(id, fresh).size();
+                total += added;
+                System.out.println("⇒ Sensor " + id + ": +" + added + " neue Zeilen");
+            } catch (Exception e) {
+                ERRORS.inc();
+                System.out.println("⇒ Sensor " + id + ": Fehler: " + e.getMessage());
+            }
+        }
 
-        HttpResponse<String> res = HTTP.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        CYCLE.stop(cycleStart);
+        System.out.printf(Locale.US,
+                "✔ Snapshot: %d von %d Sensoren enthalten, +%d Zeilen, Laden+Verteilen %.1f s%n",
+                bySensor.size(), ids.size(), total, loadMs / 1000.0);
+        Durable.commitQuietly();
+        checkStale();
+        writeMetrics();
+    }
 
-        if (res.statusCode() != 200) {
-            throw new IOException("HTTP Status " + res.statusCode());
+    /**
+     * Ein Abruf für den {@link PollScheduler}: höchstens {@code maxResults}
+     * Messungen holen und speichern.
+     *
+     * @return die neu gespeicherten Werte; leer, wenn nichts Neues kam
+     * @throws IOException wenn Abruf (nach allen Versuchen) oder Speichern scheiterte
+     */
+    static Series poll(String id, int maxResults, RateLimiter limiter) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            Series added = store(id, fetchWithRetry(id, maxResults, 3, limiter));
+            log(id, "+" + added.size() + " neue Zeilen", maxResults, start);
+            return added;
+        } catch (IOException | RuntimeException e) {
+            ERRORS.inc();
+            log(id, "Fehler: " + e.getMessage(), maxResults, start);
+            throw e;
         }
+    }
+
+    private static void log(String id, String result, int maxResults, long start) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("⇒ Sensor " + id + ": " + result + " (max_results=" + maxResults + ", " + ms + " ms)");
+    }
 
-        SensorApiEntry[] arr = MAPPER.readValue(res.body(), SensorApiEntry[].class);
+    /** Abrufen & Speichern eines Sensors; liefert die Dauer in ms. */
+    private static long updateSensor(String id, RateLimiter limiter) {
+        long start = System.nanoTime();
+        String result;
 
-        List<String[]> list = new ArrayList<>();
+        try {
+            Measurements fresh = fetchWithRetry(id, MAX_RESULTS, 3, limiter);
 
-        for (SensorApiEntry e : arr) {
-            if (e.timestamp == null || e.sensordatavalues == null) continue;
+            int added = store(id, fresh).size();
 
-            String p2 = e.sensordatavalues.stream()
-                    .filter(v -> "P2".equals(v.value_type))
-                    .map(v -> v.value)
-                    .findFirst()
-                    .orElse(null);
+            result = "+" + added + " neue Zeilen";
 
-            if (p2 != null)
-                list.add(new String[]{e.timestamp, p2});
+        } catch (InterruptedException e) {
+            // Zyklus wird abgebrochen (shutdownNow): kein Fehler, Unterbrechung weitergeben
+            Thread.currentThread().interrupt();
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (Exception e) {
+            ERRORS.inc();
+            result = "Fehler: " + e.getMessage();
         }
 
-        return list;
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("⇒ Sensor " + id + ": " + result + " (" + ms + " ms)");
+        return ms;
     }
 
-    private static int appendToCsv(String id, List<String[]> rows) throws IOException {
-        Path csv = Path.of("data", "sensor_" + id + ".csv");
-
-        Set<String> known = new HashSet<>();
-        if (Files.exists(csv)) {
-            for (String line : Files.readAllLines(csv, StandardCharsets.UTF_8)) {
-                if (!line.isBlank()) known.add(line.split(",", -1)[0]);
+    /**
+     * Abruf mit bis zu {@code tries} Versuchen.
+     * @throws IOException der letzte Fehler, wenn kein Versuch gelang – nicht
+     *         dasselbe wie eine leere Antwort (nichts Neues)
+     */
+    private static Measurements fetchWithRetry(String id, int maxResults, int tries, RateLimiter limiter)
+            throws IOException, InterruptedException {
+        IOException last = null;
+        for (int i = 1; i <= tries; i++) {
+            limiter.acquire();
+            try { return fetchSensor(id, maxResults); }
+            catch (InterruptedException e) { throw e; }
+            catch (Exception e) {
+                System.out.println("   " + id + ": Versuch " + i + " fehlgeschlagen: " + e.getMessage());
+                last = e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+                if (e instanceof HttpFetch.StatusException se && !se.retryable()) break;
+                if (i < tries) {
+                    RETRIES.inc();
+                    HttpFetch.backoff(i - 1);
+                }
             }
         }
+        throw last;
+    }
 
-        List<String[]> toAppend = rows.stream()
-                .filter(r -> !known.contains(r[0]))
-                .sorted(Comparator.comparing(r -> r[0]))
-                .collect(Collectors.toList());
+    private static long percentile(long[] sorted, int n, double p) {
+        if (n == 0) return 0;
+        return sorted[Math.min(n - 1, (int) Math.ceil(p * n) - 1)];
+    }
+
+    static ThreadFactory fetchThreads() {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "sensor-fetch-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static Measurements fetchSensor(String id, int maxResults) throws IOException, InterruptedException {
+
+        // type=pm liefert nur Feinstaubwerte; für andere Messgrößen ohne Filter abrufen
+        String url = "https://data.sensor.community/airrohr/v1/sensor/" +
+                id + "/?" + (Measurements.particulateOnly() ? "type=pm&" : "") + "max_results=" + maxResults;
 
-        if (toAppend.isEmpty()) return 0;
+        long t0 = System.nanoTime();
+        try (HttpFetch.Response res = HttpFetch.get(url, Duration.ofSeconds(20), true)) {
+            httpFetch(id).stop(t0);
 
-        try (BufferedWriter w = Files.newBufferedWriter(csv,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND)) {
+            Measurements m = new Measurements();
+            // 304: seit dem letzten Abruf nichts Neues
+            if (res.notModified()) return m;
+
+            t0 = PARSE.start();
+            SnapshotParser.parseColumns(res.body(), m, sensorId -> m);
+            PARSE.stop(t0);
+            res.commit();
+
+            return m;
+        }
+    }
 
-            for (String[] r : toAppend) {
-                w.write(r[0] + "," + r[1]);
-                w.newLine();
+    /**
+     * Speichert alle Messgrößen eines Abrufs: P2 mit Prüfung und allen
+     * Listenern, die übrigen unter {@code <id>_<Messgröße>} mit Verdichtung.
+     *
+     * @return die neu gespeicherten P2-Werte
+     */
+    private static Series store(String id, Measurements m) throws IOException {
+        Validation.rejected(m.rejected());
+
+        // die übrigen zuerst: P2 benachrichtigt die Listener (u.a. den Cache des MapServer)
+        for (int c = 0; c < m.columns(); c++) {
+            String name = m.name(c);
+            if (name.equals(Measurements.PRIMARY)) continue;
+            String seriesId = Measurements.seriesId(id, name);
+
+            long t0 = APPEND.start();
+            Series extra = SeriesStore.configured().append(seriesId, Validation.configured().accept(m.series(c)));
+            APPEND.stop(t0);
+            ROWS_ADDED.add(extra.size());
+            if (!extra.isEmpty()) {
+                try { Rollups.configured().onAppend(seriesId, extra); }
+                catch (Exception e) {
+                    System.out.println("   " + seriesId + ": Verdichtung fehlgeschlagen: " + e.getMessage());
+                }
             }
         }
+        return store(id, m.series(m.column(Measurements.PRIMARY)));
+    }
 
-        return toAppend.size();
+    private static Series store(String id, Series rows) throws IOException {
+        long t0 = APPEND.start();
+        Series added = SeriesStore.configured().append(id, Validation.configured().accept(rows));
+        APPEND.stop(t0);
+        ROWS_ADDED.add(added.size());
+
+        // markieren, nicht verwerfen: Ausreißer bleiben gespeichert
+        try { Validation.configured().check(id, added); }
+        catch (IOException e) {
+            System.out.println("   " + id + ": Prüfung fehlgeschlagen: " + e.getMessage());
+        }
+
+        if (!added.isEmpty()) {
+            for (AppendListener l : LISTENERS) {
+                try { l.onAppend(id, added); }
+                catch (Exception e) {
+                    System.out.println("   " + id + ": Nachverarbeitung fehlgeschlagen: " + e.getMessage());
+                }
+            }
+        }
+        return added;
     }
 }
@@ -0,0 +1,119 @@
+package net.envinet.pm25;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Zeitreihe eines Sensors: Epoch-Sekunden und Messwerte in primitiven Arrays.
+ */
+public final class Series {
+
+    private long[] times;
+    private double[] values;
+    private int size;
+
+    public Series() {
+        this(64);
+    }
+
+    public Series(int capacity) {
+        times = new long[Math.max(1, capacity)];
+        values = new double[Math.max(1, capacity)];
+    }
+
+    /** Aus API-Zeilen {@code {timestamp, value}}; unlesbare Zeilen werden übersprungen. */
+    public static Series fromRows(List<String[]> rows) {
+        Series s = new Series(rows.size());
+        for (String[] r : rows) {
+            if (r.length < 2) continue;
+            long t = Timestamps.parse(r[0]);
+            double v = parseValue(r[1]);
+            if (t != Timestamps.INVALID && !Double.isNaN(v)) s.add(t, v);
+        }
+        return s;
+    }
+
+    public void add(long epochSecond, double value) {
+        if (size == times.length) {
+            int cap = size * 2;
+            times = Arrays.copyOf(times, cap);
+            values = Arrays.copyOf(values, cap);
+        }
+        times[size] = epochSecond;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public long time(int i) { return times[i]; }
+
+    public double value(int i) { return values[i]; }
+
+    public long lastTime() { return times[size - 1]; }
+
+    public double lastValue() { return values[size - 1]; }
+
+    /** true, wenn die Zeitstempel aufsteigend sind. */
+    public boolean isSorted() {
+        for (int i = 1; i < size; i++) {
+            if (times[i] < times[i - 1]) return false;
+        }
+        return true;
+    }
+
+    /** Sortiert stabil nach Zeit; bereits sortierte Reihen werden nicht angefasst. */
+    public void sortByTime() {
+        if (isSorted()) return;
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, times[i]);
+            max = Math.max(max, times[i]);
+        }
+
+        // Zeit-Offset in die oberen, Index in die unteren Bits packen und primitiv sortieren
+        int idxBits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+        if (max - min >= (1L << (63 - idxBits))) {
+            throw new IllegalStateException("Zeitspanne zu groß zum Sortieren");
+        }
+
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) packed[i] = ((times[i] - min) << idxBits) | i;
+        Arrays.sort(packed);
+
+        long[] t = new long[times.length];
+        double[] v = new double[values.length];
+        long mask = (1L << idxBits) - 1;
+        for (int j = 0; j < size; j++) {
+            int i = (int) (packed[j] & mask);
+            t[j] = times[i];
+            v[j] = values[i];
+        }
+        times = t;
+        values = v;
+    }
+
+    // --------------------------------------------------------------------
+    // Werte als Text (CSV, JavaScript)
+    // --------------------------------------------------------------------
+
+    /** Messwert mit zwei Nachkommastellen, wie von der API geliefert ({@code 7.97}). */
+    public static String formatValue(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) return "NaN";
+        long c = Math.round(v * 100);
+        StringBuilder sb = new StringBuilder(8);
+        if (c < 0) { sb.append('-'); c = -c; }
+        sb.append(c / 100).append('.');
+        long frac = c % 100;
+        if (frac < 10) sb.append('0');
+        return sb.append(frac).toString();
+    }
+
+    static double parseValue(String s) {
+        try { return Double.parseDouble(s.trim()); }
+        catch (Exception ex) { return Double.NaN; }
+    }
+}
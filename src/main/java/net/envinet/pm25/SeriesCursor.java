@@ -0,0 +1,31 @@
+package net.envinet.pm25;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Liest eine Messreihe aufsteigend in Blöcken, ohne sie ganz zu laden –
+ * für Auswertungen über Jahre und viele Sensoren ({@link Archive}).
+ */
+public interface SeriesCursor extends Closeable {
+
+    /** Nächster nicht leerer Block, aufsteigend nach Zeit; {@code null} am Ende. */
+    Series next() throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+
+    /** Ein Block aus einer schon geladenen Reihe. */
+    static SeriesCursor of(Series s) {
+        return new SeriesCursor() {
+            private Series rest = s.isEmpty() ? null : s;
+
+            @Override
+            public Series next() {
+                Series out = rest;
+                rest = null;
+                return out;
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package net.envinet.pm25;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Ablage der Messreihen je Sensor.
+ *
+ * Welches Backend benutzt wird, bestimmt {@code -Dpm25.store}:
+ * {@code csv} (Standard, {@code data/sensor_<id>.csv}) oder
+ * {@code binary} (komprimierte Segmente unter {@code data/bin}).
+ */
+public interface SeriesStore {
+
+    /**
+     * Speichert die übergebenen Messwerte, soweit ihr Zeitstempel noch nicht
+     * vorhanden ist.
+     *
+     * @return die tatsächlich gespeicherten Werte, aufsteigend sortiert
+     */
+    Series append(String sensorId, Series rows) throws IOException;
+
+    /** Alle Messwerte mit {@code from <= t <= to} (Epoch-Sekunden), aufsteigend sortiert. */
+    Series read(String sensorId, long from, long to) throws IOException;
+
+    /** Die komplette Reihe. */
+    default Series readAll(String sensorId) throws IOException {
+        return read(sensorId, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Jüngster gespeicherter Zeitstempel, {@link Timestamps#INVALID} ohne Werte.
+     * Der Standard liest die Reihe blockweise; beide Backends kennen ihn ohne Lesen.
+     */
+    default long lastTime(String sensorId) throws IOException {
+        long last = Timestamps.INVALID;
+        try (SeriesCursor c = cursor(sensorId, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            for (Series s = c.next(); s != null; s = c.next()) last = s.lastTime();
+        }
+        return last;
+    }
+
+    /**
+     * Wie {@link #read}, aber blockweise; der Standard lädt alles auf einmal.
+     * Beide Backends lesen nur so viel, wie der jeweilige Block braucht.
+     */
+    default SeriesCursor cursor(String sensorId, long from, long to) throws IOException {
+        return SeriesCursor.of(read(sensorId, from, to));
+    }
+
+    /**
+     * Beginnt eine neue Fassung der Reihe eines Sensors, z.B. nach dem
+     * Einsortieren historischer Werte. Bis {@link Rewrite#commit} bleibt die
+     * alte Fassung gültig; was inzwischen angehängt wird, geht nicht verloren.
+     */
+    Rewrite rewrite(String sensorId) throws IOException;
+
+    /** Neue Fassung einer Reihe, blockweise aufsteigend geschrieben. */
+    interface Rewrite extends Closeable {
+
+        /** Hängt {@code rows} an; Zeitstempel aufsteigend, auch über Aufrufe hinweg. */
+        void write(Series rows) throws IOException;
+
+        /** Ersetzt die alte Fassung durch die geschriebene. */
+        void commit() throws IOException;
+
+        /** Gibt den Sensor frei; ohne {@link #commit} wird die neue Fassung verworfen. */
+        @Override
+        void close() throws IOException;
+    }
+
+    /** Das per System-Property gewählte Backend. */
+    static SeriesStore configured() {
+        return Holder.INSTANCE;
+    }
+
+    final class Holder {
+        private static final SeriesStore INSTANCE = create(System.getProperty("pm25.store", "csv"));
+
+        private Holder() {}
+
+        static SeriesStore create(String kind) {
+            switch (kind) {
+                case "csv": return new CsvSeriesStore(Path.of("data"));
+                case "binary": return new BinarySeriesStore(Path.of("data", "bin"));
+                default: throw new IllegalArgumentException("Unbekannter Speicher pm25.store=" + kind);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Übernahme aller konfigurierten Sensoren aus einem einzigen Snapshot
+ * ({@code static/v1/data.json}: alle Messungen der letzten 5 Minuten)
+ * statt eines API-Aufrufs je Sensor.
+ *
+ * Der Snapshot wird gestreamt gelesen ({@link SnapshotParser#parseColumns});
+ * die gewählten Messgrößen werden über eine Hash-Tabelle der konfigurierten
+ * IDs auf die Sensoren verteilt, alle anderen Einträge sofort verworfen.
+ */
+public class SnapshotIngest {
+
+    /** Quelle des Snapshots: http(s)-URL oder lokale Datei (z.B. für Tests). */
+    static final String SOURCE = System.getProperty("pm25.fetch.snapshot",
+            "https://data.sensor.community/static/v1/data.json");
+
+    private SnapshotIngest() {}
+
+    /**
+     * Öffnet {@code source}: {@code http://}/{@code https://} wird bedingt
+     * abgerufen ({@link HttpFetch}), alles andere als Dateipfad gelesen.
+     *
+     * Nach erfolgreicher Verarbeitung {@link HttpFetch.Response#commit()} aufrufen.
+     */
+    public static HttpFetch.Response open(String source) throws IOException, InterruptedException {
+        if (!source.startsWith("http://") && !source.startsWith("https://")) {
+            return HttpFetch.Response.of(Files.newInputStream(Path.of(source)));
+        }
+        return HttpFetch.get(source, Duration.ofSeconds(120), true);
+    }
+
+    /**
+     * Verteilt die gewählten Messgrößen ({@link Measurements#SELECTED}) aus
+     * dem Snapshot auf die Sensoren in {@code ids}. Sensoren ohne Wert im
+     * Snapshot fehlen in der Ergebnis-Map; der Stream wird geschlossen.
+     */
+    public static Map<String, Measurements> demultiplex(InputStream in, Collection<String> ids) throws IOException {
+        Map<Long, Measurements> byId = new HashMap<>();
+        for (String id : ids) {
+            try { byId.put(Long.parseLong(id.trim()), new Measurements()); }
+            catch (NumberFormatException ex) { /* keine numerische ID: kann im Snapshot nicht vorkommen */ }
+        }
+
+        SnapshotParser.parseColumns(in, new Measurements(), byId::get);
+
+        Map<String, Measurements> out = new LinkedHashMap<>();
+        for (String id : ids) {
+            try {
+                Measurements m = byId.get(Long.parseLong(id.trim()));
+                if (m != null && (!m.isEmpty() || m.rejected() > 0)) out.put(id, m);
+            } catch (NumberFormatException ex) {
+                // siehe oben
+            }
+        }
+        return out;
+    }
+}
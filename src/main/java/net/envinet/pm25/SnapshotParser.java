@@ -0,0 +1,244 @@
+package net.envinet.pm25;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Streaming-Parser für die Snapshot-Dateien von sensor.community
+ * ({@code static/v1/data.json}, {@code static/v2/data.json}).
+ *
+ * Statt den ganzen Snapshot als JsonNode-Baum aufzubauen, wird das Array
+ * Token für Token gelesen; je Messung werden nur {@code sensor.id},
+ * {@code sensor.sensor_type.name}, {@code location.latitude},
+ * {@code location.longitude} und {@code timestamp} ausgewertet, alles
+ * andere wird übersprungen.
+ *
+ * {@link #parseColumns} liest zusätzlich die {@code sensordatavalues} in
+ * {@link Measurements}-Spalten, für ganze Snapshots wie für die Sensor-API.
+ */
+public class SnapshotParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Empfängt je Eintrag im Snapshot Sensor-ID, Koordinaten, Sensortyp
+     * ({@code null} wenn unbekannt) und Zeitstempel ({@link Timestamps#INVALID} wenn unlesbar).
+     */
+    public interface Handler {
+        void onSensor(long id, double lat, double lon, String type, long time);
+    }
+
+    /** Liest den kompletten Snapshot aus {@code in}; der Stream wird geschlossen. */
+    public static void parse(InputStream in, Handler handler) throws IOException {
+        try (JsonParser p = JSON.createParser(in)) {
+
+            if (p.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("Snapshot: Array erwartet, gefunden " + p.currentToken());
+
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                parseRecord(p, handler);
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Einzelner Eintrag: { "sensor": {...}, "location": {...}, ... }
+    // --------------------------------------------------------------------
+
+    private static void parseRecord(JsonParser p, Handler handler) throws IOException {
+        long id = -1;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        String type = null;
+        long time = Timestamps.INVALID;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken t = p.nextToken();
+
+            if ("sensor".equals(field) && t == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String f = p.currentName();
+                    JsonToken ft = p.nextToken();
+                    if ("id".equals(f)) id = readLong(p);
+                    else if ("sensor_type".equals(f) && ft == JsonToken.START_OBJECT) type = readName(p);
+                    else p.skipChildren();
+                }
+            } else if ("timestamp".equals(field) && t == JsonToken.VALUE_STRING) {
+                time = Timestamps.parse(p.getText());
+            } else if ("location".equals(field) && t == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String f = p.currentName();
+                    p.nextToken();
+                    if ("latitude".equals(f)) lat = readDouble(p);
+                    else if ("longitude".equals(f)) lon = readDouble(p);
+                    else p.skipChildren();
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (id >= 0) handler.onSensor(id, lat, lon, type, time);
+    }
+
+    /** {@code name} aus {@code {"id": 14, "name": "SDS011", ...}}. */
+    private static String readName(JsonParser p) throws IOException {
+        String name = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String f = p.currentName();
+            p.nextToken();
+            if ("name".equals(f)) name = p.getValueAsString();
+            else p.skipChildren();
+        }
+        return name;
+    }
+
+    /**
+     * Liest alle Messungen aus {@code in} in die Spalten von
+     * {@code target.apply(sensorId)} (Einträge, für die {@code null} kommt,
+     * werden übersprungen); der Stream wird geschlossen.
+     *
+     * Gilt für Snapshots ({@code static/v1/data.json}) wie für die Antwort
+     * der Sensor-API ({@code airrohr/v1/sensor/<id>/}), beide haben dasselbe
+     * Format. {@code value_type}, Werte und Zeitstempel werden direkt aus
+     * dem Zeichenpuffer des Parsers gelesen, ohne Strings anzulegen; alle
+     * Ziele müssen dieselben Spalten haben wie {@code columns}.
+     */
+    public static void parseColumns(InputStream in, Measurements columns,
+                                    LongFunction<Measurements> target) throws IOException {
+        try (JsonParser p = JSON.createParser(in)) {
+
+            if (p.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("Snapshot: Array erwartet, gefunden " + p.currentToken());
+
+            Scratch scratch = new Scratch(columns.columns());
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                parseMeasurement(p, columns, scratch, target);
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Eintrag mit Messwerten: { "timestamp": ..., "sensor": {...},
+    //                           "sensordatavalues": [{value_type, value}], ... }
+    // --------------------------------------------------------------------
+
+    private static void parseMeasurement(JsonParser p, Measurements columns, Scratch scratch,
+                                         LongFunction<Measurements> target) throws IOException {
+        long id = -1;
+        long time = Timestamps.INVALID;
+        Arrays.fill(scratch.row, Double.NaN);
+        boolean any = false;
+
+        // Reihenfolge der Felder ist nicht festgelegt: Werte puffern, bis ID und Zeit bekannt sind
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken t = p.nextToken();
+
+            if ("sensor".equals(field) && t == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String f = p.currentName();
+                    p.nextToken();
+                    if ("id".equals(f)) id = readLong(p);
+                    else p.skipChildren();
+                }
+            } else if ("timestamp".equals(field) && t == JsonToken.VALUE_STRING) {
+                int n = scratch.ascii(p);
+                time = n < 0 ? Timestamps.INVALID : Timestamps.parse(scratch.bytes, 0, n);
+            } else if ("sensordatavalues".equals(field) && t == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    int column = -1;
+                    double v = Double.NaN;
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String f = p.currentName();
+                        JsonToken ft = p.nextToken();
+                        if ("value_type".equals(f) && ft == JsonToken.VALUE_STRING)
+                            column = columns.column(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+                        else if ("value".equals(f)) v = scratch.number(p);
+                        else p.skipChildren();
+                    }
+                    if (column >= 0 && !Double.isNaN(v)) {
+                        scratch.row[column] = v;
+                        any = true;
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (id < 0 || !any) return;
+        Measurements m = target.apply(id);
+        if (m == null) return;
+        if (time == Timestamps.INVALID) m.reject();
+        else m.add(time, scratch.row);
+    }
+
+    /** Wiederverwendete Puffer: eine Zeile Werte, ASCII-Bytes des aktuellen Tokens. */
+    private static final class Scratch {
+        final double[] row;
+        byte[] bytes = new byte[32];
+
+        Scratch(int columns) {
+            row = new double[columns];
+        }
+
+        /** Kopiert den Text des aktuellen Tokens nach {@code bytes}; -1 bei Nicht-ASCII. */
+        int ascii(JsonParser p) throws IOException {
+            char[] c = p.getTextCharacters();
+            int off = p.getTextOffset(), len = p.getTextLength();
+            if (len > bytes.length) bytes = new byte[len];
+            for (int i = 0; i < len; i++) {
+                char ch = c[off + i];
+                if (ch > 127) return -1;
+                bytes[i] = (byte) ch;
+            }
+            return len;
+        }
+
+        /** Zahl oder Zahl als String wie {@code "12.34"}. */
+        double number(JsonParser p) throws IOException {
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.VALUE_NUMBER_FLOAT || t == JsonToken.VALUE_NUMBER_INT) return p.getDoubleValue();
+            if (t == JsonToken.VALUE_STRING) {
+                int n = ascii(p);
+                return n < 0 ? Double.NaN : CsvSeriesReader.parseDecimal(bytes, 0, n);
+            }
+            p.skipChildren();
+            return Double.NaN;
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Zahlen kommen je nach API-Version als Number oder als String
+    // --------------------------------------------------------------------
+
+    static long readLong(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) return p.getLongValue();
+        if (t == JsonToken.VALUE_STRING) {
+            try { return Long.parseLong(p.getText().trim()); }
+            catch (NumberFormatException ex) { return -1; }
+        }
+        p.skipChildren();
+        return -1;
+    }
+
+    static double readDouble(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NUMBER_FLOAT || t == JsonToken.VALUE_NUMBER_INT) return p.getDoubleValue();
+        if (t == JsonToken.VALUE_STRING) {
+            try { return Double.parseDouble(p.getText().trim()); }
+            catch (NumberFormatException ex) { return Double.NaN; }
+        }
+        p.skipChildren();
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,254 @@
+package net.envinet.pm25;
+
+import java.util.Arrays;
+
+/**
+ * Gitter-Index über Sensor-Koordinaten für Umkreis- und
+ * Nächste-Nachbarn-Abfragen.
+ *
+ * Die Punkte werden einmal nach Gitterzelle ({@code cellDeg} × {@code cellDeg}
+ * Grad) sortiert; eine Abfrage prüft nur die Zellen in der Bounding-Box um
+ * den Suchkreis und rechnet Haversine nur für deren Punkte. Für k nächste
+ * Nachbarn wird der Suchradius verdoppelt, bis k Treffer sicher innerhalb
+ * liegen; die besten k hält ein beschränkter Max-Heap, sortiert wird nie die
+ * ganze Kandidatenliste.
+ *
+ * Ergebnisse sind Indizes in die beim Aufbau übergebenen Arrays.
+ * Nach dem Aufbau ist der Index unveränderlich und threadsicher lesbar.
+ */
+public class SpatialIndex {
+
+    private final double cellDeg;
+    private final int rows;
+    private final int cols;
+
+    private final double[] lats;
+    private final double[] lons;
+
+    /** Punkt-Indizes, sortiert nach Zellschlüssel. */
+    private final int[] order;
+    /** Zellschlüssel je Eintrag in {@link #order} (aufsteigend). */
+    private final long[] keys;
+
+    /**
+     * Baut den Index über die ersten {@code n} Punkte. Ungültige Koordinaten
+     * (siehe {@link Geo#isValid}) werden nicht aufgenommen.
+     */
+    public SpatialIndex(double[] lats, double[] lons, int n, double cellDeg) {
+        // Zellschlüssel müssen in 31 Bit passen
+        if (cellDeg < 0.01 || cellDeg > 10) throw new IllegalArgumentException("cellDeg: " + cellDeg);
+        this.cellDeg = cellDeg;
+        this.rows = (int) Math.ceil(180.0 / cellDeg);
+        this.cols = (int) Math.ceil(360.0 / cellDeg);
+        this.lats = lats;
+        this.lons = lons;
+
+        long[] packed = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Geo.isValid(lats[i], lons[i])) continue;
+            // Zellschlüssel in den oberen, Punkt-Index in den unteren 32 Bit
+            packed[m++] = (key(row(lats[i]), col(lons[i])) << 32) | i;
+        }
+        Arrays.sort(packed, 0, m);
+
+        order = new int[m];
+        keys = new long[m];
+        for (int j = 0; j < m; j++) {
+            order[j] = (int) packed[j];
+            keys[j] = packed[j] >>> 32;
+        }
+    }
+
+    /** Index über alle Sensoren eines Katalogs (Zellen zu 0,1°, ca. 11 km). */
+    public static SpatialIndex of(Catalogue catalogue) {
+        int n = catalogue.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = catalogue.lat(i);
+            lons[i] = catalogue.lon(i);
+        }
+        return new SpatialIndex(lats, lons, n, 0.1);
+    }
+
+    /** Anzahl indizierter Punkte. */
+    public int size() { return order.length; }
+
+    // --------------------------------------------------------------------
+    // Abfragen
+    // --------------------------------------------------------------------
+
+    /** Alle Punkte im Umkreis von {@code radiusKm}, nach Entfernung sortiert. */
+    public int[] withinRadius(double lat, double lon, double radiusKm) {
+        TopK hits = new TopK(Integer.MAX_VALUE);
+        collect(lat, lon, radiusKm, hits);
+        return hits.sortedIndices();
+    }
+
+    /** Die {@code k} nächsten Punkte, nach Entfernung sortiert. */
+    public int[] nearest(double lat, double lon, int k) {
+        return nearest(lat, lon, k, Double.POSITIVE_INFINITY);
+    }
+
+    /** Die {@code k} nächsten Punkte innerhalb von {@code maxKm}, nach Entfernung sortiert. */
+    public int[] nearest(double lat, double lon, int k, double maxKm) {
+        if (k <= 0 || order.length == 0) return new int[0];
+
+        double maxRadius = Math.min(maxKm, Math.PI * Geo.EARTH_RADIUS_KM);
+        double radius = Math.min(cellDeg * Geo.KM_PER_DEG_LAT, maxRadius);
+
+        while (true) {
+            TopK best = new TopK(k);
+            collect(lat, lon, radius, best);
+
+            // Alles innerhalb von radius ist geprüft: reichen die Treffer, ist das Ergebnis exakt
+            if (best.size() == k || radius >= maxRadius) return best.sortedIndices();
+            radius = Math.min(radius * 2, maxRadius);
+        }
+    }
+
+    /** Entfernung vom Punkt {@code i} zu lat/lon in km. */
+    public double distanceKm(int i, double lat, double lon) {
+        return Geo.distanceKm(lat, lon, lats[i], lons[i]);
+    }
+
+    // --------------------------------------------------------------------
+    // Bounding-Box über Gitterzellen, dann exakte Distanz
+    // --------------------------------------------------------------------
+
+    private void collect(double lat, double lon, double radiusKm, TopK out) {
+        double dLat = radiusKm / Geo.KM_PER_DEG_LAT;
+        double lat0 = Math.max(-90, lat - dLat);
+        double lat1 = Math.min(90, lat + dLat);
+
+        // Längengrade werden zu den Polen hin schmaler – an der polnäheren Kante rechnen
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(lat0), Math.abs(lat1))));
+        double dLon = cos > 1e-9 ? radiusKm / (Geo.KM_PER_DEG_LAT * cos) : 360;
+
+        int r0 = row(lat0), r1 = row(lat1);
+
+        if (dLon >= 180) {
+            for (int r = r0; r <= r1; r++) scanCells(r, 0, cols - 1, lat, lon, radiusKm, out);
+            return;
+        }
+
+        int c0 = col(lon - dLon), c1 = col(lon + dLon);
+        for (int r = r0; r <= r1; r++) {
+            if (c0 <= c1) {
+                scanCells(r, c0, c1, lat, lon, radiusKm, out);
+            } else {
+                // Suchkreis überschreitet die Datumsgrenze
+                scanCells(r, c0, cols - 1, lat, lon, radiusKm, out);
+                scanCells(r, 0, c1, lat, lon, radiusKm, out);
+            }
+        }
+    }
+
+    private void scanCells(int row, int c0, int c1, double lat, double lon, double radiusKm, TopK out) {
+        long from = key(row, c0);
+        long to = key(row, c1);
+
+        int j = lowerBound(from);
+        for (; j < keys.length && keys[j] <= to; j++) {
+            int i = order[j];
+            double d = Geo.distanceKm(lat, lon, lats[i], lons[i]);
+            if (d <= radiusKm) out.offer(i, d);
+        }
+    }
+
+    private int lowerBound(long key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int row(double lat) {
+        int r = (int) Math.floor((lat + 90) / cellDeg);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    private int col(double lon) {
+        double l = lon;
+        while (l < -180) l += 360;
+        while (l >= 180) l -= 360;
+        return Math.min(cols - 1, (int) Math.floor((l + 180) / cellDeg));
+    }
+
+    private long key(int row, int col) {
+        return (long) row * cols + col;
+    }
+
+    // --------------------------------------------------------------------
+    // Beschränkter Max-Heap: hält die k kleinsten Distanzen
+    // --------------------------------------------------------------------
+
+    private static final class TopK {
+        private final int limit;
+        private double[] dist = new double[16];
+        private int[] idx = new int[16];
+        private int size;
+
+        TopK(int limit) { this.limit = limit; }
+
+        int size() { return size; }
+
+        void offer(int i, double d) {
+            if (size < limit) {
+                if (size == dist.length) {
+                    dist = Arrays.copyOf(dist, size * 2);
+                    idx = Arrays.copyOf(idx, size * 2);
+                }
+                dist[size] = d;
+                idx[size] = i;
+                siftUp(size++);
+            } else if (d < dist[0]) {
+                dist[0] = d;
+                idx[0] = i;
+                siftDown(0);
+            }
+        }
+
+        /** Leert den Heap; liefert die Indizes nach aufsteigender Distanz. */
+        int[] sortedIndices() {
+            int[] out = new int[size];
+            for (int n = size - 1; n >= 0; n--) {
+                out[n] = idx[0];
+                size--;
+                dist[0] = dist[size];
+                idx[0] = idx[size];
+                siftDown(0);
+            }
+            return out;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (dist[parent] >= dist[i]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, max = i;
+                if (l < size && dist[l] > dist[max]) max = l;
+                if (r < size && dist[r] > dist[max]) max = r;
+                if (max == i) return;
+                swap(i, max);
+                i = max;
+            }
+        }
+
+        private void swap(int a, int b) {
+            double d = dist[a]; dist[a] = dist[b]; dist[b] = d;
+            int t = idx[a]; idx[a] = idx[b]; idx[b] = t;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.envinet.pm25;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Einmalige Übernahme aller {@code data/sensor_<id>.csv} in die binäre
+ * Ablage unter {@code data/bin}. Die CSV-Dateien bleiben unverändert.
+ *
+ * Aufruf: {@code gradle migrateStorage}
+ */
+public class StorageMigration {
+
+    public static void main(String[] args) throws IOException {
+        Path dataDir = Path.of(args.length > 0 ? args[0] : "data");
+
+        CsvSeriesStore csv = new CsvSeriesStore(dataDir);
+        BinarySeriesStore bin = new BinarySeriesStore(dataDir.resolve("bin"));
+
+        long csvBytes = 0, binBytes = 0;
+
+        for (String id : csvSensorIds(dataDir)) {
+            Series s = csv.readAll(id);
+            Series added = bin.append(id, s);
+
+            long before = Files.size(csv.file(id));
+            long after = bin.encodedBytes(id);
+            csvBytes += before;
+            binBytes += after;
+
+            System.out.printf("⇒ Sensor %s: %d von %d Werten übernommen, %d → %d Byte%n",
+                    id, added.size(), s.size(), before, after);
+        }
+
+        System.out.printf("✔ Migration fertig: %d → %d Byte%n", csvBytes, binBytes);
+    }
+
+    private static List<String> csvSensorIds(Path dataDir) throws IOException {
+        List<String> ids = new ArrayList<>();
+        if (!Files.isDirectory(dataDir)) return ids;
+
+        try (Stream<Path> s = Files.list(dataDir)) {
+            s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith("sensor_") && n.endsWith(".csv"))
+                    .sorted()
+                    .forEach(n -> ids.add(n.substring("sensor_".length(), n.length() - ".csv".length())));
+        }
+        return ids;
+    }
+}
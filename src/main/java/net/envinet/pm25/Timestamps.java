@@ -0,0 +1,138 @@
+package net.envinet.pm25;
+
+/**
+ * Umrechnung der Zeitstempel von sensor.community ({@code yyyy-MM-dd HH:mm:ss},
+ * UTC) in Epoch-Sekunden und zurück – ohne Formatter und ohne Zwischenobjekte.
+ *
+ * Kaputte Zeitstempel wie {@code 2025-11-25 22:582:28} werden erkannt und
+ * als {@link #INVALID} gemeldet statt eine Exception zu werfen.
+ */
+public final class Timestamps {
+
+    /** Rückgabewert für nicht lesbare Zeitstempel. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int LENGTH = 19;
+
+    private Timestamps() {}
+
+    public static long parse(CharSequence s) {
+        if (s == null) return INVALID;
+        return parse(s, 0, s.length());
+    }
+
+    /** Liest den Zeitstempel aus {@code s[from, to)}; Leerzeichen am Rand werden ignoriert. */
+    public static long parse(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        if (to - from != LENGTH) return INVALID;
+
+        if (s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-'
+                || (s.charAt(from + 10) != ' ' && s.charAt(from + 10) != 'T')
+                || s.charAt(from + 13) != ':' || s.charAt(from + 16) != ':') return INVALID;
+
+        return toEpoch(digits(s, from, 4), digits(s, from + 5, 2), digits(s, from + 8, 2),
+                digits(s, from + 11, 2), digits(s, from + 14, 2), digits(s, from + 17, 2));
+    }
+
+    /** Wie {@link #parse(CharSequence, int, int)}, direkt auf ASCII-Bytes. */
+    public static long parse(byte[] b, int from, int to) {
+        while (from < to && b[from] <= ' ') from++;
+        while (to > from && b[to - 1] <= ' ') to--;
+        if (to - from != LENGTH) return INVALID;
+
+        if (b[from + 4] != '-' || b[from + 7] != '-'
+                || (b[from + 10] != ' ' && b[from + 10] != 'T')
+                || b[from + 13] != ':' || b[from + 16] != ':') return INVALID;
+
+        return toEpoch(digits(b, from, 4), digits(b, from + 5, 2), digits(b, from + 8, 2),
+                digits(b, from + 11, 2), digits(b, from + 14, 2), digits(b, from + 17, 2));
+    }
+
+    private static long toEpoch(int year, int month, int day, int hour, int minute, int second) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+            return INVALID;
+
+        return epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+    }
+
+    /** Epoch-Sekunden als {@code yyyy-MM-dd HH:mm:ss} (UTC). */
+    public static String format(long epochSecond) {
+        StringBuilder sb = new StringBuilder(LENGTH);
+        appendTo(sb, epochSecond);
+        return sb.toString();
+    }
+
+    public static void appendTo(StringBuilder sb, long epochSecond) {
+        long days = Math.floorDiv(epochSecond, 86400L);
+        int secs = (int) Math.floorMod(epochSecond, 86400L);
+
+        // civil_from_days (H. Hinnant)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long y = yoe + era * 400;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        if (m <= 2) y++;
+
+        pad(sb, (int) y, 4).append('-');
+        pad(sb, m, 2).append('-');
+        pad(sb, d, 2).append(' ');
+        pad(sb, secs / 3600, 2).append(':');
+        pad(sb, secs / 60 % 60, 2).append(':');
+        pad(sb, secs % 60, 2);
+    }
+
+    // --------------------------------------------------------------------
+    // Hilfsfunktionen
+    // --------------------------------------------------------------------
+
+    private static int digits(CharSequence s, int from, int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int digits(byte[] b, int from, int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) {
+            int c = b[i];
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    /** days_from_civil (H. Hinnant) */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int v, int width) {
+        String s = Integer.toString(v);
+        for (int i = s.length(); i < width; i++) sb.append('0');
+        return sb.append(s);
+    }
+}
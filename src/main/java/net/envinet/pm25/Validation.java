@@ -0,0 +1,272 @@
+package net.envinet.pm25;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prüfstufe zwischen Abruf und Speicher.
+ *
+ * <ol>
+ *   <li>{@link #accept}: Zeilen mit unmöglichen Zeitstempeln (Zukunft, vor
+ *       2015) werden verworfen – sie würden im Append-Only-Speicher alle
+ *       späteren Werte blockieren. Unlesbare Zeitstempel wie
+ *       {@code 22:582:28} verwirft schon {@link Timestamps}.</li>
+ *   <li>{@link #check}: gespeicherte Werte werden markiert, aber behalten:
+ *       {@code bereich} (außerhalb 0…999,9 µg/m³ des SDS011),
+ *       {@code spike} (Hampel-Filter: Abstand zum Median der letzten 15 Werte
+ *       über 3 · 1,4826 · MAD) und {@code nachbar} (weit über dem Median der
+ *       letzten Werte der 5 nächsten konfigurierten Sensoren).</li>
+ * </ol>
+ * Markierungen stehen in {@code data/flags/sensor_<id>.csv}
+ * ({@code zeitstempel,grund}); ein Wert kostet eine Sortierung von 15 Zahlen.
+ */
+public class Validation {
+
+    public static final String BEREICH = "bereich";
+    public static final String SPIKE = "spike";
+    public static final String NACHBAR = "nachbar";
+
+    private static final int WINDOW = 15;
+    private static final int MIN_WINDOW = 7;
+    private static final double HAMPEL_K = 3.0;
+    /** Untergrenze für die MAD, damit gleichmäßig niedrige Werte nicht bei jedem Rauschen anschlagen. */
+    private static final double MIN_MAD = 1.0;
+
+    private static final int NEIGHBOURS = 5;
+    private static final double NEIGHBOUR_KM = 10;
+    private static final long NEIGHBOUR_MAX_AGE_SEK = 1800;
+
+    private static final long EARLIEST = Timestamps.parse("2015-01-01 00:00:00");
+    private static final long MAX_FUTURE_SEK = 600;
+
+    private static final Metrics.Counter REJECTED = Metrics.counter(
+            "pm25_rows_rejected_total", "Verworfene Zeilen mit unmöglichem Zeitstempel");
+
+    private final Path dir;
+    private final SeriesStore store;
+    private final Map<String, Hampel> windows = new ConcurrentHashMap<>();
+    /** Letzter Wert je Sensor: {zeit, wert}. */
+    private final Map<String, double[]> latest = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> flagged = new ConcurrentHashMap<>();
+    private volatile Neighbourhood neighbourhood;
+
+    public Validation(Path dir, SeriesStore store) {
+        this.dir = dir;
+        this.store = store;
+    }
+
+    /** Markierungen unter {@code data/flags} über dem konfigurierten Speicher. */
+    public static Validation configured() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final Validation INSTANCE = new Validation(Path.of("data", "flags"), SeriesStore.configured());
+    }
+
+    public Path file(String sensorId) {
+        return dir.resolve("sensor_" + sensorId + ".csv");
+    }
+
+    // --------------------------------------------------------------------
+    // 1. Zeitstempel
+    // --------------------------------------------------------------------
+
+    /** {@code rows} ohne Zeilen mit Zeitstempel in der Zukunft oder vor 2015. */
+    public Series accept(Series rows) {
+        long latestAllowed = Instant.now().getEpochSecond() + MAX_FUTURE_SEK;
+        Series out = new Series(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            long t = rows.time(i);
+            if (t >= EARLIEST && t <= latestAllowed) out.add(t, rows.value(i));
+        }
+        if (out.size() < rows.size()) REJECTED.add(rows.size() - out.size());
+        return out;
+    }
+
+    /** Zählt Zeilen, die schon beim Lesen des Zeitstempels verworfen wurden. */
+    public static void rejected(int n) {
+        if (n > 0) REJECTED.add(n);
+    }
+
+    // --------------------------------------------------------------------
+    // 2. Werte markieren
+    // --------------------------------------------------------------------
+
+    /** Prüft die gerade gespeicherten (aufsteigenden) Werte und schreibt Markierungen. */
+    public void check(String sensorId, Series added) throws IOException {
+        if (added.isEmpty()) return;
+        Hampel h = window(sensorId, added.time(0));
+
+        StringBuilder sb = null;
+        synchronized (h) {
+            for (int i = 0; i < added.size(); i++) {
+                long t = added.time(i);
+                double v = added.value(i);
+
+                String reason = null;
+                if (v < 0 || v > 999.9) reason = BEREICH;
+                else if (h.isOutlier(v)) reason = SPIKE;
+                else if (neighbourOutlier(sensorId, t, v)) reason = NACHBAR;
+
+                h.add(v);
+                latest.put(sensorId, new double[]{t, v});
+
+                if (reason != null) {
+                    flags(sensorId).add(t);
+                    Metrics.counter("pm25_rows_flagged_total", "Markierte Messwerte", "reason", reason).inc();
+                    if (sb == null) sb = new StringBuilder();
+                    Timestamps.appendTo(sb, t);
+                    sb.append(',').append(reason).append('\n');
+                }
+            }
+        }
+
+        if (sb != null) {
+            Files.createDirectories(dir);
+            Durable.append(file(sensorId), sb);
+        }
+    }
+
+    /** true, wenn der Wert zur Zeit {@code t} markiert wurde. */
+    public boolean isFlagged(String sensorId, long t) throws IOException {
+        return flags(sensorId).contains(t);
+    }
+
+    private Set<Long> flags(String sensorId) throws IOException {
+        Set<Long> s = flagged.get(sensorId);
+        if (s != null) return s;
+
+        Set<Long> loaded = ConcurrentHashMap.newKeySet();
+        Path f = file(sensorId);
+        if (Files.exists(f)) {
+            try (BufferedReader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    long t = Timestamps.parse(line, 0, comma < 0 ? line.length() : comma);
+                    if (t != Timestamps.INVALID) loaded.add(t);
+                }
+            }
+        }
+        s = flagged.putIfAbsent(sensorId, loaded);
+        return s != null ? s : loaded;
+    }
+
+    /**
+     * Hampel-Fenster eines Sensors; beim ersten Mal mit den gespeicherten
+     * Werten vor {@code before} gefüllt (die eben gespeicherten sind noch zu prüfen).
+     */
+    private Hampel window(String sensorId, long before) throws IOException {
+        Hampel h = windows.get(sensorId);
+        if (h != null) return h;
+
+        Hampel fresh = new Hampel();
+        Series recent = store.read(sensorId, before - 6 * 3600, before - 1);
+        for (int i = Math.max(0, recent.size() - WINDOW); i < recent.size(); i++) fresh.add(recent.value(i));
+        h = windows.putIfAbsent(sensorId, fresh);
+        return h != null ? h : fresh;
+    }
+
+    // --------------------------------------------------------------------
+    // Nachbarn
+    // --------------------------------------------------------------------
+
+    private boolean neighbourOutlier(String sensorId, long t, double v) {
+        Neighbourhood hood = neighbourhood();
+        int[] near = hood.of(sensorId);
+        if (near.length < 2) return false;
+
+        double[] vals = new double[near.length];
+        int n = 0;
+        for (int k : near) {
+            double[] lv = latest.get(hood.ids[k]);
+            if (lv != null && Math.abs(lv[0] - t) <= NEIGHBOUR_MAX_AGE_SEK) vals[n++] = lv[1];
+        }
+        if (n < 2) return false;
+        Arrays.sort(vals, 0, n);
+        double median = n % 2 == 1 ? vals[n / 2] : (vals[n / 2 - 1] + vals[n / 2]) / 2;
+        // deutlich über allen Nachbarn, nicht nur etwas höher
+        return v - median > Math.max(25, 2 * median);
+    }
+
+    private Neighbourhood neighbourhood() {
+        Neighbourhood n = neighbourhood;
+        if (n == null) neighbourhood = n = new Neighbourhood(ConfigLoader.getSensors());
+        return n;
+    }
+
+    /** Die nächsten konfigurierten Sensoren je Sensor, über den {@link SpatialIndex}. */
+    private static final class Neighbourhood {
+        final String[] ids;
+        static final int[] NONE = new int[0];
+        final Map<String, int[]> near = new ConcurrentHashMap<>();
+        final SpatialIndex index;
+        final double[] lats, lons;
+
+        Neighbourhood(List<SensorConfig> sensors) {
+            int n = sensors.size();
+            ids = new String[n];
+            lats = new double[n];
+            lons = new double[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = sensors.get(i).id;
+                lats[i] = sensors.get(i).lat;
+                lons[i] = sensors.get(i).lon;
+            }
+            index = new SpatialIndex(lats, lons, n, 0.1);
+        }
+
+        /** Indizes der Nachbarn; leer für nicht konfigurierte Sensoren. */
+        int[] of(String sensorId) {
+            return near.computeIfAbsent(sensorId, id -> {
+                int self = Arrays.asList(ids).indexOf(id);
+                if (self < 0) return NONE;
+                // der Sensor selbst und Zwillinge am gleichen Standort zählen nicht
+                return Arrays.stream(index.nearest(lats[self], lons[self], NEIGHBOURS + 4, NEIGHBOUR_KM))
+                        .filter(k -> lats[k] != lats[self] || lons[k] != lons[self])
+                        .limit(NEIGHBOURS)
+                        .toArray();
+            });
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Hampel-Filter über die letzten WINDOW Werte
+    // --------------------------------------------------------------------
+
+    private static final class Hampel {
+        private final double[] ring = new double[WINDOW];
+        private final double[] sorted = new double[WINDOW];
+        private int next, size;
+
+        boolean isOutlier(double v) {
+            if (size < MIN_WINDOW) return false;
+            System.arraycopy(ring, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+            double median = median(sorted, size);
+            for (int i = 0; i < size; i++) sorted[i] = Math.abs(sorted[i] - median);
+            Arrays.sort(sorted, 0, size);
+            double mad = Math.max(MIN_MAD, median(sorted, size));
+            return Math.abs(v - median) > HAMPEL_K * 1.4826 * mad;
+        }
+
+        void add(double v) {
+            ring[next] = v;
+            next = (next + 1) % WINDOW;
+            if (size < WINDOW) size++;
+        }
+
+        private static double median(double[] a, int n) {
+            return n % 2 == 1 ? a[n / 2] : (a[n / 2 - 1] + a[n / 2]) / 2;
+        }
+    }
+}
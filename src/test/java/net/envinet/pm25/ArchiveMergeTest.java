@@ -0,0 +1,79 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** {@link Archive.Merge}: Archivwerte in die gespeicherte Reihe mischen. */
+public class ArchiveMergeTest {
+
+    private static final long T0 = Timestamps.parse("2024-05-01 00:00:00");
+
+    private static Series series(double... minuteValue) {
+        Series s = new Series();
+        for (int i = 0; i < minuteValue.length; i += 2) s.add(T0 + (long) minuteValue[i] * 60, minuteValue[i + 1]);
+        return s;
+    }
+
+    private static Series merge(SeriesStore store, Series archive) throws IOException {
+        Archive.Merge m = new Archive.Merge(store, "81607");
+        try {
+            m.add(archive);
+            m.finish();
+        } finally {
+            m.close();
+        }
+        return store.readAll("81607");
+    }
+
+    @Test
+    public void storedValueWinsOnEqualTimestamp() throws IOException {
+        SeriesStore store = new CsvSeriesStore(Files.createTempDirectory("pm25-merge"));
+        store.append("81607", series(0, 99, 10, 5));
+
+        Series out = merge(store, series(0, 1, 5, 2, 10, 3, 15, 4));
+
+        assertEquals(4, out.size());
+        assertEquals(99, out.value(0), 1e-9); // gespeichert, nicht 1
+        assertEquals(2, out.value(1), 1e-9);
+        assertEquals(5, out.value(2), 1e-9);  // gespeichert, nicht 3
+        assertEquals(4, out.value(3), 1e-9);
+        assertTrue(out.isSorted());
+    }
+
+    @Test
+    public void secondRunAddsNothing() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-merge");
+        SeriesStore store = new CsvSeriesStore(dir);
+        store.append("81607", series(10, 5));
+        Series archive = series(0, 1, 5, 2, 10, 3);
+
+        merge(store, archive);
+        long size = Files.size(dir.resolve("sensor_81607.csv"));
+
+        Archive.Merge m = new Archive.Merge(store, "81607");
+        try {
+            m.add(archive);
+            m.finish();
+            assertEquals(0, m.added);
+        } finally {
+            m.close();
+        }
+        assertEquals(size, Files.size(dir.resolve("sensor_81607.csv")));
+    }
+
+    @Test
+    public void binaryStoreKeepsStoredValue() throws IOException {
+        SeriesStore store = new BinarySeriesStore(Files.createTempDirectory("pm25-merge"));
+        store.append("81607", series(5, 42));
+
+        Series out = merge(store, series(0, 1, 5, 2, 10, 3));
+
+        assertEquals(3, out.size());
+        assertEquals(42, out.value(1), 1e-6);
+    }
+}
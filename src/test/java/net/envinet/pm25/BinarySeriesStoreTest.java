@@ -0,0 +1,217 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Gorilla-Kodierung, Segmentwechsel, Neufassung und Reparatur der binären Ablage. */
+public class BinarySeriesStoreTest {
+
+    private static final long T0 = Timestamps.parse("2024-05-01 00:00:00");
+
+    /**
+     * Unregelmäßiger Takt um 145 s mit Aussetzern von Tagen (großes
+     * Delta-of-Delta, auch negativ), Werte teils gleich, teils mit wenigen
+     * geänderten Bits (altes Fenster), teils ganz anders (neues Fenster).
+     */
+    private static Series sample(int n, long seed) {
+        Random rnd = new Random(seed);
+        Series s = new Series(n);
+        long t = T0;
+        double v = 8.35;
+        for (int i = 0; i < n; i++) {
+            int kind = rnd.nextInt(20);
+            if (kind == 0) t += 86400L * (1 + rnd.nextInt(30)); // Aussetzer
+            else if (kind == 1) t += 1;                          // fast gleichzeitig
+            else t += 140 + rnd.nextInt(11);
+
+            int w = rnd.nextInt(10);
+            if (w < 3) { /* gleicher Wert: XOR 0 */ }
+            else if (w < 7) v = Float.intBitsToFloat(Float.floatToIntBits((float) v) ^ (1 << rnd.nextInt(4)));
+            else if (w < 9) v = Math.round(rnd.nextDouble() * 50000) / 100.0;
+            else v = -rnd.nextDouble() * 1e6;
+            s.add(t, v);
+        }
+        return s;
+    }
+
+    private static void assertSameSeries(Series expected, Series actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.time(i), actual.time(i), "Zeit bei " + i);
+            // gespeichert als float: bitgenau gleich nach der Umwandlung
+            assertEquals(Float.floatToIntBits((float) expected.value(i)),
+                    Float.floatToIntBits((float) actual.value(i)), "Wert bei " + i);
+        }
+    }
+
+    private static Series slice(Series s, long from, long to) {
+        Series out = new Series();
+        for (int i = 0; i < s.size(); i++) {
+            if (s.time(i) >= from && s.time(i) <= to) out.add(s.time(i), s.value(i));
+        }
+        return out;
+    }
+
+    private static List<Path> files(Path dir, String suffix) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    @Test
+    public void roundTripAcrossSegments() throws IOException {
+        BinarySeriesStore store = new BinarySeriesStore(Files.createTempDirectory("pm25-bin"));
+        Series in = sample(200_000, 1);
+
+        // in mehreren Stücken, wie beim laufenden Abruf
+        for (int from = 0; from < in.size(); from += 30_000) {
+            store.append("81607", slice(in, in.time(from), in.time(Math.min(in.size(), from + 30_000) - 1)));
+        }
+
+        assertTrue(files(store.sensorDir("81607"), ".seg").size() > 1, "kein Segmentwechsel");
+        assertSameSeries(in, store.readAll("81607"));
+        assertEquals(in.lastTime(), store.lastTime("81607"));
+    }
+
+    @Test
+    public void cursorAndReadReturnTheRange() throws IOException {
+        BinarySeriesStore store = new BinarySeriesStore(Files.createTempDirectory("pm25-bin"));
+        Series in = sample(120_000, 2);
+        store.append("81607", in);
+
+        long from = in.time(40_000), to = in.time(95_000);
+        Series expected = slice(in, from, to);
+        assertSameSeries(expected, store.read("81607", from, to));
+
+        Series joined = new Series();
+        try (SeriesCursor c = store.cursor("81607", from, to)) {
+            for (Series b = c.next(); b != null; b = c.next()) {
+                assertTrue(b.size() <= BinarySeriesStore.CURSOR_BLOCK);
+                for (int i = 0; i < b.size(); i++) joined.add(b.time(i), b.value(i));
+            }
+        }
+        assertSameSeries(expected, joined);
+    }
+
+    @Test
+    public void olderAndDuplicateRowsAreDropped() throws IOException {
+        BinarySeriesStore store = new BinarySeriesStore(Files.createTempDirectory("pm25-bin"));
+        Series a = new Series();
+        a.add(T0 + 300, 3);
+        a.add(T0, 1);
+        a.add(T0 + 150, 2);
+        assertEquals(3, store.append("81607", a).size());
+
+        Series b = new Series();
+        b.add(T0 + 150, 9);
+        b.add(T0 + 450, 4);
+        Series added = store.append("81607", b);
+
+        assertEquals(1, added.size());
+        assertEquals(T0 + 450, added.time(0));
+        assertEquals(4, store.readAll("81607").size());
+    }
+
+    @Test
+    public void rewriteKeepsRowsAppendedMeanwhile() throws IOException {
+        BinarySeriesStore store = new BinarySeriesStore(Files.createTempDirectory("pm25-bin"));
+        Series in = sample(1000, 3);
+        store.append("81607", slice(in, in.time(500), in.lastTime()));
+
+        try (SeriesStore.Rewrite rw = store.rewrite("81607")) {
+            rw.write(slice(in, in.time(0), in.time(599)));
+            // läuft weiter, während die neue Fassung entsteht
+            Series late = new Series();
+            late.add(in.lastTime() + 150, 42);
+            store.append("81607", late);
+            rw.write(slice(in, in.time(600), in.lastTime()));
+            rw.commit();
+        }
+
+        Series out = store.readAll("81607");
+        assertEquals(1001, out.size());
+        assertSameSeries(in, slice(out, Long.MIN_VALUE, in.lastTime()));
+        assertEquals(42, out.lastValue(), 1e-6);
+
+        Path sd = store.sensorDir("81607");
+        assertFalse(Files.exists(sd.resolveSibling(sd.getFileName() + ".old")));
+    }
+
+    @Test
+    public void interruptedSwapIsRolledBack() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-bin");
+        BinarySeriesStore store = new BinarySeriesStore(dir);
+        Series in = sample(500, 4);
+        store.append("81607", in);
+
+        // Abbruch zwischen "sd → .old" und "neue Fassung → sd"
+        Path sd = store.sensorDir("81607");
+        Path old = sd.resolveSibling(sd.getFileName() + ".old");
+        Files.move(sd, old);
+
+        assertEquals(1, BinarySeriesStore.recover(dir));
+        assertFalse(Files.exists(old));
+        assertSameSeries(in, store.readAll("81607"));
+    }
+
+    @Test
+    public void leftoverOldIsRemovedWhenSwapCompleted() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-bin");
+        BinarySeriesStore store = new BinarySeriesStore(dir);
+        Series in = sample(500, 5);
+        store.append("81607", in);
+
+        // Abbruch nach dem Tausch, vor dem Löschen von .old
+        Path sd = store.sensorDir("81607");
+        Path old = Files.createDirectories(sd.resolveSibling(sd.getFileName() + ".old"));
+        Files.copy(files(sd, ".seg").get(0), old.resolve("000000.seg"));
+
+        assertEquals(0, BinarySeriesStore.recover(dir));
+        assertFalse(Files.exists(old));
+        assertSameSeries(in, store.readAll("81607"));
+    }
+
+    @Test
+    public void brokenSegmentsAreSetAsideAndNotReused() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-bin");
+        BinarySeriesStore store = new BinarySeriesStore(dir);
+        Series in = sample(150_000, 6);
+        store.append("81607", in);
+
+        Path sd = store.sensorDir("81607");
+        List<Path> segs = files(sd, ".seg");
+        assertTrue(segs.size() >= 3);
+
+        // erstes: Kopf zerstört; letztes: abgeschnitten
+        try (FileChannel ch = FileChannel.open(segs.get(0), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(8), 0);
+        }
+        try (FileChannel ch = FileChannel.open(segs.get(segs.size() - 1), StandardOpenOption.WRITE)) {
+            ch.truncate(1000);
+        }
+
+        assertEquals(2, BinarySeriesStore.recover(dir));
+        assertEquals(2, files(sd, ".bad").size());
+        assertEquals(0, BinarySeriesStore.recover(dir));
+
+        // weiter anhängen: neues Segment hinter dem beiseitegelegten, nicht an seiner Stelle
+        Series next = new Series();
+        next.add(in.lastTime() + 150, 1);
+        assertEquals(1, store.append("81607", next).size());
+        List<Path> now = files(sd, ".seg");
+        assertEquals(segs.size() - 1, now.size());
+        assertTrue(now.get(now.size() - 1).getFileName().toString()
+                .compareTo(segs.get(segs.size() - 1).getFileName().toString()) > 0);
+    }
+}
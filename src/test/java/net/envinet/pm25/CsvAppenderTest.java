@@ -0,0 +1,167 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Deduplizieren beim Anhängen über High-Water-Mark, Dateiende und Einsortieren. */
+public class CsvAppenderTest {
+
+    private static final long T0 = Timestamps.parse("2024-05-01 00:00:00");
+
+    /** Zeile {@code i} Minuten nach {@link #T0}. */
+    private static String[] row(int i, double v) {
+        return new String[]{Timestamps.format(T0 + i * 60L), Series.formatValue(v)};
+    }
+
+    private static List<String[]> rows(int from, int to) {
+        List<String[]> out = new ArrayList<>();
+        for (int i = from; i < to; i++) out.add(row(i, i % 50));
+        return out;
+    }
+
+    private static List<String> lines(Path csv) throws IOException {
+        return Files.readAllLines(csv, StandardCharsets.UTF_8);
+    }
+
+    private static void assertSorted(List<String> lines) {
+        for (int i = 1; i < lines.size(); i++) {
+            assertTrue(lines.get(i - 1).compareTo(lines.get(i)) <= 0, "unsortiert bei Zeile " + i);
+        }
+    }
+
+    private static Path csv() throws IOException {
+        return Files.createTempDirectory("pm25-append").resolve("sensor_81607.csv");
+    }
+
+    @Test
+    public void newerRowsAreAppendedBehindHighWaterMark() throws IOException {
+        Path csv = csv();
+        assertEquals(10, CsvAppender.append(csv, rows(0, 10)).size());
+        assertEquals(5, CsvAppender.append(csv, rows(10, 15)).size());
+
+        // gleicher Zeitstempel wie die Marke: schon da
+        assertEquals(0, CsvAppender.append(csv, List.<String[]>of(row(14, 99))).size());
+        assertEquals(15, lines(csv).size());
+    }
+
+    @Test
+    public void batchIsDeduplicatedAndSorted() throws IOException {
+        Path csv = csv();
+        List<String[]> batch = new ArrayList<>(List.<String[]>of(row(2, 2), row(0, 0), row(2, 7), row(1, 1)));
+
+        List<String[]> added = CsvAppender.append(csv, batch);
+
+        assertEquals(3, added.size());
+        assertEquals(List.of(row(0, 0)[0] + ",0.00", row(1, 1)[0] + ",1.00", row(2, 2)[0] + ",2.00"),
+                lines(csv));
+    }
+
+    @Test
+    public void olderRowsAreCheckedAgainstTailOfSortedFile() throws IOException {
+        Path csv = csv();
+        // mehr als ein Leseblock (64 KB) vom Dateiende
+        CsvAppender.append(csv, rows(0, 6000));
+
+        // die API liefert die letzten Werte erneut, dazu einen ganz alten
+        List<String[]> again = rows(5900, 6010);
+        again.add(row(3, 3));
+        List<String[]> added = CsvAppender.append(csv, again);
+
+        assertEquals(10, added.size());
+        assertEquals(6010, lines(csv).size());
+    }
+
+    @Test
+    public void missingOlderRowIsInsertedOnceAndLaterDuplicatesFound() throws IOException {
+        Path csv = csv();
+        List<String[]> gappy = rows(0, 100);
+        gappy.remove(40);
+        CsvAppender.append(csv, gappy);
+
+        // nachgereicht: wird einsortiert statt angehängt
+        assertEquals(1, CsvAppender.append(csv, List.<String[]>of(row(40, 40))).size());
+        assertEquals(row(40, 40)[0] + ",40.00", lines(csv).get(40));
+        // danach: weder der nachgereichte noch alte Werte doppelt
+        List<String[]> mixed = List.of(row(40, 40), row(0, 0), row(99, 0), row(100, 0));
+        assertEquals(1, CsvAppender.append(csv, mixed).size());
+
+        List<String> lines = lines(csv);
+        assertEquals(101, lines.size());
+        assertEquals(101, lines.stream().map(l -> l.split(",")[0]).distinct().count());
+        assertSorted(lines);
+    }
+
+    @Test
+    public void unsortedFileIsSortedOnNextAppend() throws IOException {
+        Path csv = csv();
+        Files.writeString(csv, String.join(",", row(5, 5)) + "\n" + String.join(",", row(1, 1)) + "\n"
+                + String.join(",", row(3, 3)) + "\n", StandardCharsets.UTF_8);
+
+        assertEquals(2, CsvAppender.append(csv, List.of(row(1, 9), row(2, 2), row(6, 6))).size());
+
+        List<String> lines = lines(csv);
+        assertEquals(5, lines.size());
+        assertSorted(lines);
+        assertEquals(row(1, 1)[0] + ",1.00", lines.get(0));
+
+        // danach wieder über das Dateiende
+        assertEquals(1, CsvAppender.append(csv, List.of(row(6, 6), row(7, 7))).size());
+        assertSorted(lines(csv));
+    }
+
+    @Test
+    public void externallyChangedFileIsRescanned() throws IOException {
+        Path csv = csv();
+        CsvAppender.append(csv, rows(0, 10));
+        // Zeile an der Marke vorbei angehängt: Größe passt nicht mehr
+        Files.writeString(csv, String.join(",", row(20, 20)) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        assertEquals(1, CsvAppender.append(csv, List.<String[]>of(row(20, 20), row(21, 21))).size());
+        assertEquals(12, lines(csv).size());
+    }
+
+    @Test
+    public void forgottenStateIsRebuilt() throws IOException {
+        Path csv = csv();
+        CsvAppender.append(csv, rows(0, 10));
+        CsvAppender.forget(csv);
+
+        assertEquals(0, CsvAppender.append(csv, rows(0, 10)).size());
+        assertEquals(10, lines(csv).size());
+    }
+
+    @Test
+    public void maxTimestampReadsWithoutLockOrStateWrite() throws IOException {
+        Path csv = csv();
+        CsvAppender.append(csv, rows(0, 3000));
+        assertEquals(row(2999, 0)[0], CsvAppender.maxTimestamp(csv));
+
+        // Zustand veraltet, dahinter ein noch nicht fertig geschriebenes Anhängen
+        Path hwm = csv.resolveSibling(csv.getFileName() + ".hwm");
+        String state = Files.readString(hwm, StandardCharsets.UTF_8);
+        Files.writeString(csv, String.join(",", row(3000, 0)) + "\n" + row(3001, 0)[0],
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(row(3000, 0)[0], CsvAppender.maxTimestamp(csv));
+        assertEquals(state, Files.readString(hwm, StandardCharsets.UTF_8));
+
+        // ohne Zustandsdatei: ebenso aus dem Dateiende, ohne eine anzulegen
+        CsvAppender.forget(csv);
+        assertEquals(row(3000, 0)[0], CsvAppender.maxTimestamp(csv));
+        assertFalse(Files.exists(hwm));
+
+        // fehlende Datei wird nicht angelegt
+        Path none = csv();
+        assertEquals("", CsvAppender.maxTimestamp(none));
+        assertFalse(Files.exists(none));
+    }
+}
@@ -0,0 +1,128 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Kaputte und unfertige Zeilen beim Lesen einer Messreihe. */
+public class CsvSeriesReaderTest {
+
+    private static Path csv(String content) throws IOException {
+        Path f = Files.createTempDirectory("pm25-reader").resolve("sensor_81607.csv");
+        Files.writeString(f, content, StandardCharsets.UTF_8);
+        return f;
+    }
+
+    @Test
+    public void skipsMalformedLines() throws IOException {
+        Path f = csv("""
+                2024-05-01 12:00:00,8.35
+                2025-11-25 22:582:28,3.47
+                ohne Komma
+                2024-05-01 12:02:30,abc
+                2024-13-01 12:00:00,1.00
+
+                2024-05-01 12:05:00,-1.5,extra\r
+                """);
+
+        CsvSeriesReader r = new CsvSeriesReader();
+        Series s = r.read(f);
+
+        assertEquals(2, s.size());
+        assertEquals(Timestamps.parse("2024-05-01 12:00:00"), s.time(0));
+        assertEquals(8.35, s.value(0), 1e-9);
+        assertEquals(-1.5, s.value(1), 1e-9);
+        assertEquals(2, r.rows());
+        assertEquals(4, r.skippedRows());
+    }
+
+    @Test
+    public void ignoresUnterminatedLastLine() throws IOException {
+        Path f = csv("2024-05-01 12:00:00,8.35\n2024-05-01 12:02:30,7.95\n2024-05-01 12:05:00,1");
+
+        Series s = new CsvSeriesReader().read(f);
+        assertEquals(2, s.size());
+        assertEquals(7.95, s.lastValue(), 1e-9);
+
+        try (SeriesCursor c = new CsvSeriesReader().cursor(f, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            Series block = c.next();
+            assertEquals(2, block.size());
+            assertNull(c.next());
+        }
+    }
+
+    @Test
+    public void readSortsAndFiltersRange() throws IOException {
+        Path f = csv("2024-05-01 12:05:00,3\n2024-05-01 12:00:00,1\n2024-05-01 12:02:30,2\n");
+
+        assertFalse(CsvSeriesReader.isSorted(f));
+        Series s = new CsvSeriesReader().read(f,
+                Timestamps.parse("2024-05-01 12:01:00"), Timestamps.parse("2024-05-01 12:10:00"));
+
+        assertEquals(2, s.size());
+        assertEquals(2.0, s.value(0), 1e-9);
+        assertEquals(3.0, s.value(1), 1e-9);
+    }
+
+    @Test
+    public void emptyFileIsEmptySeries() throws IOException {
+        Path f = csv("");
+        assertTrue(new CsvSeriesReader().read(f).isEmpty());
+        assertTrue(CsvSeriesReader.isSorted(f));
+    }
+
+    @Test
+    public void cursorSeeksToFromInSortedFile() throws IOException {
+        long t0 = Timestamps.parse("2024-05-01 00:00:00");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            sb.append(Timestamps.format(t0 + i * 150L)).append(',').append(i % 100).append(".00\n");
+            // kaputte Zeilen dazwischen stören die Suche nicht
+            if (i % 997 == 0) sb.append("2025-11-25 22:582:28,3.47\n");
+        }
+        Path f = csv(sb.toString());
+
+        long from = t0 + 31_234 * 150L, to = t0 + 31_300 * 150L;
+        CsvSeriesReader r = new CsvSeriesReader();
+        Series s = r.readSorted(f, from, to);
+
+        assertEquals(67, s.size());
+        assertEquals(from, s.time(0));
+        assertEquals(to, s.lastTime());
+        assertEquals(34.0, s.value(0), 1e-9);
+        // nur ein Bruchteil der Datei geparst
+        assertTrue(r.rows() < 10_000, "gelesen: " + r.rows());
+
+        // Ränder: vor dem Anfang, nach dem Ende
+        assertEquals(50_000, new CsvSeriesReader().readSorted(f, t0 - 1, Long.MAX_VALUE).size());
+        assertTrue(new CsvSeriesReader().readSorted(f, t0 + 50_000 * 150L, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void storeReadsRangeOfOrderedFile() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-reader");
+        CsvSeriesStore store = new CsvSeriesStore(dir);
+        long t0 = Timestamps.parse("2024-05-01 00:00:00");
+        Series rows = new Series();
+        for (int i = 0; i < 20_000; i++) rows.add(t0 + i * 150L, i % 7);
+        store.append("81607", rows);
+        assertTrue(CsvAppender.ordered(store.file("81607")));
+
+        Series s = store.read("81607", t0 + 10_000 * 150L, t0 + 10_009 * 150L);
+        assertEquals(10, s.size());
+
+        // nach dem Neuschreiben bleibt bekannt, dass die Datei aufsteigend ist
+        try (SeriesStore.Rewrite rw = store.rewrite("81607")) {
+            rw.write(rows);
+            rw.commit();
+        }
+        assertTrue(CsvAppender.ordered(store.file("81607")));
+        assertEquals(rows.lastTime(), store.lastTime("81607"));
+        assertEquals(10, store.read("81607", t0 + 10_000 * 150L, t0 + 10_009 * 150L).size());
+    }
+}
@@ -0,0 +1,74 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Reparatur angeschnittener Dateien nach einem Schreibabbruch. */
+public class DurableTest {
+
+    private static final String ROWS = "2024-05-01 12:00:00,8.35\n2024-05-01 12:02:30,7.95\n";
+
+    @Test
+    public void recoverTruncatesTornSensorLine() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-durable");
+        Path csv = dir.resolve("sensor_81607.csv");
+        // "…,1" ist lesbar, kann aber der Anfang von "…,15.5" sein
+        Files.writeString(csv, ROWS + "2024-05-01 12:05:00,1", StandardCharsets.UTF_8);
+
+        assertEquals(1, Durable.recover(dir));
+        assertEquals(ROWS, Files.readString(csv, StandardCharsets.UTF_8));
+
+        // zweiter Lauf: nichts mehr zu tun
+        assertEquals(0, Durable.recover(dir));
+    }
+
+    @Test
+    public void recoverTruncatesToEmptyWithoutNewline() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-durable");
+        Path jsonl = dir.resolve("alerts.jsonl");
+        Files.writeString(jsonl, "{\"time\":\"2024-05-01 12:00:00\",\"sen", StandardCharsets.UTF_8);
+
+        assertEquals(1, Durable.recover(dir));
+        assertEquals(0, Files.size(jsonl));
+    }
+
+    @Test
+    public void recoverDeletesTornRollup() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-durable");
+        Path rollup = Files.createDirectories(dir.resolve("rollup")).resolve("sensor_81607_1h.csv");
+        Files.writeString(rollup, "2024-05-01 12:00:00,7.95,8.35,16.30,2\n2024-05-01 13:00:00,7.",
+                StandardCharsets.UTF_8);
+
+        assertEquals(1, Durable.recover(dir));
+        assertFalse(Files.exists(rollup));
+    }
+
+    @Test
+    public void appendCutsTornTailBeforeWriting() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-durable");
+        Path csv = dir.resolve("sensor_81607.csv");
+        Files.writeString(csv, ROWS + "2024-05-01 12:0", StandardCharsets.UTF_8);
+
+        Durable.append(csv, "2024-05-01 12:05:00,15.5\n");
+
+        assertEquals(ROWS + "2024-05-01 12:05:00,15.5\n", Files.readString(csv, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void intactFilesAreLeftAlone() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-durable");
+        Path csv = dir.resolve("sensor_81607.csv");
+        Files.writeString(csv, ROWS, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("sensor_489.csv"), "", StandardCharsets.UTF_8, StandardOpenOption.CREATE);
+
+        assertEquals(0, Durable.recover(dir));
+        assertEquals(ROWS, Files.readString(csv, StandardCharsets.UTF_8));
+    }
+}
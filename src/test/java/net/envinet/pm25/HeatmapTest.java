@@ -0,0 +1,33 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Welche Kacheln die {@link Heatmap} nach neuen Werten neu rechnet. */
+public class HeatmapTest {
+
+    private static Map<String, double[]> value(double v) {
+        return Map.of("81607", new double[]{48.5216, 9.0576, v});
+    }
+
+    @Test
+    public void smallStepsAddUpUntilRedrawn() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-heatmap").resolve("heatmap");
+        Heatmap h = new Heatmap(dir);
+        assertFalse(h.hasTiles());
+
+        assertTrue(h.update(value(8.00)) > 0);
+        assertTrue(h.hasTiles());
+
+        // je 0,04 darunter, zusammen aber über der Schwelle
+        assertEquals(0, h.update(value(8.04)));
+        assertTrue(h.update(value(8.08)) > 0);
+        assertEquals(0, h.update(value(8.10)));
+    }
+}
@@ -0,0 +1,112 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Vorbelegung, Überlauf und Abdeckung des Fensters im Speicher. */
+public class HotWindowTest {
+
+    /** 1 h Fenster: Platz für 60 Einträge, lesbar sind im vollen Ring 59. */
+    private static final int CAPACITY = 60;
+
+    private static Series minutes(long start, int from, int to) {
+        Series s = new Series();
+        for (int m = from; m < to; m++) s.add(start + m * 60L, m);
+        return s;
+    }
+
+    @Test
+    public void prefillReadsOnlyTheWindowFromTheStore() throws IOException {
+        SeriesStore store = new CsvSeriesStore(Files.createTempDirectory("pm25-hot"));
+        long now = Instant.now().getEpochSecond();
+        // 2 h bis kurz vor jetzt, alle 2 min; davon liegt die letzte Stunde im Fenster
+        long start = now - 2 * 3600 + 30;
+        Series rows = new Series();
+        for (int m = 0; m < 120; m += 2) rows.add(start + m * 60L, m);
+        store.append("81607", rows);
+
+        HotWindow hot = new HotWindow(store, 1);
+        Series s = hot.read("81607", Long.MIN_VALUE);
+
+        assertEquals(30, s.size());
+        assertEquals(start + 60 * 60L, s.time(0));
+        assertEquals(60.0, s.value(0), 1e-9);
+        assertEquals(start + 118 * 60L, hot.newest("81607"));
+        assertEquals(s.time(0), hot.oldest("81607"));
+        assertTrue(hot.covers("81607", now - 3590));
+    }
+
+    @Test
+    public void rowsAlreadyPrefilledAreNotAddedTwice() throws IOException {
+        SeriesStore store = new CsvSeriesStore(Files.createTempDirectory("pm25-hot"));
+        long start = Instant.now().getEpochSecond() - 1800;
+        HotWindow hot = new HotWindow(store, 1);
+
+        // wie im SensorUpdater: erst gespeichert, dann gemeldet; der Ring entsteht erst dabei
+        hot.onAppend("81607", store.append("81607", minutes(start, 0, 10)));
+        hot.onAppend("81607", store.append("81607", minutes(start, 10, 12)));
+
+        Series s = hot.read("81607", Long.MIN_VALUE);
+        assertEquals(12, s.size());
+        assertTrue(s.isSorted());
+    }
+
+    @Test
+    public void coversBeforeAndAfterTheFirstLiveAppend() throws IOException {
+        SeriesStore store = new CsvSeriesStore(Files.createTempDirectory("pm25-hot"));
+        long now = Instant.now().getEpochSecond();
+        long start = now - 1800;
+        store.append("81607", minutes(start, 0, 10));
+        HotWindow hot = new HotWindow(store, 1);
+
+        // vorbelegt, noch nichts live: alles ab Fensterbeginn ist im Ring
+        assertTrue(hot.covers("81607", now - 3500));
+        assertTrue(hot.covers("81607", start));
+        // vor dem Fensterbeginn wurde nicht vorbelegt
+        assertFalse(hot.covers("81607", now - 7200));
+
+        // nach dem ersten live angehängten Wert unverändert
+        hot.onAppend("81607", minutes(start, 10, 11));
+        assertTrue(hot.covers("81607", start));
+        assertEquals(11, hot.read("81607", start).size());
+
+        // Ring läuft über: abgedeckt nur noch ab dem ältesten lesbaren Eintrag
+        hot.onAppend("81607", minutes(start, 11, 11 + CAPACITY));
+        long oldest = hot.oldest("81607");
+        assertTrue(oldest > start);
+        assertFalse(hot.covers("81607", start));
+        assertFalse(hot.covers("81607", oldest - 1));
+        assertTrue(hot.covers("81607", oldest));
+    }
+
+    @Test
+    public void wraparoundKeepsTheNewestEntries() throws IOException {
+        SeriesStore store = new CsvSeriesStore(Files.createTempDirectory("pm25-hot"));
+        long start = Instant.now().getEpochSecond();
+        HotWindow hot = new HotWindow(store, 1);
+
+        for (int round = 0; round < 5; round++) {
+            hot.onAppend("81607", minutes(start, round * 47, (round + 1) * 47));
+        }
+        int written = 5 * 47;
+
+        // der älteste Platz im vollen Ring wird als nächster überschrieben und nicht gelesen
+        Series s = hot.read("81607", Long.MIN_VALUE);
+        assertEquals(CAPACITY - 1, s.size());
+        for (int i = 0; i < s.size(); i++) {
+            int m = written - (CAPACITY - 1) + i;
+            assertEquals(start + m * 60L, s.time(i));
+            assertEquals(m, s.value(i), 1e-9);
+        }
+        assertEquals(s.time(0), hot.oldest("81607"));
+        assertEquals(start + (written - 1) * 60L, hot.newest("81607"));
+
+        // ab einem Zeitpunkt innerhalb des Rings
+        assertEquals(10, hot.read("81607", start + (written - 10) * 60L).size());
+    }
+}
@@ -0,0 +1,166 @@
+package net.envinet.pm25;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** {@link HttpFetch} gegen einen lokalen Stub-Server. */
+public class HttpFetchTest {
+
+    private static final String BODY = "[{\"sensor\":{\"id\":81607}}]";
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Wed, 01 May 2024 12:00:00 GMT";
+
+    private static HttpServer server;
+    private static String base;
+
+    /** Mitgeschickte Header je Anfrage: Accept-Encoding, If-None-Match, If-Modified-Since. */
+    private static final List<String[]> requests = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger failures = new AtomicInteger();
+
+    @BeforeAll
+    public static void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/gzip", ex -> {
+            record(ex);
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(packed)) {
+                gz.write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            send(ex, 200, packed.toByteArray());
+        });
+        server.createContext("/cached", ex -> {
+            record(ex);
+            if (ETAG.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            ex.getResponseHeaders().set("ETag", ETAG);
+            ex.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            send(ex, 200, BODY.getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/flaky", ex -> {
+            record(ex);
+            // die ersten beiden Anfragen scheitern mit 503
+            if (failures.getAndIncrement() < 2) send(ex, 503, new byte[0]);
+            else send(ex, 200, BODY.getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/missing", ex -> {
+            record(ex);
+            send(ex, 404, new byte[0]);
+        });
+        server.start();
+        base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    public static void stop() {
+        server.stop(0);
+    }
+
+    private static void record(HttpExchange ex) {
+        requests.add(new String[]{
+                ex.getRequestHeaders().getFirst("Accept-Encoding"),
+                ex.getRequestHeaders().getFirst("If-None-Match"),
+                ex.getRequestHeaders().getFirst("If-Modified-Since")});
+    }
+
+    private static void send(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String read(HttpFetch.Response res) throws IOException {
+        try (InputStream in = res.body()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void unpacksGzipBody() throws Exception {
+        requests.clear();
+        try (HttpFetch.Response res = HttpFetch.get(base + "/gzip", Duration.ofSeconds(5), false)) {
+            assertFalse(res.notModified());
+            assertEquals(BODY, read(res));
+        }
+        assertEquals("gzip", requests.get(0)[0]);
+    }
+
+    @Test
+    public void notModifiedAfterCommittedValidators() throws Exception {
+        requests.clear();
+        String url = base + "/cached";
+
+        // ohne commit() bleibt der nächste Abruf unbedingt
+        try (HttpFetch.Response res = HttpFetch.get(url, Duration.ofSeconds(5), true)) {
+            assertEquals(BODY, read(res));
+        }
+        try (HttpFetch.Response res = HttpFetch.get(url, Duration.ofSeconds(5), true)) {
+            assertFalse(res.notModified());
+            read(res);
+            res.commit();
+        }
+        assertNull(requests.get(1)[1]);
+
+        try (HttpFetch.Response res = HttpFetch.get(url, Duration.ofSeconds(5), true)) {
+            assertTrue(res.notModified());
+            assertThrows(IllegalStateException.class, res::body);
+        }
+        assertEquals(ETAG, requests.get(2)[1]);
+        assertEquals(LAST_MODIFIED, requests.get(2)[2]);
+    }
+
+    @Test
+    public void retriesServerErrorsWithBackoff() throws Exception {
+        failures.set(0);
+        String url = base + "/flaky";
+
+        long start = System.nanoTime();
+        String body = null;
+        for (int attempt = 0; body == null; attempt++) {
+            try (HttpFetch.Response res = HttpFetch.get(url, Duration.ofSeconds(5), false)) {
+                body = read(res);
+            } catch (HttpFetch.StatusException e) {
+                assertEquals(503, e.status);
+                assertTrue(e.retryable());
+                assertTrue(attempt < 2, "zu viele Versuche");
+                HttpFetch.backoff(attempt);
+            }
+        }
+        long ms = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals(BODY, body);
+        assertEquals(3, failures.get());
+        // Wartezeit zufällig in [c/2, c] mit c = 500 ms, dann 1000 ms
+        assertTrue(ms >= 250 + 500, "Backoff zu kurz: " + ms + " ms");
+    }
+
+    @Test
+    public void clientErrorsAreNotRetryable() {
+        HttpFetch.StatusException e = assertThrows(HttpFetch.StatusException.class,
+                () -> HttpFetch.get(base + "/missing", Duration.ofSeconds(5), false));
+        assertEquals(404, e.status);
+        assertFalse(e.retryable());
+    }
+}
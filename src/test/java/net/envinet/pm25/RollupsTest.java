@@ -0,0 +1,85 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Fortschreiben der Verdichtungen und Nachholen über die High-Water-Mark. */
+public class RollupsTest {
+
+    private static final long T0 = Timestamps.parse("2024-05-01 00:00:00");
+
+    /** Werte {@code value} zu den Minuten {@code minutes} nach {@link #T0}. */
+    private static Series series(double value, int... minutes) {
+        Series s = new Series();
+        for (int m : minutes) s.add(T0 + m * 60L, value);
+        return s;
+    }
+
+    /** Gespeichert und verdichtet, wie im {@link SensorUpdater}. */
+    private static void append(SeriesStore store, Rollups rollups, Series rows) throws IOException {
+        rollups.onAppend("81607", store.append("81607", rows));
+    }
+
+    private static int total(Rollups.Buckets b) {
+        int n = 0;
+        for (int i = 0; i < b.size(); i++) n += b.count(i);
+        return n;
+    }
+
+    @Test
+    public void rowsMissedByACrashAreCaughtUp() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-rollup");
+        SeriesStore store = new CsvSeriesStore(dir);
+        Rollups rollups = new Rollups(dir.resolve("rollup"), store);
+        append(store, rollups, series(1, 0, 5));
+
+        // gespeichert, aber vor der Verdichtung abgebrochen
+        store.append("81607", series(2, 10, 15));
+        append(store, rollups, series(3, 20));
+
+        Rollups.Buckets b = rollups.read("81607", Rollups.Resolution.MIN10, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3, b.size());
+        assertEquals(5, total(b));
+        assertEquals(2, b.count(1));
+        assertEquals(2.0, b.mean(1), 1e-9);
+
+        // zweites Nachholen zählt nichts doppelt
+        append(store, rollups, series(3, 21));
+        assertEquals(6, total(rollups.read("81607", Rollups.Resolution.HOUR, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void lateRowIsFoldedIntoOlderBucket() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-rollup");
+        SeriesStore store = new CsvSeriesStore(dir);
+        Rollups rollups = new Rollups(dir.resolve("rollup"), store);
+        append(store, rollups, series(1, 0, 30));
+        append(store, rollups, series(5, 2));
+
+        Rollups.Buckets b = rollups.read("81607", Rollups.Resolution.MIN10, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(2, b.count(0));
+        assertEquals(3.0, b.mean(0), 1e-9);
+        assertEquals(3, total(b));
+    }
+
+    @Test
+    public void fileWithoutMarkIsRebuilt() throws IOException {
+        Path dir = Files.createTempDirectory("pm25-rollup");
+        SeriesStore store = new CsvSeriesStore(dir);
+        Rollups rollups = new Rollups(dir.resolve("rollup"), store);
+        store.append("81607", series(1, 0, 5, 10));
+
+        // ältere Fassung ohne Marke, zählt nur einen der drei Werte
+        Path f = Files.createDirectories(dir.resolve("rollup")).resolve("sensor_81607_1h.csv");
+        Files.writeString(f, "2024-05-01 00:00:00,1.00,1.00,1.00,1\n", StandardCharsets.UTF_8);
+        append(store, rollups, series(1, 15));
+
+        assertEquals(4, total(rollups.read("81607", Rollups.Resolution.HOUR, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,62 @@
+package net.envinet.pm25;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** {@link SnapshotIngest} gegen einen aufgezeichneten Ausschnitt aus {@code data.json}. */
+public class SnapshotIngestTest {
+
+    private static final List<String> IDS = List.of("81607", "489", "30525", "keine-zahl");
+
+    private static Map<String, Measurements> ingest() throws IOException {
+        InputStream in = SnapshotIngestTest.class.getResourceAsStream("/snapshot/data.json");
+        assertNotNull(in, "Fixture fehlt");
+        return SnapshotIngest.demultiplex(in, IDS);
+    }
+
+    @Test
+    public void demultiplexesConfiguredSensorsOnly() throws IOException {
+        Map<String, Measurements> out = ingest();
+
+        // 99999 ist nicht konfiguriert, 489 (DHT22) liefert kein P2
+        assertEquals(List.of("81607", "30525"), List.copyOf(out.keySet()));
+
+        Measurements m = out.get("81607");
+        assertEquals(2, m.size());
+        assertEquals(0, m.rejected());
+        int p2 = m.column(Measurements.PRIMARY);
+        assertEquals(Timestamps.parse("2024-05-01 12:00:03"), m.time(0));
+        assertEquals(8.35, m.value(p2, 0), 1e-9);
+        assertEquals(Timestamps.parse("2024-05-01 12:02:27"), m.time(1));
+        assertEquals(7.95, m.value(p2, 1), 1e-9);
+    }
+
+    @Test
+    public void rejectsUnreadableTimestamps() throws IOException {
+        Measurements m = ingest().get("30525");
+
+        // "2024-05-01 25:61:00" ist unlesbar und wird gezählt, nicht gespeichert
+        assertEquals(1, m.rejected());
+        assertEquals(2, m.size());
+    }
+
+    @Test
+    public void rejectsTimestampsBefore2015(@TempDir Path dir) throws IOException {
+        Measurements m = ingest().get("30525");
+        Series p2 = m.series(m.column(Measurements.PRIMARY));
+
+        Series accepted = new Validation(dir, new CsvSeriesStore(dir)).accept(p2);
+
+        assertEquals(1, accepted.size());
+        assertEquals(Timestamps.parse("2024-05-01 12:03:40"), accepted.time(0));
+        assertEquals(12.05, accepted.value(0), 1e-9);
+    }
+}